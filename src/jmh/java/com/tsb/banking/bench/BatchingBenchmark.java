@@ -0,0 +1,78 @@
+package com.tsb.banking.bench;
+
+import com.tsb.banking.api.dto.BatchTransferItemDto;
+import com.tsb.banking.api.dto.TransferRequestDto;
+import com.tsb.banking.api.dto.TransferResponseDto;
+import com.tsb.banking.service.TransferService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single and batch transfers with and without Hibernate JDBC batching.
+ * jdbcBatchSize=1 sends every insert and update on its own, which is what the IDENTITY id mapping forced;
+ * 50 is the configured setting. JDBC statements per transfer are printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 2)
+@Measurement(time = 3)
+public class BatchingBenchmark {
+
+    @Param({"1", "50"})
+    public int jdbcBatchSize;
+
+    private ConfigurableApplicationContext ctx;
+    private TransferService service;
+    private Statistics statistics;
+    private TransferRequestDto forward;
+    private TransferRequestDto backward;
+    private List<TransferRequestDto> batch;
+    private long n;
+    private long transfers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = BenchContext.start(
+                "spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize,
+                "spring.jpa.properties.hibernate.generate_statistics=true",
+                "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN");
+        service = ctx.getBean(TransferService.class);
+        statistics = ctx.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        BigDecimal amount = new BigDecimal("0.01");
+        forward = new TransferRequestDto(1L, 1L, 3L, amount, "NZD", "bench", null);
+        backward = new TransferRequestDto(1L, 3L, 1L, amount, "NZD", "bench", null);
+        batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            batch.add(i % 2 == 0 ? forward : backward);
+        }
+        statistics.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n[jdbcBatchSize=%d] %.2f JDBC statements per transfer (%d transfers)%n",
+                jdbcBatchSize, (double) statistics.getPrepareStatementCount() / transfers, transfers);
+        ctx.close();
+    }
+
+    @Benchmark
+    public TransferResponseDto transfer() {
+        transfers++;
+        return service.transfer((n++ & 1) == 0 ? forward : backward);
+    }
+
+    @Benchmark
+    public List<BatchTransferItemDto> transferBatch() {
+        transfers += batch.size();
+        return service.transferBatch(batch);
+    }
+}
@@ -0,0 +1,34 @@
+package com.tsb.banking.bench;
+
+import com.tsb.banking.BankingApiApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Boots the application against a private in-memory H2 database for a benchmark trial.
+ */
+final class BenchContext {
+
+    private BenchContext() {
+    }
+
+    static ConfigurableApplicationContext start(String... extraProperties) {
+        String db = "bench-" + UUID.randomUUID();
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:" + db + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.security=WARN"));
+        // passed as command line arguments so they take precedence over application.yml
+        for (String p : extraProperties) {
+            args.add("--" + p);
+        }
+        return new SpringApplicationBuilder(BankingApiApplication.class).run(args.toArray(String[]::new));
+    }
+}
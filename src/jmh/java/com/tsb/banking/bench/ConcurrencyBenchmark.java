@@ -0,0 +1,86 @@
+package com.tsb.banking.bench;
+
+import com.tsb.banking.api.dto.TransferRequestDto;
+import com.tsb.banking.api.dto.TransferResponseDto;
+import com.tsb.banking.exception.BusinessException;
+import com.tsb.banking.service.TransferService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent TransferService.transfer under each app.transfer.concurrency strategy.
+ * hotShare is the fraction of transfers that touch one hot account; the rest pick two random accounts
+ * out of a pool, so 0 is nearly contention free and 0.9 serialises most transfers on a single row.
+ * Transfers that give up (CONCURRENT_UPDATE after the optimistic retries) are counted as "failed".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 2)
+@Measurement(time = 3)
+@Threads(8)
+public class ConcurrencyBenchmark {
+
+    @Param({"pessimistic", "optimistic", "conditional"})
+    public String strategy;
+
+    @Param({"0", "0.5", "0.9"})
+    public double hotShare;
+
+    @Param({"32"})
+    public int accounts;
+
+    private ConfigurableApplicationContext ctx;
+    private TransferService service;
+    private final List<Long> ids = new ArrayList<>();
+    private final BigDecimal amount = new BigDecimal("0.01");
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Outcomes {
+        public long failed;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = BenchContext.start("app.transfer.concurrency=" + strategy);
+        service = ctx.getBean(TransferService.class);
+        JdbcTemplate jdbc = ctx.getBean(JdbcTemplate.class);
+        for (int i = 0; i < accounts; i++) {
+            jdbc.update("insert into accounts (customer_id, number, currency, balance) values (1, ?, 'NZD', 1000000000)",
+                    "BENCH-" + i);
+            ids.add(jdbc.queryForObject("select id from accounts where number = ?", Long.class, "BENCH-" + i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public TransferResponseDto transfer(Outcomes outcomes) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int a = rnd.nextDouble() < hotShare ? 0 : rnd.nextInt(accounts);
+        int b = rnd.nextInt(accounts - 1);
+        if (b >= a) {
+            b++;
+        }
+        // the hot account is debited and credited equally often
+        long from = ids.get(rnd.nextBoolean() ? a : b);
+        long to = from == ids.get(a) ? ids.get(b) : ids.get(a);
+        try {
+            return service.transfer(new TransferRequestDto(1L, from, to, amount, "NZD", "bench", null));
+        } catch (BusinessException e) {
+            outcomes.failed++;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.tsb.banking.bench;
+
+import com.tsb.banking.journal.JournalReplay;
+import com.tsb.banking.journal.Posting;
+import com.tsb.banking.journal.PostingJournal;
+import com.tsb.banking.model.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Posting journal: durable appends from 8 threads, with and without fsync and group commit, and the replay
+ * of one million postings over 1 and 4 partitions.
+ */
+public class JournalBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+
+    @State(Scope.Benchmark)
+    public static class Appending {
+
+        @Param({"true", "false"})
+        public boolean fsync;
+
+        @Param({"PT0S", "PT0.001S"})
+        public String groupWindow;
+
+        private Path dir;
+        private PostingJournal journal;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            dir = Files.createTempDirectory("journal-bench");
+            journal = new PostingJournal(dir, 64L << 20, fsync, Duration.parse(groupWindow), 256,
+                    new SimpleMeterRegistry());
+            journal.open(UUID.randomUUID());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            journal.close();
+            delete(dir);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Replaying {
+
+        @Param({"1", "4"})
+        public int partitions;
+
+        private Path dir;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            dir = Files.createTempDirectory("journal-replay-bench");
+            try (PostingJournal journal = new PostingJournal(dir, 64L << 20, false, Duration.ZERO, 256,
+                    new SimpleMeterRegistry())) {
+                journal.open(UUID.randomUUID());
+                Instant now = Instant.now();
+                Money amount = new Money(1234, "NZD");
+                List<Posting> chunk = new ArrayList<>(1000);
+                for (int i = 0; i < 1_000_000; i++) {
+                    chunk.add(Posting.of(now, 2L * i, 2L * i + 1, i % ACCOUNTS, (i * 7L + 1) % ACCOUNTS, amount));
+                    if (chunk.size() == 1000) {
+                        journal.append(chunk);
+                        chunk.clear();
+                    }
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(dir);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Postings {
+
+        private final List<Posting> posting = List.of(Posting.of(Instant.now(), 1, 2, 1, 3, new Money(1, "NZD")));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(time = 2)
+    @Measurement(time = 3)
+    @Threads(8)
+    public void durableAppend(Appending state, Postings postings) {
+        state.journal.awaitDurable(state.journal.append(postings.posting));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    public List<JournalReplay.Partition> replay(Replaying state) throws IOException {
+        return JournalReplay.replay(state.dir, state.partitions, account -> Long.MIN_VALUE);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.tsb.banking.bench;
+
+import com.tsb.banking.security.JwtClaims;
+import com.tsb.banking.security.JwtService;
+import com.tsb.banking.security.VerifiedTokenCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access-token issue and verification cost in JwtService.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(time = 2)
+@Measurement(time = 3)
+public class JwtBenchmark {
+
+    private JwtService jwt;
+    private VerifiedTokenCache cache;
+    private UserDetails user;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        jwt = new JwtService("N/RR5l2MnRPl2xZN+s81COg42ah7BPnXLEC5QVB1uR2Cz8qjUK1CGT6zTVhWzFzE", 15, 7, "tsb-bank");
+        user = User.withUsername("alice").password("x").authorities("ROLE_USER").build();
+        token = jwt.generateAccess(user);
+        cache = new VerifiedTokenCache(jwt, 10_000);
+        cache.verify(token);
+    }
+
+    @Benchmark
+    public String generateAccess() {
+        return jwt.generateAccess(user);
+    }
+
+    @Benchmark
+    public Jws<Claims> parse() {
+        return jwt.parse(token);
+    }
+
+    @Benchmark
+    public JwtClaims verify() {
+        return jwt.verify(token);
+    }
+
+    @Benchmark
+    public JwtClaims cachedVerify() {
+        return cache.verify(token);
+    }
+}
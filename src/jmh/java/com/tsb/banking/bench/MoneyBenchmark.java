@@ -0,0 +1,85 @@
+package com.tsb.banking.bench;
+
+import com.tsb.banking.api.dto.TransferRequestDto;
+import com.tsb.banking.model.Account;
+import com.tsb.banking.model.Money;
+import com.tsb.banking.service.TransferService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Amount validation and balance arithmetic of one transfer: BigDecimal balances as before, against
+ * minor-unit {@link Money} on the account entities. Transfers alternate direction so balances stay put.
+ * Run with {@code -prof gc} to compare allocation per transfer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(time = 2)
+@Measurement(time = 3)
+public class MoneyBenchmark {
+
+    private TransferRequestDto forward;
+    private TransferRequestDto backward;
+    private BigDecimal decimalFrom;
+    private BigDecimal decimalTo;
+    private Account from;
+    private Account to;
+    private long n;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BigDecimal amount = new BigDecimal("125.50");
+        forward = new TransferRequestDto(1L, 1L, 3L, amount, "NZD", "bench", null);
+        backward = new TransferRequestDto(1L, 3L, 1L, amount, "NZD", "bench", null);
+        decimalFrom = new BigDecimal("1500.00");
+        decimalTo = new BigDecimal("1500.00");
+        from = account(1L);
+        to = account(3L);
+    }
+
+    private static Account account(long id) {
+        Account a = new Account();
+        a.setId(id);
+        a.setCurrency("NZD");
+        a.setBalance(new Money(150_000, "NZD"));
+        return a;
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimal() {
+        boolean fwd = (n++ & 1) == 0;
+        TransferRequestDto request = fwd ? forward : backward;
+        if (request.amount().scale() > 2) {
+            throw new IllegalStateException("precision");
+        }
+        BigDecimal debited = fwd ? decimalFrom : decimalTo;
+        if (debited.compareTo(request.amount()) < 0) {
+            throw new IllegalStateException("funds");
+        }
+        if (fwd) {
+            decimalFrom = decimalFrom.subtract(request.amount());
+            decimalTo = decimalTo.add(request.amount());
+        } else {
+            decimalTo = decimalTo.subtract(request.amount());
+            decimalFrom = decimalFrom.add(request.amount());
+        }
+        return decimalFrom;
+    }
+
+    @Benchmark
+    public Account minorUnits() {
+        boolean fwd = (n++ & 1) == 0;
+        Money amount = TransferService.amount(fwd ? forward : backward);
+        Account debited = fwd ? from : to;
+        Account credited = fwd ? to : from;
+        if (!debited.covers(amount)) {
+            throw new IllegalStateException("funds");
+        }
+        debited.debit(amount);
+        credited.credit(amount);
+        return debited;
+    }
+}
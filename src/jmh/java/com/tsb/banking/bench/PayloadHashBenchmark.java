@@ -0,0 +1,32 @@
+package com.tsb.banking.bench;
+
+import com.tsb.banking.api.dto.TransferRequestDto;
+import com.tsb.banking.service.TransferService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 hash of a transfer payload, computed for every request that carries an idempotency key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(time = 2)
+@Measurement(time = 3)
+public class PayloadHashBenchmark {
+
+    private TransferRequestDto request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        request = new TransferRequestDto(1L, 1L, 3L, new BigDecimal("125.50"), "NZD", "Move to savings",
+                "5f0c4a4e-0d9b-4f7e-a4f3-0c1b7a9a2e11");
+    }
+
+    @Benchmark
+    public String payloadHash() {
+        return TransferService.payloadHash(request);
+    }
+}
@@ -0,0 +1,115 @@
+package com.tsb.banking.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP load on POST /transfers and GET /accounts/{id}/transactions with Tomcat on its bounded platform
+ * thread pool (virtual=false) and on virtual threads (virtual=true).
+ * 128 client threads run against a pool of tomcatMaxThreads, so the platform mode queues requests in Tomcat
+ * while the virtual mode queues them on ConnectionPermits. Non-2xx responses are counted as "failed".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 3)
+@Measurement(time = 5)
+@Threads(128)
+public class ServletThreadsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean virtual;
+
+    @Param({"50"})
+    public int tomcatMaxThreads;
+
+    @Param({"64"})
+    public int accounts;
+
+    private ConfigurableApplicationContext ctx;
+    private HttpClient http;
+    private String base;
+    private String token;
+    private final List<Long> ids = new ArrayList<>();
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Outcomes {
+        public long failed;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ctx = BenchContext.start(
+                "spring.threads.virtual.enabled=" + virtual,
+                "server.tomcat.threads.max=" + tomcatMaxThreads,
+                "logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=OFF");
+        JdbcTemplate jdbc = ctx.getBean(JdbcTemplate.class);
+        for (int i = 0; i < accounts; i++) {
+            jdbc.update("insert into accounts (customer_id, number, currency, balance) values (1, ?, 'NZD', 1000000000)",
+                    "LOAD-" + i);
+            ids.add(jdbc.queryForObject("select id from accounts where number = ?", Long.class, "LOAD-" + i));
+        }
+        // some history for every account so the history endpoint has a page to read
+        List<Object[]> rows = new ArrayList<>();
+        for (long id : ids) {
+            for (int i = 0; i < 100; i++) {
+                rows.add(new Object[]{id, i % 2 == 0 ? "DEBIT" : "CREDIT"});
+            }
+        }
+        jdbc.batchUpdate("insert into transactions (account_id, type, amount, currency, reference, counterparty, created_at) "
+                + "values (?, ?, 1.00, 'NZD', 'seed', 'LOAD', current_timestamp)", rows);
+        base = "http://localhost:" + ctx.getEnvironment().getProperty("local.server.port");
+        http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpResponse<String> login = http.send(HttpRequest.newBuilder(URI.create(base + "/auth/login"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"alice\",\"password\":\"Password123\"}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        token = login.body().replaceAll(".*\"accessToken\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        http.close();
+        ctx.close();
+    }
+
+    @Benchmark
+    public int transfer(Outcomes outcomes) throws Exception {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int a = rnd.nextInt(accounts);
+        int b = (a + 1 + rnd.nextInt(accounts - 1)) % accounts;
+        String body = "{\"customerId\":1,\"fromAccountId\":" + ids.get(a) + ",\"toAccountId\":" + ids.get(b)
+                + ",\"amount\":0.01,\"currency\":\"NZD\"}";
+        return send(HttpRequest.newBuilder(URI.create(base + "/transfers"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)), outcomes);
+    }
+
+    @Benchmark
+    public int history(Outcomes outcomes) throws Exception {
+        long id = ids.get(ThreadLocalRandom.current().nextInt(accounts));
+        return send(HttpRequest.newBuilder(URI.create(base + "/accounts/" + id + "/transactions?size=20")).GET(),
+                outcomes);
+    }
+
+    private int send(HttpRequest.Builder request, Outcomes outcomes) throws Exception {
+        HttpResponse<Void> response = http.send(request.header("Authorization", "Bearer " + token).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2) {
+            outcomes.failed++;
+        }
+        return response.statusCode();
+    }
+}
@@ -0,0 +1,72 @@
+package com.tsb.banking.bench;
+
+import com.tsb.banking.api.dto.TransactionDto;
+import com.tsb.banking.api.dto.TransactionSliceDto;
+import com.tsb.banking.service.TransactionService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransactionService.transactionsForAccount (query, count and DTO mapping) on an account with a long history,
+ * against the cursor-paged variant positioned at the same page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(time = 2)
+@Measurement(time = 3)
+public class TransactionPageBenchmark {
+
+    @Param({"10000"})
+    public int history;
+
+    @Param({"0", "200"})
+    public int page;
+
+    private ConfigurableApplicationContext ctx;
+    private TransactionService service;
+    private String cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = BenchContext.start();
+        service = ctx.getBean(TransactionService.class);
+        Instant start = Instant.now().minus(history, ChronoUnit.MINUTES);
+        List<Object[]> rows = new ArrayList<>(history);
+        for (int i = 0; i < history; i++) {
+            rows.add(new Object[]{i % 2 == 0 ? "DEBIT" : "CREDIT", "1.00", Timestamp.from(start.plus(i, ChronoUnit.MINUTES))});
+        }
+        ctx.getBean(JdbcTemplate.class).batchUpdate(
+                "insert into transactions (account_id, type, amount, currency, reference, counterparty, created_at) "
+                        + "values (1, ?, cast(? as numeric(19, 2)), 'NZD', 'bench', 'BENCH', ?)", rows);
+
+        // walk to the cursor that starts the same page as the offset query
+        for (int p = 0; p < page; p++) {
+            cursor = service.transactionsAfterCursor(1L, null, null, cursor, 20, false).nextCursor();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public Page<TransactionDto> transactionsForAccount() {
+        return service.transactionsForAccount(1L, null, null, page, 20);
+    }
+
+    @Benchmark
+    public TransactionSliceDto transactionsAfterCursor() {
+        return service.transactionsAfterCursor(1L, null, null, cursor, 20, false);
+    }
+}
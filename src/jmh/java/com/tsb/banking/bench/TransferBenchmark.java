@@ -0,0 +1,55 @@
+package com.tsb.banking.bench;
+
+import com.tsb.banking.api.dto.TransferRequestDto;
+import com.tsb.banking.api.dto.TransferResponseDto;
+import com.tsb.banking.service.TransferService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransferService.transfer against in-memory H2: a fresh posting and the idempotent-replay branch.
+ * Postings alternate direction between two seeded NZD accounts of customer 1 so balances never run out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(time = 2)
+@Measurement(time = 3)
+public class TransferBenchmark {
+
+    private ConfigurableApplicationContext ctx;
+    private TransferService service;
+    private TransferRequestDto forward;
+    private TransferRequestDto backward;
+    private TransferRequestDto replay;
+    private long n;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = BenchContext.start();
+        service = ctx.getBean(TransferService.class);
+        BigDecimal amount = new BigDecimal("0.01");
+        forward = new TransferRequestDto(1L, 1L, 3L, amount, "NZD", "bench", null);
+        backward = new TransferRequestDto(1L, 3L, 1L, amount, "NZD", "bench", null);
+        replay = new TransferRequestDto(1L, 1L, 3L, amount, "NZD", "bench", "bench-replay-key");
+        service.transfer(replay);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public TransferResponseDto transfer() {
+        return service.transfer((n++ & 1) == 0 ? forward : backward);
+    }
+
+    @Benchmark
+    public TransferResponseDto idempotentReplay() {
+        return service.transfer(replay);
+    }
+}
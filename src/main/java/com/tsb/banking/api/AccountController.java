@@ -1,19 +1,38 @@
 package com.tsb.banking.api;
 
+import com.tsb.banking.api.dto.AccountRollupDto;
+import com.tsb.banking.api.dto.BalanceAtDto;
 import com.tsb.banking.api.dto.TransactionDto;
+import com.tsb.banking.api.dto.TransactionSliceDto;
+import com.tsb.banking.replica.ReplicaDataSource;
+import com.tsb.banking.service.AccountRollupService;
 import com.tsb.banking.service.AccountService;
+import com.tsb.banking.service.AccountVersions;
+import com.tsb.banking.service.BalanceHistoryService;
+import com.tsb.banking.service.TransactionExportService;
 import com.tsb.banking.service.TransactionService;
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
 
 /**
  * @author zhangyunlin
  *
- * List transactions for an account, with optional from/to date range and paging
+ * List transactions for an account, with optional from/to date range and paging.
+ * Transaction lists carry an ETag from {@link AccountVersions}; a matching If-None-Match is answered
+ * with 304 after a single version lookup, before the listing is queried.
  */
 @RestController
 @RequestMapping("/accounts")
@@ -21,23 +40,109 @@ public class AccountController {
 
   private final AccountService accountService;
   private final TransactionService txnService;
+  private final TransactionExportService exportService;
+  private final BalanceHistoryService balanceHistory;
+  private final AccountVersions versions;
+  private final AccountRollupService rollups;
 
-  public AccountController(AccountService accountService, TransactionService txnService) {
+  public AccountController(AccountService accountService, TransactionService txnService,
+                           TransactionExportService exportService, BalanceHistoryService balanceHistory,
+                           AccountVersions versions, AccountRollupService rollups) {
     this.accountService = accountService;
     this.txnService = txnService;
+    this.exportService = exportService;
+    this.balanceHistory = balanceHistory;
+    this.versions = versions;
+    this.rollups = rollups;
   }
 
   @Operation(summary = "Show all transactions for an account (optional from/to, paging)")
   @GetMapping("/{accountId}/transactions")
-  public Page<TransactionDto> transactions(
+  public ResponseEntity<Page<TransactionDto>> transactions(
       @PathVariable Long accountId,
       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
       @RequestParam(defaultValue = "0") int page,
-      @RequestParam(defaultValue = "20") int size) {
+      @RequestParam(defaultValue = "20") int size,
+      WebRequest request) {
+
+    // a replica must have this instance's recent transfers; the tag is read there too, before the query
+    try (var pin = ReplicaDataSource.requireVisible(versions.recentTransfers(accountId))) {
+      String etag = versions.accountTag(accountId);
+      if (request.checkNotModified(etag)) {
+        return null;
+      }
+      // ensure no 404 returned if account not found
+      accountService.requireAccount(accountId);
+      return revalidate(etag, txnService.transactionsForAccount(accountId, from, to, page, size));
+    }
+  }
+
+  @Operation(summary = "Show transactions for an account page by page using a continuation cursor (total count optional)")
+  @GetMapping("/{accountId}/transactions/cursor")
+  public ResponseEntity<TransactionSliceDto> transactionsByCursor(
+      @PathVariable Long accountId,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "20") int size,
+      @RequestParam(defaultValue = "false") boolean includeTotal,
+      WebRequest request) {
+
+    try (var pin = ReplicaDataSource.requireVisible(versions.recentTransfers(accountId))) {
+      String etag = versions.accountTag(accountId);
+      if (request.checkNotModified(etag)) {
+        return null;
+      }
+      accountService.requireAccount(accountId);
+      return revalidate(etag, txnService.transactionsAfterCursor(accountId, from, to, cursor, size, includeTotal));
+    }
+  }
+
+  // clients may keep the response but must revalidate it on every use
+  static <T> ResponseEntity<T> revalidate(String etag, T body) {
+    return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(body);
+  }
+
+  @Operation(summary = "Export the full transaction history of an account as NDJSON or CSV (streamed)")
+  @GetMapping("/{accountId}/transactions/export")
+  public void export(
+      @PathVariable Long accountId,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+      @RequestParam(defaultValue = "ndjson") String format,
+      HttpServletResponse response) throws IOException {
+
+    // validate before anything is written, errors can still be returned as JSON
+    accountService.requireAccount(accountId);
+    TransactionExportService.Format fmt = TransactionExportService.Format.of(format);
+
+    response.setContentType(fmt.contentType);
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+        "attachment; filename=\"account-" + accountId + "-transactions." + fmt.extension + "\"");
+    exportService.export(accountId, from, to, fmt, response.getOutputStream());
+  }
+
+  @Operation(summary = "Show the balance of an account as of an instant (default now)")
+  @GetMapping("/{accountId}/balance")
+  public BalanceAtDto balance(
+      @PathVariable Long accountId,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant at) {
+    return balanceHistory.balanceAt(accountId, at);
+  }
+
+  @Operation(summary = "Debit/credit counts and totals per day, month or for the whole range (default: this month)")
+  @GetMapping("/{accountId}/rollups")
+  public List<AccountRollupDto> rollups(
+      @PathVariable Long accountId,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+      @RequestParam(defaultValue = "month") String period) {
 
-    // ensure no 404 returned if account not found
     accountService.requireAccount(accountId);
-    return txnService.transactionsForAccount(accountId, from, to, page, size);
+    LocalDate t = (to == null) ? LocalDate.now(ZoneId.systemDefault()) : to;
+    LocalDate f = (from == null) ? t.withDayOfMonth(1) : from;
+    return rollups.rollups(accountId, f, t, AccountRollupService.Period.of(period));
   }
 }
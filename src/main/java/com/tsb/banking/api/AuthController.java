@@ -1,5 +1,7 @@
 package com.tsb.banking.api;
 
+import com.tsb.banking.exception.BusinessException;
+import com.tsb.banking.ratelimit.RateLimiter;
 import com.tsb.banking.security.JwtService;
 import com.tsb.banking.service.RefreshTokenService;
 import com.tsb.banking.service.OtpService;
@@ -8,6 +10,7 @@ import io.jsonwebtoken.JwtException;
 import io.swagger.v3.oas.annotations.Operation;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -16,6 +19,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -33,18 +37,21 @@ public class AuthController {
     private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
     private final RefreshTokenService refreshTokenService;
+    private final RateLimiter loginRateLimiter;
 
     public AuthController(
             OtpService otpService,
             PasswordService passwordService,
             AuthenticationManager authenticationManager,
             JwtService jwtService,
-            RefreshTokenService refresh) {                     // <-- add to ctor
+            RefreshTokenService refresh,                       // <-- add to ctor
+            @Qualifier("loginRateLimiter") RateLimiter loginRateLimiter) {
         this.otpService = otpService;
         this.passwordService = passwordService;
         this.authenticationManager = authenticationManager;
         this.jwtService = jwtService;
         this.refreshTokenService = refresh;
+        this.loginRateLimiter = loginRateLimiter;
     }
 
     public record RequestResetDto(@NotBlank String identifier) {}
@@ -74,6 +81,10 @@ public class AuthController {
     @Operation(summary = "Login with username/password and receive tokens")
     @PostMapping("/login")
     public ResponseEntity<TokenPair> login(@RequestBody @Valid LoginRequest req) {
+        // checked before authenticating so password guessing also stops costing a BCrypt hash per attempt
+        if (!loginRateLimiter.tryAcquire("LOGIN", req.username().toLowerCase(Locale.ROOT))) {
+            throw new BusinessException("RATE_LIMIT", "Too many login attempts, please try later");
+        }
         Authentication auth = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(req.username(), req.password()));
         UserDetails user = (UserDetails) auth.getPrincipal();
@@ -1,26 +1,40 @@
 package com.tsb.banking.api;
 
 import com.tsb.banking.api.dto.AccountDto;
+import com.tsb.banking.replica.ReplicaDataSource;
 import com.tsb.banking.service.AccountService;
+import com.tsb.banking.service.AccountVersions;
 import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import java.util.List;
 
 /**
  * @author zhangyunlin
  *
- * Show all accounts for a customer
+ * Show all accounts for a customer; answered with 304 while the customer's ETag is unchanged
  */
 @RestController
 @RequestMapping("/customers")
 public class CustomerController {
 
   private final AccountService service;
-  public CustomerController(AccountService service) { this.service = service; }
+  private final AccountVersions versions;
+  public CustomerController(AccountService service, AccountVersions versions) {
+    this.service = service;
+    this.versions = versions;
+  }
 
   @Operation(summary = "Show all accounts for a customer")
   @GetMapping("/{customerId}/accounts")
-  public List<AccountDto> accounts(@PathVariable Long customerId) {
-    return service.accountsForCustomer(customerId);
+  public ResponseEntity<List<AccountDto>> accounts(@PathVariable Long customerId, WebRequest request) {
+    try (var pin = ReplicaDataSource.requireVisible(versions.recentCustomerTransfers(customerId))) {
+      String etag = versions.customerTag(customerId);
+      if (request.checkNotModified(etag)) {
+        return null;
+      }
+      return AccountController.revalidate(etag, service.accountsForCustomer(customerId));
+    }
   }
 }
@@ -1,12 +1,22 @@
 package com.tsb.banking.api;
 
+import com.tsb.banking.api.dto.BatchTransferItemDto;
+import com.tsb.banking.api.dto.BatchTransferRequestDto;
+import com.tsb.banking.api.dto.BatchTransferResponseDto;
 import com.tsb.banking.api.dto.TransferRequestDto;
 import com.tsb.banking.api.dto.TransferResponseDto;
+import com.tsb.banking.ledger.LedgerEngine;
+import com.tsb.banking.replica.ReadYourWritesFilter;
 import com.tsb.banking.service.TransferService;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 /**
  * @author zhangyunlin
  *
@@ -17,14 +27,45 @@ import org.springframework.web.bind.annotation.*;
 public class TransferController {
 
     private final TransferService service;
+    // present only when app.ledger.engine.enabled=true
+    private final LedgerEngine ledgerEngine;
+    private final MeterRegistry meters;
 
-    public TransferController(TransferService service) {
+    public TransferController(TransferService service, ObjectProvider<LedgerEngine> ledgerEngine, MeterRegistry meters) {
         this.service = service;
+        this.ledgerEngine = ledgerEngine.getIfAvailable();
+        this.meters = meters;
     }
 
     @Operation(summary = "Make a transfer between two accounts that belong to a customer")
     @PostMapping
-    public TransferResponseDto transfer(@Valid @RequestBody TransferRequestDto req) {
-        return service.transfer(req);
+    public TransferResponseDto transfer(@Valid @RequestBody TransferRequestDto req, HttpServletResponse response) {
+        TransferResponseDto result = ledgerEngine != null ? ledgerEngine.transfer(req) : service.transfer(req);
+        consistencyToken(response, result);
+        return result;
+    }
+
+    @Operation(summary = "Make many transfers in one call; each item succeeds or fails on its own")
+    @PostMapping("/batch")
+    public BatchTransferResponseDto transferBatch(@Valid @RequestBody BatchTransferRequestDto req,
+                                                  HttpServletResponse response) {
+        List<BatchTransferItemDto> results = ledgerEngine != null
+                ? ledgerEngine.transferBatch(req.transfers())
+                : service.transferBatch(req.transfers());
+        // failed items never reach the exception handler, count their codes here
+        for (BatchTransferItemDto r : results) {
+            if (r.code() != null) {
+                meters.counter("banking.business.errors", "code", r.code()).increment();
+            } else {
+                // items are committed in order, so the last one stands for all of them
+                consistencyToken(response, r.result());
+            }
+        }
+        return BatchTransferResponseDto.of(results);
+    }
+
+    // sent back on reads that must see this transfer, see ReadYourWritesFilter
+    private static void consistencyToken(HttpServletResponse response, TransferResponseDto result) {
+        response.setHeader(ReadYourWritesFilter.HEADER, String.valueOf(result.debitTxnId()));
     }
 }
@@ -0,0 +1,16 @@
+package com.tsb.banking.api.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Debit/credit counts and totals of an account in one currency over [from, to] (inclusive days).
+ */
+public record AccountRollupDto(LocalDate from,
+                               LocalDate to,
+                               String currency,
+                               long debitCount,
+                               BigDecimal debitTotal,
+                               long creditCount,
+                               BigDecimal creditTotal) {
+}
@@ -0,0 +1,10 @@
+package com.tsb.banking.api.dto;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+public record BalanceAtDto(Long accountId,
+                           String currency,
+                           Instant at,
+                           BigDecimal balance) {
+}
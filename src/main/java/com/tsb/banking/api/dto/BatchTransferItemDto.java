@@ -0,0 +1,22 @@
+package com.tsb.banking.api.dto;
+
+/**
+ * Outcome of one item of a batch transfer; {@code result} is set when status is OK,
+ * {@code code}/{@code message} when status is FAILED.
+ */
+public record BatchTransferItemDto(
+        int index,
+        String status,
+        TransferResponseDto result,
+        String code,
+        String message
+) {
+
+    public static BatchTransferItemDto ok(int index, TransferResponseDto result) {
+        return new BatchTransferItemDto(index, "OK", result, null, null);
+    }
+
+    public static BatchTransferItemDto failed(int index, String code, String message) {
+        return new BatchTransferItemDto(index, "FAILED", null, code, message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.tsb.banking.api.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record BatchTransferRequestDto(
+        @NotEmpty @Size(max = 500) List<@Valid TransferRequestDto> transfers
+) {
+}
@@ -0,0 +1,15 @@
+package com.tsb.banking.api.dto;
+
+import java.util.List;
+
+public record BatchTransferResponseDto(
+        int succeeded,
+        int failed,
+        List<BatchTransferItemDto> results
+) {
+
+    public static BatchTransferResponseDto of(List<BatchTransferItemDto> results) {
+        int ok = (int) results.stream().filter(r -> "OK".equals(r.status())).count();
+        return new BatchTransferResponseDto(ok, results.size() - ok, results);
+    }
+}
@@ -9,5 +9,6 @@ public record TransactionDto(Long id,
                              String currency,
                              String reference,
                              String counterparty,
-                             Instant createdAt) {
+                             Instant createdAt,
+                             BigDecimal fxRate) {
 }
@@ -0,0 +1,13 @@
+package com.tsb.banking.api.dto;
+
+import java.util.List;
+
+/**
+ * One page of a cursor-paged transaction listing.
+ * {@code nextCursor} is null on the last page; {@code totalElements} is only set when requested.
+ */
+public record TransactionSliceDto(List<TransactionDto> content,
+                                  int size,
+                                  String nextCursor,
+                                  Long totalElements) {
+}
@@ -0,0 +1,190 @@
+package com.tsb.banking.archive;
+
+import com.tsb.banking.api.dto.TransactionDto;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The archived transactions as of one manifest refresh: every transaction created before
+ * {@link #archivedBefore()}, and none after it. Immutable, so a request that reads the archive and the live
+ * table through the same view sees each transaction exactly once.
+ */
+public final class ArchiveView {
+
+    /** Receives archived rows, oldest first. */
+    public interface RowConsumer {
+        void accept(TransactionDto row) throws IOException;
+    }
+
+    private final Instant archivedBefore;
+    private final List<Segment> segments;   // newest first; per account their time ranges do not overlap
+
+    ArchiveView(Instant archivedBefore, List<Segment> segments) {
+        this.archivedBefore = archivedBefore;
+        this.segments = segments;
+    }
+
+    /** Transactions created before this instant are read from the archive, later ones from the table. */
+    public Instant archivedBefore() {
+        return archivedBefore;
+    }
+
+    List<Segment> segments() {
+        return segments;
+    }
+
+    /** Number of archived transactions of the account with from <= created_at <= to. */
+    public long count(long accountId, Instant from, Instant to) {
+        long lo = ceilMicros(from);
+        long hi = Segment.micros(to);
+        long count = 0;
+        for (Segment s : segments) {
+            if (!s.overlaps(lo, hi)) {
+                continue;
+            }
+            for (int i = s.firstChunk(accountId); i >= 0 && i < s.chunkCount(); i++) {
+                Segment.IndexEntry e = s.entry(i);
+                if (e.accountId() != accountId) {
+                    break;
+                }
+                if (e.minMicros() >= lo && e.maxMicros() <= hi) {
+                    count += e.rows();
+                } else if (e.minMicros() <= hi && e.maxMicros() >= lo) {
+                    Segment.Chunk c = s.read(e);
+                    for (int r = 0; r < c.size(); r++) {
+                        if (c.micros()[r] >= lo && c.micros()[r] <= hi) {
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Net effect on the balance (credits - debits) of archived transactions with after < created_at <= upTo. */
+    public BigDecimal netAmount(long accountId, Instant after, Instant upTo) {
+        long lo = Segment.micros(after) + 1;
+        long hi = upTo == null ? Long.MAX_VALUE : Segment.micros(upTo);
+        long net = 0;
+        for (Segment s : segments) {
+            if (!s.overlaps(lo, hi)) {
+                continue;
+            }
+            for (int i = s.firstChunk(accountId); i >= 0 && i < s.chunkCount(); i++) {
+                Segment.IndexEntry e = s.entry(i);
+                if (e.accountId() != accountId) {
+                    break;
+                }
+                if (e.minMicros() >= lo && e.maxMicros() <= hi) {
+                    net += e.netUnscaled();
+                } else if (e.minMicros() <= hi && e.maxMicros() >= lo) {
+                    Segment.Chunk c = s.read(e);
+                    for (int r = 0; r < c.size(); r++) {
+                        if (c.micros()[r] >= lo && c.micros()[r] <= hi) {
+                            net += c.credit()[r] ? c.unscaled()[r] : -c.unscaled()[r];
+                        }
+                    }
+                }
+            }
+        }
+        return Segment.amount(net);
+    }
+
+    /**
+     * Archived transactions of the account with from <= created_at <= to, newest first, skipping the first
+     * {@code skip}. Whole chunks inside the range are skipped from the index without inflating them.
+     */
+    public List<TransactionDto> newestFirst(long accountId, Instant from, Instant to, long skip, int limit) {
+        return newest(accountId, from, to, Long.MAX_VALUE, Long.MAX_VALUE, skip, limit);
+    }
+
+    /** Like {@link #newestFirst} but only rows ordered after the keyset (created_at, id) in newest-first order. */
+    public List<TransactionDto> newestBefore(long accountId, Instant from, Instant to, Instant beforeCreatedAt,
+                                             long beforeId, int limit) {
+        return newest(accountId, from, to, Segment.micros(beforeCreatedAt), beforeId, 0, limit);
+    }
+
+    private List<TransactionDto> newest(long accountId, Instant from, Instant to, long beforeMicros, long beforeId,
+                                        long skip, int limit) {
+        long lo = ceilMicros(from);
+        long hi = Segment.micros(to);
+        List<TransactionDto> out = new ArrayList<>(Math.min(limit, 1024));
+        for (Segment s : segments) {
+            if (out.size() >= limit) {
+                break;
+            }
+            int first = s.firstChunk(accountId);
+            if (first < 0 || !s.overlaps(lo, Math.min(hi, beforeMicros))) {
+                continue;
+            }
+            int last = first;
+            while (last + 1 < s.chunkCount() && s.entry(last + 1).accountId() == accountId) {
+                last++;
+            }
+            for (int i = last; i >= first && out.size() < limit; i--) {
+                Segment.IndexEntry e = s.entry(i);
+                if (e.maxMicros() < lo) {
+                    break;
+                }
+                if (e.minMicros() > hi || e.minMicros() > beforeMicros) {
+                    continue;
+                }
+                boolean whole = e.minMicros() >= lo && e.maxMicros() <= hi && e.maxMicros() < beforeMicros;
+                if (whole && skip >= e.rows()) {
+                    skip -= e.rows();
+                    continue;
+                }
+                Segment.Chunk c = s.read(e);
+                for (int r = c.size() - 1; r >= 0 && out.size() < limit; r--) {
+                    long m = c.micros()[r];
+                    if (m < lo || m > hi || m > beforeMicros || (m == beforeMicros && c.ids()[r] >= beforeId)) {
+                        continue;
+                    }
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    out.add(c.row(r));
+                }
+            }
+        }
+        return out;
+    }
+
+    /** Every archived transaction of the account with from <= created_at <= to, oldest first. */
+    public void oldestFirst(long accountId, Instant from, Instant to, RowConsumer consumer) throws IOException {
+        long lo = ceilMicros(from);
+        long hi = Segment.micros(to);
+        for (int si = segments.size() - 1; si >= 0; si--) {
+            Segment s = segments.get(si);
+            if (!s.overlaps(lo, hi)) {
+                continue;
+            }
+            for (int i = s.firstChunk(accountId); i >= 0 && i < s.chunkCount(); i++) {
+                Segment.IndexEntry e = s.entry(i);
+                if (e.accountId() != accountId || e.minMicros() > hi) {
+                    break;
+                }
+                if (e.maxMicros() < lo) {
+                    continue;
+                }
+                Segment.Chunk c = s.read(e);
+                for (int r = 0; r < c.size(); r++) {
+                    if (c.micros()[r] >= lo && c.micros()[r] <= hi) {
+                        consumer.accept(c.row(r));
+                    }
+                }
+            }
+        }
+    }
+
+    // rows are stored to the microsecond
+    private static long ceilMicros(Instant t) {
+        return Segment.micros(t) + (t.getNano() % 1_000 == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,260 @@
+package com.tsb.banking.archive;
+
+import com.tsb.banking.api.dto.TransactionDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only, memory-mapped segment file of archived transactions.
+ *
+ * Layout (big-endian): a 64 byte header [magic][version][chunkCount][rowCount][minMicros][maxMicros][indexOffset],
+ * the deflated chunks, then a fixed-width index with one entry per chunk
+ * [accountId][minMicros][maxMicros][net][offset][rows][length][rawLength], sorted by account and time.
+ * A chunk holds up to app.archive.chunk-rows rows of one account in (created_at, id) order, stored column by
+ * column: id deltas, created_at deltas in microseconds, type, amount in cents, currency, reference, counterparty,
+ * fx_rate (in units of 10^-8, plus one; 0 for none). Version 1 segments, written before fx_rate was archived,
+ * have no fx_rate column and read back without a rate.
+ * The index carries each chunk's time range and net amount, so lookups, counts and sums over whole chunks
+ * never inflate them.
+ */
+final class Segment {
+
+    static final long MAGIC = 0x545842534547_0001L;   // "TXBSEG"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 64;
+    static final int INDEX_ENTRY_BYTES = 5 * Long.BYTES + 3 * Integer.BYTES;
+    static final String CREDIT = "CREDIT";
+    static final String DEBIT = "DEBIT";
+
+    record IndexEntry(long accountId, long minMicros, long maxMicros, long netUnscaled, long offset,
+                      int rows, int length, int rawLength) {
+    }
+
+    /** The decoded rows of one chunk, oldest first. */
+    record Chunk(long[] ids, long[] micros, boolean[] credit, long[] unscaled, String[] currency,
+                 String[] reference, String[] counterparty, BigDecimal[] fxRate) {
+
+        int size() {
+            return ids.length;
+        }
+
+        TransactionDto row(int i) {
+            return new TransactionDto(ids[i], credit[i] ? CREDIT : DEBIT, amount(unscaled[i]), currency[i],
+                    reference[i], counterparty[i], instant(micros[i]), fxRate[i]);
+        }
+    }
+
+    private final long id;
+    private final String fileName;
+    private final MappedByteBuffer buffer;
+    private final int version;
+    private final int chunkCount;
+    private final long rowCount;
+    private final long minMicros;
+    private final long maxMicros;
+    private final int indexOffset;
+
+    private Segment(long id, String fileName, MappedByteBuffer buffer) throws IOException {
+        this.id = id;
+        this.fileName = fileName;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getLong(0) != MAGIC) {
+            throw new IOException("Not a finished segment file: " + fileName);
+        }
+        this.version = buffer.getInt(8);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Segment file " + fileName + " has format version " + version
+                    + ", this build reads versions 1 to " + VERSION);
+        }
+        this.chunkCount = buffer.getInt(12);
+        this.rowCount = buffer.getLong(16);
+        this.minMicros = buffer.getLong(24);
+        this.maxMicros = buffer.getLong(32);
+        this.indexOffset = Math.toIntExact(buffer.getLong(40));
+    }
+
+    static Segment open(long id, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment file too large to map: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            return new Segment(id, file.getFileName().toString(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    long id() {
+        return id;
+    }
+
+    String fileName() {
+        return fileName;
+    }
+
+    long rowCount() {
+        return rowCount;
+    }
+
+    boolean overlaps(long fromMicros, long toMicros) {
+        return rowCount > 0 && minMicros <= toMicros && maxMicros >= fromMicros;
+    }
+
+    /** Index position of the account's first chunk, or -1 if the segment has none. */
+    int firstChunk(long accountId) {
+        int lo = 0;
+        int hi = chunkCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (buffer.getLong(indexOffset + mid * INDEX_ENTRY_BYTES) < accountId) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo < chunkCount && entry(lo).accountId() == accountId ? lo : -1;
+    }
+
+    int chunkCount() {
+        return chunkCount;
+    }
+
+    IndexEntry entry(int i) {
+        int at = indexOffset + i * INDEX_ENTRY_BYTES;
+        return new IndexEntry(buffer.getLong(at), buffer.getLong(at + 8), buffer.getLong(at + 16),
+                buffer.getLong(at + 24), buffer.getLong(at + 32), buffer.getInt(at + 40), buffer.getInt(at + 44),
+                buffer.getInt(at + 48));
+    }
+
+    Chunk read(IndexEntry e) {
+        byte[] raw = new byte[e.rawLength()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.slice((int) e.offset(), e.length()));
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                n += inflater.inflate(raw, n, raw.length - n);
+            }
+            if (n != raw.length) {
+                throw new IllegalStateException("Truncated chunk at " + e.offset() + " in " + fileName);
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupt chunk at " + e.offset() + " in " + fileName, ex);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        int rows = (int) getVarLong(in);
+        long[] ids = new long[rows];
+        long[] micros = new long[rows];
+        boolean[] credit = new boolean[rows];
+        long[] unscaled = new long[rows];
+        String[] currency = new String[rows];
+        String[] reference = new String[rows];
+        String[] counterparty = new String[rows];
+        long prev = 0;
+        for (int i = 0; i < rows; i++) {
+            ids[i] = prev += unzigzag(getVarLong(in));
+        }
+        prev = 0;
+        for (int i = 0; i < rows; i++) {
+            micros[i] = prev += unzigzag(getVarLong(in));
+        }
+        for (int i = 0; i < rows; i++) {
+            credit[i] = in.get() == 1;
+        }
+        for (int i = 0; i < rows; i++) {
+            unscaled[i] = unzigzag(getVarLong(in));
+        }
+        for (int i = 0; i < rows; i++) {
+            currency[i] = getString(in);
+        }
+        for (int i = 0; i < rows; i++) {
+            reference[i] = getString(in);
+        }
+        for (int i = 0; i < rows; i++) {
+            counterparty[i] = getString(in);
+        }
+        BigDecimal[] fxRate = new BigDecimal[rows];
+        if (version >= 2) {
+            for (int i = 0; i < rows; i++) {
+                long v = getVarLong(in);
+                fxRate[i] = v == 0 ? null : BigDecimal.valueOf(v - 1, 8);
+            }
+        }
+        return new Chunk(ids, micros, credit, unscaled, currency, reference, counterparty, fxRate);
+    }
+
+    // -- encoding helpers shared with SegmentWriter
+
+    static long micros(Instant t) {
+        return Math.addExact(Math.multiplyExact(t.getEpochSecond(), 1_000_000L), t.getNano() / 1_000);
+    }
+
+    static Instant instant(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+    }
+
+    // amounts are numeric(19, 2)
+    static long unscaled(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    static BigDecimal amount(long unscaled) {
+        return BigDecimal.valueOf(unscaled, 2);
+    }
+
+    // rates are numeric(19, 8) and positive
+    static long unscaledRate(BigDecimal rate) {
+        return rate.setScale(8, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    static void putVarLong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int len = (int) getVarLong(in) - 1;
+        if (len < 0) {
+            return null;
+        }
+        String s = new String(in.array(), in.position(), len, StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return s;
+    }
+}
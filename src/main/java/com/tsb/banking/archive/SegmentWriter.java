@@ -0,0 +1,172 @@
+package com.tsb.banking.archive;
+
+import com.tsb.banking.api.dto.TransactionDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes one segment file, see {@link Segment} for the layout.
+ *
+ * Rows must be added in (account, created_at, id) order. They are buffered per account and written as a
+ * deflated chunk every app.archive.chunk-rows rows or when the account changes; the index and the header go
+ * in last, so a file without a valid header is simply an unfinished segment.
+ */
+class SegmentWriter implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final int chunkRows;
+    private final List<TransactionDto> rows = new ArrayList<>();
+    private final List<Segment.IndexEntry> index = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private long accountId = -1;
+    private long position = Segment.HEADER_BYTES;
+    private long rowCount;
+    private long minMicros = Long.MAX_VALUE;
+    private long maxMicros = Long.MIN_VALUE;
+
+    SegmentWriter(Path file, int chunkRows) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.chunkRows = chunkRows;
+    }
+
+    void add(long accountId, TransactionDto row) throws IOException {
+        if (accountId != this.accountId || rows.size() == chunkRows) {
+            flushChunk();
+            this.accountId = accountId;
+        }
+        rows.add(row);
+    }
+
+    long size() {
+        return position;
+    }
+
+    long rowCount() {
+        return rowCount + rows.size();
+    }
+
+    Instant minCreatedAt() {
+        return Segment.instant(minMicros);
+    }
+
+    Instant maxCreatedAt() {
+        return Segment.instant(maxMicros);
+    }
+
+    /** Write the index and the header and force everything to disk. */
+    void finish() throws IOException {
+        flushChunk();
+        long indexOffset = position;
+        ByteBuffer buf = ByteBuffer.allocate(index.size() * Segment.INDEX_ENTRY_BYTES);
+        for (Segment.IndexEntry e : index) {
+            buf.putLong(e.accountId()).putLong(e.minMicros()).putLong(e.maxMicros()).putLong(e.netUnscaled())
+                    .putLong(e.offset()).putInt(e.rows()).putInt(e.length()).putInt(e.rawLength());
+        }
+        writeFully(buf.flip(), indexOffset);
+
+        ByteBuffer header = ByteBuffer.allocate(Segment.HEADER_BYTES);
+        header.putLong(Segment.MAGIC).putInt(Segment.VERSION).putInt(index.size()).putLong(rowCount)
+                .putLong(minMicros).putLong(maxMicros).putLong(indexOffset);
+        writeFully(header.clear(), 0);
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        channel.close();
+    }
+
+    private void flushChunk() throws IOException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(rows.size() * 48);
+        Segment.putVarLong(raw, rows.size());
+
+        // column by column, so similar values sit next to each other for the deflater
+        long prevId = 0;
+        for (TransactionDto r : rows) {
+            Segment.putVarLong(raw, Segment.zigzag(r.id() - prevId));
+            prevId = r.id();
+        }
+        long prevMicros = 0;
+        long chunkMin = Long.MAX_VALUE;
+        long chunkMax = Long.MIN_VALUE;
+        for (TransactionDto r : rows) {
+            long micros = Segment.micros(r.createdAt());
+            Segment.putVarLong(raw, Segment.zigzag(micros - prevMicros));
+            prevMicros = micros;
+            chunkMin = Math.min(chunkMin, micros);
+            chunkMax = Math.max(chunkMax, micros);
+        }
+        for (TransactionDto r : rows) {
+            raw.write(Segment.CREDIT.equals(r.type()) ? 1 : 0);
+        }
+        long net = 0;
+        for (TransactionDto r : rows) {
+            long unscaled = Segment.unscaled(r.amount());
+            Segment.putVarLong(raw, Segment.zigzag(unscaled));
+            net += Segment.CREDIT.equals(r.type()) ? unscaled : -unscaled;
+        }
+        for (TransactionDto r : rows) {
+            putString(raw, r.currency());
+        }
+        for (TransactionDto r : rows) {
+            putString(raw, r.reference());
+        }
+        for (TransactionDto r : rows) {
+            putString(raw, r.counterparty());
+        }
+        for (TransactionDto r : rows) {
+            Segment.putVarLong(raw, r.fxRate() == null ? 0 : Segment.unscaledRate(r.fxRate()) + 1);
+        }
+
+        byte[] input = raw.toByteArray();
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(input.length / 2 + 64);
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buf, 0, deflater.deflate(buf));
+        }
+        byte[] out = compressed.toByteArray();
+        writeFully(ByteBuffer.wrap(out), position);
+
+        index.add(new Segment.IndexEntry(accountId, chunkMin, chunkMax, net, position, rows.size(), out.length,
+                input.length));
+        position += out.length;
+        rowCount += rows.size();
+        minMicros = Math.min(minMicros, chunkMin);
+        maxMicros = Math.max(maxMicros, chunkMax);
+        rows.clear();
+    }
+
+    // varint(length + 1) then UTF-8, 0 for null
+    private static void putString(ByteArrayOutputStream out, String s) {
+        if (s == null) {
+            Segment.putVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        Segment.putVarLong(out, bytes.length + 1);
+        out.writeBytes(bytes);
+    }
+
+    private void writeFully(ByteBuffer buf, long at) throws IOException {
+        while (buf.hasRemaining()) {
+            at += channel.write(buf, at);
+        }
+    }
+}
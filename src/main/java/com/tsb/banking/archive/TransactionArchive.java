@@ -0,0 +1,89 @@
+package com.tsb.banking.archive;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read side of the transaction archive: the segments listed in archive_segments, mapped from app.archive.dir.
+ *
+ * The manifest is reloaded every app.archive.manifest-refresh, so on a multi-node deployment the directory
+ * must be shared. Nodes pick up a new segment within that interval; the archiver only deletes the rows it
+ * copied on its next run, so until then a node that has not refreshed still finds them in the table.
+ */
+@Component
+public class TransactionArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionArchive.class);
+
+    private final JdbcTemplate jdbc;
+    private final Path dir;
+    private volatile ArchiveView current = new ArchiveView(Instant.EPOCH, List.of());
+
+    public TransactionArchive(JdbcTemplate jdbc, @Value("${app.archive.dir:./data/archive}") Path dir) {
+        this.jdbc = jdbc;
+        this.dir = dir;
+    }
+
+    /** The archive as of the last manifest refresh; read it once per request. */
+    public ArchiveView current() {
+        return current;
+    }
+
+    // a segment that cannot be opened fails startup rather than hide its transactions
+    @PostConstruct
+    void load() throws IOException {
+        current = read();
+    }
+
+    @Scheduled(initialDelayString = "${app.archive.manifest-refresh:PT1M}",
+            fixedDelayString = "${app.archive.manifest-refresh:PT1M}")
+    public void refresh() {
+        try {
+            current = read();
+        } catch (IOException | RuntimeException e) {
+            log.error("Transaction archive manifest refresh failed, still serving the archive before {}",
+                    current.archivedBefore(), e);
+        }
+    }
+
+    private ArchiveView read() throws IOException {
+        // the watermark first: segments committed after it are above it and left for the next refresh
+        Instant archivedBefore = jdbc.queryForObject("select archived_before from archive_state where id = 1",
+                (rs, i) -> rs.getTimestamp(1).toInstant());
+        List<Object[]> rows = jdbc.query("select id, file_name from archive_segments where max_created_at < ? "
+                        + "order by max_created_at desc, id desc",
+                (rs, i) -> new Object[]{rs.getLong(1), rs.getString(2)}, Timestamp.from(archivedBefore));
+
+        Map<Long, Segment> open = new HashMap<>();
+        for (Segment s : current.segments()) {
+            open.put(s.id(), s);
+        }
+        List<Segment> segments = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            long id = (Long) row[0];
+            Segment s = open.get(id);
+            if (s == null) {
+                s = Segment.open(id, dir.resolve((String) row[1]));
+            }
+            segments.add(s);
+        }
+        if (!archivedBefore.equals(current.archivedBefore())) {
+            log.info("Transaction archive now holds {} segments, everything before {}", segments.size(), archivedBefore);
+        }
+        return new ArchiveView(archivedBefore, List.copyOf(segments));
+    }
+}
@@ -0,0 +1,259 @@
+package com.tsb.banking.archive;
+
+import com.tsb.banking.api.dto.TransactionDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves transactions older than app.archive.horizon out of the transactions table into segment files.
+ *
+ * Each run first deletes the rows the previous run archived (below archive_state.archived_before, which
+ * every node has picked up by now), then archives whole app.archive.segment-span windows up to the horizon,
+ * oldest first. A window is copied account by account along idx_txn_account_created into one or more
+ * segments, which are fsynced and renamed into place before a single transaction lists them in
+ * archive_segments and moves the watermark past the window. Another node that archived the same window
+ * first wins; the loser deletes its files. app.archive.interval must be longer than
+ * app.archive.manifest-refresh.
+ *
+ * Off unless app.archive.enabled=true: archived rows are deleted from the table, so app.archive.dir must be
+ * durable storage shared by every node first.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.archive", name = "enabled", havingValue = "true")
+public class TransactionArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionArchiver.class);
+    private static final int PAGE = 500;
+    // a segment is mapped as a single buffer; start a new file at the next account past this size
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private static final String SELECT =
+            "select id, type, amount, currency, reference, counterparty, created_at, fx_rate from transactions "
+                    + "where account_id = ? and created_at >= ? and created_at < ? order by created_at, id";
+
+    private record Written(Path file, SegmentWriter writer) {
+    }
+
+    private final TransactionArchive archive;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final Path dir;
+    private final Duration horizon;
+    private final Duration segmentSpan;
+    private final int chunkRows;
+    private final int deleteBatchSize;
+    private final int fetchSize;
+    private final Counter archived;
+    private final Counter purged;
+
+    public TransactionArchiver(TransactionArchive archive, JdbcTemplate jdbc, TransactionTemplate tx,
+                               @Value("${app.archive.dir:./data/archive}") Path dir,
+                               @Value("${app.archive.horizon:P365D}") Duration horizon,
+                               @Value("${app.archive.segment-span:P30D}") Duration segmentSpan,
+                               @Value("${app.archive.chunk-rows:1024}") int chunkRows,
+                               @Value("${app.archive.delete-batch-size:1000}") int deleteBatchSize,
+                               @Value("${app.export.fetch-size:500}") int fetchSize,
+                               MeterRegistry meters) {
+        this.archive = archive;
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.dir = dir;
+        this.horizon = horizon;
+        this.segmentSpan = segmentSpan;
+        this.chunkRows = chunkRows;
+        this.deleteBatchSize = deleteBatchSize;
+        this.fetchSize = fetchSize;
+        this.archived = meters.counter("banking.archive.rows", "outcome", "archived");
+        this.purged = meters.counter("banking.archive.rows", "outcome", "purged");
+    }
+
+    @Scheduled(initialDelayString = "${app.archive.initial-delay:PT2M}",
+            fixedDelayString = "${app.archive.interval:P1D}")
+    public void run() {
+        try {
+            purgeArchived();
+            archiveUpTo(Instant.now().minus(horizon).truncatedTo(ChronoUnit.DAYS));
+        } catch (IOException | RuntimeException e) {
+            log.error("Transaction archiver failed", e);
+        }
+    }
+
+    private Instant watermark() {
+        return jdbc.queryForObject("select archived_before from archive_state where id = 1",
+                (rs, i) -> rs.getTimestamp(1).toInstant());
+    }
+
+    // a bounded batch per statement and account, so the purge never locks a large range of transactions
+    private void purgeArchived() {
+        Timestamp before = Timestamp.from(watermark());
+        long total = 0;
+        for (long afterId = 0; ; ) {
+            List<Long> ids = accountsAfter(afterId);
+            for (Long id : ids) {
+                int deleted;
+                do {
+                    deleted = jdbc.update("delete from transactions where id in (select id from transactions "
+                            + "where account_id = ? and created_at < ? order by created_at limit ?)",
+                            id, before, deleteBatchSize);
+                    total += deleted;
+                } while (deleted == deleteBatchSize);
+            }
+            if (ids.size() < PAGE) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+        }
+        if (total > 0) {
+            purged.increment(total);
+            log.info("Deleted {} archived transactions created before {}", total, before.toInstant());
+        }
+    }
+
+    private void archiveUpTo(Instant cutoff) throws IOException {
+        Instant start = watermark();
+        if (!start.isBefore(cutoff)) {
+            return;
+        }
+        // skip straight to the oldest row instead of walking empty windows from the epoch
+        Instant oldest = jdbc.queryForObject("select min(created_at) from transactions where created_at >= ?",
+                (rs, i) -> rs.getTimestamp(1) == null ? null : rs.getTimestamp(1).toInstant(), Timestamp.from(start));
+        Instant windowStart = oldest == null ? cutoff : oldest.truncatedTo(ChronoUnit.DAYS);
+        Files.createDirectories(dir);
+
+        while (start.isBefore(cutoff)) {
+            Instant end = windowStart.isAfter(start) ? windowStart.plus(segmentSpan) : start.plus(segmentSpan);
+            if (end.isAfter(cutoff)) {
+                end = cutoff;
+            }
+            List<Written> segments = write(start, end, windowStart.isAfter(start) ? windowStart : start);
+            if (!commit(start, end, segments)) {
+                for (Written w : segments) {
+                    Files.deleteIfExists(w.file());
+                }
+                log.info("Transactions before {} were archived by another node", end);
+                return;
+            }
+            long rows = segments.stream().mapToLong(w -> w.writer().rowCount()).sum();
+            archived.increment(rows);
+            log.info("Archived {} transactions created in [{}, {}) into {} segments", rows, start, end, segments.size());
+            start = end;
+        }
+        archive.refresh();
+    }
+
+    private List<Written> write(Instant from, Instant to, Instant named) throws IOException {
+        List<Written> done = new ArrayList<>();
+        Written[] current = new Written[1];
+        String prefix = "txn-" + LocalDate.ofInstant(named, ZoneOffset.UTC) + "-"
+                + UUID.randomUUID().toString().substring(0, 8) + "-";
+        try {
+            for (long afterId = 0; ; ) {
+                List<Long> ids = accountsAfter(afterId);
+                for (Long accountId : ids) {
+                    if (current[0] != null && current[0].writer().size() > MAX_SEGMENT_BYTES) {
+                        done.add(finish(current[0]));
+                        current[0] = null;
+                    }
+                    jdbc.query(con -> {
+                        PreparedStatement ps = con.prepareStatement(SELECT, ResultSet.TYPE_FORWARD_ONLY,
+                                ResultSet.CONCUR_READ_ONLY);
+                        ps.setFetchSize(fetchSize);
+                        ps.setLong(1, accountId);
+                        ps.setTimestamp(2, Timestamp.from(from));
+                        ps.setTimestamp(3, Timestamp.from(to));
+                        return ps;
+                    }, rs -> {
+                        try {
+                            if (current[0] == null) {
+                                Path tmp = dir.resolve(prefix + (done.size() + 1) + ".seg.tmp");
+                                current[0] = new Written(tmp, new SegmentWriter(tmp, chunkRows));
+                            }
+                            current[0].writer().add(accountId, new TransactionDto(rs.getLong(1), rs.getString(2),
+                                    rs.getBigDecimal(3), rs.getString(4), rs.getString(5), rs.getString(6),
+                                    rs.getTimestamp(7).toInstant(), rs.getBigDecimal(8)));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+                if (ids.size() < PAGE) {
+                    break;
+                }
+                afterId = ids.get(ids.size() - 1);
+            }
+            if (current[0] != null) {
+                done.add(finish(current[0]));
+            }
+            return done;
+        } catch (IOException | RuntimeException e) {
+            if (current[0] != null) {
+                current[0].writer().close();
+                Files.deleteIfExists(current[0].file());
+            }
+            for (Written w : done) {
+                Files.deleteIfExists(w.file());
+            }
+            if (e instanceof UncheckedIOException u) {
+                throw u.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // fsync, then rename: a listed segment is always complete
+    private Written finish(Written w) throws IOException {
+        w.writer().finish();
+        w.writer().close();
+        String name = w.file().getFileName().toString();
+        Path file = w.file().resolveSibling(name.substring(0, name.length() - ".tmp".length()));
+        Files.move(w.file(), file, StandardCopyOption.ATOMIC_MOVE);
+        return new Written(file, w.writer());
+    }
+
+    private boolean commit(Instant start, Instant end, List<Written> segments) {
+        return Boolean.TRUE.equals(tx.execute(status -> {
+            int moved = jdbc.update("update archive_state set archived_before = ? where id = 1 and archived_before = ?",
+                    Timestamp.from(end), Timestamp.from(start));
+            if (moved == 0) {
+                return false;
+            }
+            Timestamp now = Timestamp.from(Instant.now());
+            for (Written w : segments) {
+                jdbc.update("insert into archive_segments (file_name, min_created_at, max_created_at, row_count, created_at) "
+                                + "values (?, ?, ?, ?, ?)",
+                        w.file().getFileName().toString(), Timestamp.from(w.writer().minCreatedAt()),
+                        Timestamp.from(w.writer().maxCreatedAt()), w.writer().rowCount(), now);
+            }
+            return true;
+        }));
+    }
+
+    private List<Long> accountsAfter(long afterId) {
+        return jdbc.queryForList("select id from accounts where id > ? order by id limit " + PAGE, Long.class, afterId);
+    }
+}
@@ -0,0 +1,31 @@
+package com.tsb.banking.auth.sms;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An {@link SmsSender} that can hand the gateway several messages in one call.
+ * The default implementation sends them one by one, so any SmsSender can be adapted with {@code sender::send}.
+ */
+public interface BatchingSmsSender extends SmsSender {
+
+    record Sms(String phoneNumber, String message) {
+    }
+
+    /**
+     * Send a batch of messages.
+     * @return positions in {@code batch} of the messages the gateway did not accept; throwing fails the whole batch
+     */
+    default Set<Integer> sendBatch(List<Sms> batch) {
+        Set<Integer> failed = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                send(batch.get(i).phoneNumber(), batch.get(i).message());
+            } catch (RuntimeException e) {
+                failed.add(i);
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,57 @@
+package com.tsb.banking.auth.sms;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Seals SMS bodies with AES-256-GCM before they are written to sms_outbox, so the OTP codes they carry cannot be
+ * read from the table or its backups without app.sms.body-key. The destination is bound as associated data, so a
+ * sealed body only opens for the row it was written for.
+ */
+final class BodyCipher {
+
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+
+    BodyCipher(String base64Key) {
+        byte[] raw = Base64.getDecoder().decode(base64Key);
+        if (raw.length != 32) {
+            throw new IllegalArgumentException("app.sms.body-key must be 32 bytes, base64 encoded");
+        }
+        this.key = new SecretKeySpec(raw, "AES");
+    }
+
+    /** [iv][ciphertext + tag], base64 encoded. */
+    String seal(String destination, String body) {
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(destination.getBytes(StandardCharsets.UTF_8));
+            byte[] sealed = cipher.doFinal(body.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(ByteBuffer.allocate(IV_BYTES + sealed.length).put(iv).put(sealed).array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not seal SMS body", e);
+        }
+    }
+
+    /** @throws GeneralSecurityException if the body was sealed with another key or for another destination */
+    String open(String destination, String sealed) throws GeneralSecurityException {
+        byte[] bytes = Base64.getDecoder().decode(sealed);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, bytes, 0, IV_BYTES));
+        cipher.updateAAD(destination.getBytes(StandardCharsets.UTF_8));
+        return new String(cipher.doFinal(bytes, IV_BYTES, bytes.length - IV_BYTES), StandardCharsets.UTF_8);
+    }
+}
@@ -2,23 +2,55 @@ package com.tsb.banking.auth.sms;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
 
 /**
  * Mock SMS sender that logs the OTP instead of sending an actual SMS.
  * In a real application, integrate with an SMS gateway like Twilio or Nexmo.
+ * app.sms.mock.latency simulates the gateway's response time per call.
  */
 @Component
-public class MockSmsSender implements SmsSender {
+public class MockSmsSender implements BatchingSmsSender {
 
     private static final Logger log = LoggerFactory.getLogger(MockSmsSender.class);
 
+    private final Duration latency;
+
+    public MockSmsSender(@Value("${app.sms.mock.latency:PT0S}") Duration latency) {
+        this.latency = latency;
+    }
+
     @Override
     public void send(String phoneNumber, String message) {
+        sendBatch(List.of(new Sms(phoneNumber, message)));
+    }
 
-        // Log the OTP, mocking the sending SMS process
-        log.info("Mock SMS to {}: {}", mask(phoneNumber), message);
+    @Override
+    public Set<Integer> sendBatch(List<Sms> batch) {
+        simulateLatency();
+        for (Sms sms : batch) {
+            // Log the OTP, mocking the sending SMS process
+            log.info("Mock SMS to {}: {}", mask(sms.phoneNumber()), sms.message());
+        }
+        return Set.of();
+    }
+
+    private void simulateLatency() {
+        if (latency.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sending SMS", e);
+        }
     }
 
     private String mask(String phone) {
@@ -0,0 +1,252 @@
+package com.tsb.banking.auth.sms;
+
+import com.tsb.banking.auth.sms.BatchingSmsSender.Sms;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.GeneralSecurityException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Persistent outbox for outgoing SMS.
+ *
+ * {@link #enqueue} only inserts a row, in the caller's transaction, so the message is sent if and only if
+ * that transaction commits and the request never waits for the gateway. The body is stored sealed (see
+ * {@link BodyCipher}) and only opened in memory when it is sent. Due rows are claimed in batches
+ * (pushed out by app.sms.lease so another poll or node skips them), sent through {@link BatchingSmsSender}
+ * on background threads, then deleted or rescheduled with exponential backoff. At most app.sms.max-in-flight
+ * messages are with the gateway at any time.
+ */
+@Component
+public class SmsOutbox {
+
+    private static final Logger log = LoggerFactory.getLogger(SmsOutbox.class);
+
+    private record Message(long id, String destination, String body, int attempts) {
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final BatchingSmsSender sender;
+    private final BodyCipher cipher;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+    private final MeterRegistry meters;
+    private final Timer batchTimer;
+
+    public SmsOutbox(JdbcTemplate jdbc,
+                     TransactionTemplate tx,
+                     SmsSender sender,
+                     @Value("${app.sms.batch-size:50}") int batchSize,
+                     @Value("${app.sms.max-in-flight:200}") int maxInFlight,
+                     @Value("${app.sms.max-attempts:5}") int maxAttempts,
+                     @Value("${app.sms.lease:PT1M}") Duration lease,
+                     @Value("${app.sms.backoff:PT2S}") Duration backoff,
+                     @Value("${app.sms.max-backoff:PT5M}") Duration maxBackoff,
+                     @Value("${app.sms.body-key}") String bodyKey,
+                     MeterRegistry meters) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.sender = sender instanceof BatchingSmsSender batching ? batching : sender::send;
+        this.cipher = new BodyCipher(bodyKey);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.lease = lease;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.meters = meters;
+        this.batchTimer = meters.timer("banking.sms.batch");
+        Gauge.builder("banking.sms.in-flight", inFlight, s -> maxInFlight - s.availablePermits()).register(meters);
+    }
+
+    /** Queue a message; it is sent after the surrounding transaction commits and dropped if unsent by expiresAt. */
+    public void enqueue(String phoneNumber, String message, Instant expiresAt) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbc.update("insert into sms_outbox (destination, sealed_body, next_attempt_at, expires_at, created_at) "
+                        + "values (?, ?, ?, ?, ?)",
+                phoneNumber, cipher.seal(phoneNumber, message), now, Timestamp.from(expiresAt), now);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    // dispatch right away instead of at the next poll; concurrent wake-ups collapse into one
+    private void wakeUp() {
+        if (wakeUpPending.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                wakeUpPending.set(false);
+                dispatch();
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.sms.poll-interval:PT1S}")
+    public void dispatch() {
+        try {
+            purgeExpired();
+            while (true) {
+                int room = Math.min(batchSize, inFlight.availablePermits());
+                if (room == 0 || !inFlight.tryAcquire(room)) {
+                    return;
+                }
+                List<Message> batch;
+                try {
+                    batch = claim(room);
+                } catch (RuntimeException e) {
+                    inFlight.release(room);
+                    throw e;
+                }
+                inFlight.release(room - batch.size());
+                if (batch.isEmpty()) {
+                    return;
+                }
+                executor.execute(() -> {
+                    try {
+                        send(batch);
+                    } finally {
+                        inFlight.release(batch.size());
+                    }
+                });
+                if (batch.size() < room) {
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("SMS outbox dispatch failed", e);
+        }
+    }
+
+    private void purgeExpired() {
+        int expired = jdbc.update("delete from sms_outbox where expires_at < ?", Timestamp.from(Instant.now()));
+        if (expired > 0) {
+            meters.counter("banking.sms", "outcome", "expired").increment(expired);
+            log.warn("Dropped {} SMS that expired before they could be sent", expired);
+        }
+    }
+
+    private List<Message> claim(int limit) {
+        return tx.execute(status -> {
+            Instant now = Instant.now();
+            List<Message> due = new ArrayList<>();
+            List<Object[]> unreadable = new ArrayList<>();
+            jdbc.query("select id, destination, sealed_body, attempts from sms_outbox where next_attempt_at <= ? "
+                            + "order by next_attempt_at limit ? for update",
+                    rs -> {
+                        try {
+                            due.add(new Message(rs.getLong(1), rs.getString(2), cipher.open(rs.getString(2), rs.getString(3)),
+                                    rs.getInt(4)));
+                        } catch (GeneralSecurityException | IllegalArgumentException e) {
+                            unreadable.add(new Object[]{rs.getLong(1)});
+                        }
+                    },
+                    Timestamp.from(now), limit);
+            if (!unreadable.isEmpty()) {
+                // sealed with another key; it can never be sent
+                jdbc.batchUpdate("delete from sms_outbox where id = ?", unreadable);
+                meters.counter("banking.sms", "outcome", "dropped").increment(unreadable.size());
+                log.error("Dropped {} SMS whose body could not be opened with app.sms.body-key", unreadable.size());
+            }
+            if (!due.isEmpty()) {
+                // leased: becomes due again only if this node never reports back
+                Timestamp leasedUntil = Timestamp.from(now.plus(lease));
+                jdbc.batchUpdate("update sms_outbox set next_attempt_at = ? where id = ?",
+                        due.stream().map(m -> new Object[]{leasedUntil, m.id()}).toList());
+            }
+            return due;
+        });
+    }
+
+    private void send(List<Message> batch) {
+        Set<Integer> failed;
+        try {
+            failed = batchTimer.recordCallable(() -> sender.sendBatch(
+                    batch.stream().map(m -> new Sms(m.destination(), m.body())).toList()));
+        } catch (Exception e) {
+            log.warn("SMS gateway rejected a batch of {}", batch.size(), e);
+            failed = IntStream.range(0, batch.size()).boxed().collect(Collectors.toSet());
+        }
+
+        List<Object[]> done = new ArrayList<>();
+        List<Object[]> retry = new ArrayList<>();
+        int sent = 0;
+        int dropped = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Message m = batch.get(i);
+            if (!failed.contains(i)) {
+                done.add(new Object[]{m.id()});
+                sent++;
+            } else if (m.attempts() + 1 >= maxAttempts) {
+                done.add(new Object[]{m.id()});
+                dropped++;
+            } else {
+                retry.add(new Object[]{m.attempts() + 1, Timestamp.from(Instant.now().plus(backoff(m.attempts() + 1))), m.id()});
+            }
+        }
+        if (!done.isEmpty()) {
+            jdbc.batchUpdate("delete from sms_outbox where id = ?", done);
+        }
+        if (!retry.isEmpty()) {
+            jdbc.batchUpdate("update sms_outbox set attempts = ?, next_attempt_at = ? where id = ?", retry);
+        }
+        meters.counter("banking.sms", "outcome", "sent").increment(sent);
+        meters.counter("banking.sms", "outcome", "retried").increment(retry.size());
+        meters.counter("banking.sms", "outcome", "dropped").increment(dropped);
+        if (dropped > 0) {
+            log.error("Gave up on {} SMS after {} attempts", dropped, maxAttempts);
+        }
+    }
+
+    // attempt n waits a random half to full of backoff * 2^(n-1), capped at max-backoff
+    private Duration backoff(int attempt) {
+        long cap = Math.min(maxBackoff.toMillis(), backoff.toMillis() << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1));
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("SMS outbox stopped with {} messages in flight; they are resent after their lease", maxInFlight - inFlight.availablePermits());
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.tsb.banking.events;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * In-process delivery of the ledger change feed.
+ *
+ * Published events go into a bounded ring buffer. Every subscriber has its own thread and reads the ring from
+ * its own offset, so subscribers never block each other. The relay waits (up to app.ledger-events.publish-timeout)
+ * before overwriting an event a subscriber has not consumed yet, which back-pressures the relay instead of
+ * growing memory. A subscriber that is still too slow after that, or one that subscribes from an offset older
+ * than the ring, reads from {@link LedgerEventLog} until it has caught up.
+ *
+ * Delivery is at least once and in offset order; a handler that throws gets the same event again.
+ */
+@Component
+public class LedgerEventBus {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerEventBus.class);
+
+    public interface Subscription extends AutoCloseable {
+
+        /** Offset of the last event the handler accepted; pass it to subscribe to resume. */
+        long offset();
+
+        @Override
+        void close();
+    }
+
+    private final LedgerEventLog eventLog;
+    private final TransferPosted[] ring;
+    private final int maxBatch;
+    private final long publishTimeoutNanos;
+    private final MeterRegistry meters;
+    private final Counter overruns;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final Condition consumed = lock.newCondition();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private boolean started;
+    private long first;   // oldest offset held in the ring
+    private long head;    // newest published offset
+
+    public LedgerEventBus(LedgerEventLog eventLog,
+                          @Value("${app.ledger-events.buffer-size:4096}") int bufferSize,
+                          @Value("${app.ledger-events.max-batch:500}") int maxBatch,
+                          @Value("${app.ledger-events.publish-timeout:PT5S}") Duration publishTimeout,
+                          MeterRegistry meters) {
+        this.eventLog = eventLog;
+        this.ring = new TransferPosted[bufferSize];
+        this.maxBatch = maxBatch;
+        this.publishTimeoutNanos = publishTimeout.toNanos();
+        this.meters = meters;
+        this.overruns = meters.counter("banking.events.overruns");
+    }
+
+    /** Deliver every event after {@code fromOffset} to {@code handler}, on a thread of its own. */
+    public Subscription subscribe(String name, long fromOffset, Consumer<TransferPosted> handler) {
+        Subscriber s = new Subscriber(name, fromOffset, handler);
+        subscribers.add(s);
+        Gauge.builder("banking.events.lag", s, sub -> Math.max(0, lastOffset() - sub.offset))
+                .tag("subscriber", name).register(meters);
+        s.thread = Thread.ofVirtual().name("ledger-events-" + name).start(s);
+        return s;
+    }
+
+    /** Offset of the newest published event. */
+    public long lastOffset() {
+        lock.lock();
+        try {
+            return head;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called by the relay before its first publish
+    void start(long lastPublished) {
+        lock.lock();
+        try {
+            head = lastPublished;
+            first = lastPublished + 1;
+            started = true;
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Append events in offset order, waiting for live subscribers that would otherwise be overrun. */
+    void publish(List<TransferPosted> events) throws InterruptedException {
+        lock.lock();
+        try {
+            for (TransferPosted e : events) {
+                long evicted = e.offset() - ring.length;
+                long nanos = publishTimeoutNanos;
+                while (evicted >= first && slowestLive() < evicted) {
+                    if (nanos <= 0) {
+                        overruns.increment();
+                        log.warn("Ledger event subscriber fell {} events behind, it continues from the event log",
+                                ring.length);
+                        break;
+                    }
+                    nanos = consumed.awaitNanos(nanos);
+                }
+                ring[(int) (e.offset() % ring.length)] = e;
+                head = e.offset();
+                first = Math.max(first, evicted + 1);
+                published.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // lowest offset still reading from the ring; subscribers already behind it catch up from the log
+    private long slowestLive() {
+        long slowest = Long.MAX_VALUE;
+        for (Subscriber s : subscribers) {
+            if (s.offset + 1 >= first) {
+                slowest = Math.min(slowest, s.offset);
+            }
+        }
+        return slowest;
+    }
+
+    private List<TransferPosted> next(long offset) throws InterruptedException {
+        lock.lock();
+        try {
+            while (!started || offset >= head) {
+                if (!published.await(1, TimeUnit.SECONDS)) {
+                    return List.of();
+                }
+            }
+            if (offset + 1 >= first) {
+                List<TransferPosted> batch = new ArrayList<>();
+                for (long o = offset + 1; o <= head && batch.size() < maxBatch; o++) {
+                    batch.add(ring[(int) (o % ring.length)]);
+                }
+                return batch;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return eventLog.readAfter(offset, maxBatch);
+    }
+
+    private void consumedUpTo(Subscriber s, long offset) {
+        lock.lock();
+        try {
+            s.offset = offset;
+            consumed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Stop all subscriber threads. */
+    void stop() {
+        for (Subscriber s : subscribers) {
+            s.close();
+        }
+    }
+
+    private class Subscriber implements Subscription, Runnable {
+
+        private final String name;
+        private final Consumer<TransferPosted> handler;
+        private volatile long offset;
+        private volatile boolean running = true;
+        private Thread thread;
+
+        Subscriber(String name, long fromOffset, Consumer<TransferPosted> handler) {
+            this.name = name;
+            this.offset = fromOffset;
+            this.handler = handler;
+        }
+
+        @Override
+        public long offset() {
+            return offset;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    for (TransferPosted e : next(offset)) {
+                        deliver(e);
+                        consumedUpTo(this, e.offset());
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("Ledger event subscriber {} failed to read events", name, e);
+                    sleep();
+                }
+            }
+        }
+
+        private void deliver(TransferPosted e) throws InterruptedException {
+            while (running) {
+                try {
+                    handler.accept(e);
+                    return;
+                } catch (RuntimeException ex) {
+                    log.warn("Ledger event subscriber {} failed on offset {}, retrying", name, e.offset(), ex);
+                    sleep();
+                }
+            }
+            throw new InterruptedException("closed");
+        }
+
+        private void sleep() {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            subscribers.remove(this);
+            if (thread != null) {
+                thread.interrupt();
+            }
+            lock.lock();
+            try {
+                consumed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.tsb.banking.events;
+
+import com.tsb.banking.model.LedgerEvent;
+import com.tsb.banking.model.Money;
+import com.tsb.banking.model.Transaction;
+import com.tsb.banking.repo.LedgerEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ledger_events outbox and the change feed it becomes once published.
+ *
+ * Events are appended in the transfer's own transaction, so they exist exactly when the transfer does.
+ * Their ids come from a sequence while the accounts are locked, so id order is posting order per account;
+ * {@link #publishPending} gives committed events their offsets in that order.
+ */
+@Component
+public class LedgerEventLog {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerEventLog.class);
+
+    private static final String COLUMNS =
+            "seq, debit_txn_id, credit_txn_id, from_account_id, to_account_id, amount, currency, credit_amount, "
+                    + "credit_currency, fx_rate, created_at";
+
+    private static final RowMapper<TransferPosted> EVENT = (rs, i) -> new TransferPosted(rs.getLong(1), rs.getLong(2),
+            rs.getLong(3), rs.getLong(4), rs.getLong(5), rs.getBigDecimal(6), rs.getString(7), rs.getBigDecimal(8),
+            rs.getString(9), rs.getBigDecimal(10), rs.getTimestamp(11).toInstant());
+
+    private final LedgerEventRepository repo;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final Duration retention;
+    private final int purgeBatchSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private boolean pending;
+
+    public LedgerEventLog(LedgerEventRepository repo, JdbcTemplate jdbc, TransactionTemplate tx,
+                          @Value("${app.ledger-events.retention:P7D}") Duration retention,
+                          @Value("${app.ledger-events.purge-batch-size:1000}") int purgeBatchSize) {
+        this.repo = repo;
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.retention = retention;
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    /** Record a transfer in the current transaction; the relay is woken once it commits. */
+    public void append(Transaction debit, Transaction credit) {
+        LedgerEvent event = new LedgerEvent();
+        event.setDebitTxnId(debit.getId());
+        event.setCreditTxnId(credit.getId());
+        event.setFromAccountId(debit.getAccount().getId());
+        event.setToAccountId(credit.getAccount().getId());
+        event.setAmount(Money.toBigDecimal(debit.amountMinorUnits()));
+        event.setCurrency(debit.getCurrency());
+        event.setCreditAmount(Money.toBigDecimal(credit.amountMinorUnits()));
+        event.setCreditCurrency(credit.getCurrency());
+        event.setFxRate(debit.getFxRate());
+        event.setCreatedAt(debit.getCreatedAt());
+        repo.save(event);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    signal();
+                }
+            });
+        } else {
+            signal();
+        }
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            pending = true;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Wait until an append commits or the timeout passes. */
+    void awaitAppend(Duration timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = timeout.toNanos();
+            while (!pending && nanos > 0) {
+                nanos = appended.awaitNanos(nanos);
+            }
+            pending = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Give the oldest committed, unpublished events the next offsets and return them in offset order. */
+    List<TransferPosted> publishPending(int limit) {
+        return tx.execute(status -> {
+            List<Long> ids = jdbc.queryForList(
+                    "select id from ledger_events where seq is null order by id limit ? for update", Long.class, limit);
+            if (ids.isEmpty()) {
+                return List.of();
+            }
+            long next = lastOffset() + 1;
+            List<Object[]> offsets = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                offsets.add(new Object[]{next++, id});
+            }
+            jdbc.batchUpdate("update ledger_events set seq = ? where id = ?", offsets);
+            return jdbc.query("select " + COLUMNS + " from ledger_events where seq between ? and ? order by seq",
+                    EVENT, (long) offsets.get(0)[0], next - 1);
+        });
+    }
+
+    /** Published events after {@code offset}, oldest first. */
+    public List<TransferPosted> readAfter(long offset, int limit) {
+        return jdbc.query("select " + COLUMNS + " from ledger_events where seq > ? order by seq limit ?",
+                EVENT, offset, limit);
+    }
+
+    /** Offset of the latest published event, 0 if none. */
+    public long lastOffset() {
+        Long last = jdbc.queryForObject("select max(seq) from ledger_events", Long.class);
+        return last == null ? 0 : last;
+    }
+
+    // Published events older than the retention can no longer be replayed; the newest event is always kept
+    // because the next offset continues from it, and events AccountRollupJob has not applied yet are kept too
+    @Scheduled(initialDelayString = "${app.ledger-events.purge-interval:PT1H}",
+            fixedDelayString = "${app.ledger-events.purge-interval:PT1H}")
+    public void purge() {
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(retention));
+        long total = 0;
+        int deleted;
+        do {
+            deleted = jdbc.update("delete from ledger_events where id in (select id from ledger_events "
+                    + "where seq < (select max(seq) from ledger_events) "
+                    + "and seq <= (select last_offset from rollup_checkpoint where id = 1) "
+                    + "and created_at < ? order by seq limit ?)",
+                    cutoff, purgeBatchSize);
+            total += deleted;
+        } while (deleted == purgeBatchSize);
+        if (total > 0) {
+            log.info("Purged {} ledger events created before {}", total, cutoff.toInstant());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.tsb.banking.events;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves committed events from the ledger_events outbox onto the {@link LedgerEventBus}.
+ *
+ * A single thread publishes batches of up to app.ledger-events.max-batch events, woken by each committing
+ * transfer and otherwise every app.ledger-events.poll-interval (which also picks up events written by the
+ * ledger engine's background writer). Run one relay per database.
+ */
+@Component
+public class LedgerEventRelay implements SmartLifecycle, Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerEventRelay.class);
+
+    private final LedgerEventLog eventLog;
+    private final LedgerEventBus bus;
+    private final int maxBatch;
+    private final Duration pollInterval;
+    private final Counter published;
+    private volatile boolean running;
+    private Thread thread;
+
+    public LedgerEventRelay(LedgerEventLog eventLog, LedgerEventBus bus,
+                            @Value("${app.ledger-events.max-batch:500}") int maxBatch,
+                            @Value("${app.ledger-events.poll-interval:PT1S}") Duration pollInterval,
+                            MeterRegistry meters) {
+        this.eventLog = eventLog;
+        this.bus = bus;
+        this.maxBatch = maxBatch;
+        this.pollInterval = pollInterval;
+        this.published = meters.counter("banking.events.published");
+    }
+
+    @Override
+    public void start() {
+        bus.start(eventLog.lastOffset());
+        running = true;
+        thread = new Thread(this, "ledger-event-relay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        bus.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                List<TransferPosted> events = eventLog.publishPending(maxBatch);
+                if (events.isEmpty()) {
+                    eventLog.awaitAppend(pollInterval);
+                } else {
+                    bus.publish(events);
+                    published.increment(events.size());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // offsets already assigned are read back from the log by subscribers, nothing is lost
+                log.error("Ledger event relay failed, retrying", e);
+                try {
+                    Thread.sleep(pollInterval.toMillis());
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+}
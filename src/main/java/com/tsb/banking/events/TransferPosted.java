@@ -0,0 +1,15 @@
+package com.tsb.banking.events;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * A transfer posted to the ledger. {@code offset} is its position in the change feed:
+ * gap-free, increasing, and in posting order for any one account.
+ * {@code amount} is debited and {@code creditAmount} credited; they differ in currency when the transfer was
+ * priced at {@code fxRate}, which is null otherwise.
+ */
+public record TransferPosted(long offset, long debitTxnId, long creditTxnId, long fromAccountId, long toAccountId,
+                             BigDecimal amount, String currency, BigDecimal creditAmount, String creditCurrency,
+                             BigDecimal fxRate, Instant postedAt) {
+}
@@ -2,9 +2,15 @@ package com.tsb.banking.exception.advice;
 
 import com.tsb.banking.exception.BusinessException;
 import com.tsb.banking.exception.NotFoundException;
+import com.tsb.banking.ledger.LedgerBackloggedException;
+import com.tsb.banking.vthread.ConnectionPermitTimeoutException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import java.util.Map;
@@ -12,6 +18,12 @@ import java.util.Map;
 @RestControllerAdvice
 public class RestExceptionHandler {
 
+  private final MeterRegistry meters;
+
+  public RestExceptionHandler(MeterRegistry meters) {
+    this.meters = meters;
+  }
+
   @ExceptionHandler(NotFoundException.class)
   public ResponseEntity<Map<String, String>> handle(NotFoundException e) {
     return ResponseEntity.status(404).body(Map.of("error", e.getMessage()));
@@ -19,6 +31,7 @@ public class RestExceptionHandler {
 
   @ExceptionHandler(BusinessException.class)
   public ProblemDetail handleBusiness(BusinessException e) {
+    meters.counter("banking.business.errors", "code", e.getCode()).increment();
     ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.UNPROCESSABLE_ENTITY);
     pd.setTitle("Business Error");
     pd.setDetail(e.getMessage());
@@ -26,6 +39,38 @@ public class RestExceptionHandler {
     return pd;
   }
 
+  // no connection permit within the timeout (virtual threads); the client can retry. The permit failure arrives
+  // wrapped by the JDBC/JPA layers; any other connection or resource failure is an internal error
+  @ExceptionHandler({CannotCreateTransactionException.class, DataAccessResourceFailureException.class,
+      ConnectionPermitTimeoutException.class})
+  public ResponseEntity<ProblemDetail> handleUnavailable(Exception e) {
+    if (!causedByPermitTimeout(e)) {
+      return ResponseEntity.internalServerError().body(handleOthers(e));
+    }
+    ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.SERVICE_UNAVAILABLE);
+    pd.setTitle("Service Unavailable");
+    pd.setDetail("Too many concurrent requests, try again");
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(pd);
+  }
+
+  private static boolean causedByPermitTimeout(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof ConnectionPermitTimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // the ledger engine's database writer is behind (database down or slow); the client can retry later
+  @ExceptionHandler(LedgerBackloggedException.class)
+  public ResponseEntity<ProblemDetail> handleBacklogged(LedgerBackloggedException e) {
+    ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.SERVICE_UNAVAILABLE);
+    pd.setTitle("Service Unavailable");
+    pd.setDetail("Transfers are temporarily not accepted, try again");
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").body(pd);
+  }
+
   @ExceptionHandler(Exception.class)
   public ProblemDetail handleOthers(Exception e) {
     ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -0,0 +1,152 @@
+package com.tsb.banking.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuilds accounts.balance from the posting journal, then exits (app.journal.replay.enabled=true).
+ *
+ * An account's balance is its latest balance snapshot plus the journalled postings created after it. Only
+ * snapshots taken after the journal started qualify, since the journal holds nothing older; accounts without
+ * one are skipped. The journal is summed and the accounts are written in parallel, one transaction per
+ * account partition; the rebuilt balance includes any hot-account buckets, which are zeroed. With
+ * app.journal.replay.dry-run=true the differences are only logged. Run it while no transfers are posted.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.journal.replay", name = "enabled", havingValue = "true")
+public class BalanceRebuildRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceRebuildRunner.class);
+
+    private record Base(Instant asOf, BigDecimal balance) {
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final ConfigurableApplicationContext context;
+    private final Path dir;
+    private final int partitions;
+    private final boolean dryRun;
+
+    public BalanceRebuildRunner(JdbcTemplate jdbc, TransactionTemplate tx, ConfigurableApplicationContext context,
+                                @Value("${app.journal.dir:./data/journal}") Path dir,
+                                @Value("${app.journal.replay.partitions:4}") int partitions,
+                                @Value("${app.journal.replay.dry-run:false}") boolean dryRun) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.context = context;
+        this.dir = dir;
+        this.partitions = partitions;
+        this.dryRun = dryRun;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode = 0;
+        try {
+            rebuild();
+        } catch (IOException | RuntimeException e) {
+            log.error("Balance rebuild from the posting journal {} failed", dir, e);
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+
+    private void rebuild() throws IOException {
+        List<Path> segments = PostingJournal.segments(dir);
+        if (segments.isEmpty()) {
+            throw new IllegalStateException("No posting journal in " + dir);
+        }
+        PostingJournal.requireDatabase(segments, PostingRecorder.databaseId(jdbc));
+        long started = System.nanoTime();
+        Instant journalStart = PostingJournal.header(segments.get(0)).createdAt();
+
+        Map<Long, Base> bases = new HashMap<>();
+        jdbc.query("select s.account_id, s.as_of, s.balance from balance_snapshots s "
+                        + "where s.as_of = (select max(x.as_of) from balance_snapshots x where x.account_id = s.account_id) "
+                        + "and s.as_of >= ?",
+                rs -> {
+                    bases.put(rs.getLong(1), new Base(rs.getTimestamp(2).toInstant(), rs.getBigDecimal(3)));
+                }, Timestamp.from(journalStart));
+
+        List<JournalReplay.Partition> replayed = JournalReplay.replay(dir, partitions, account -> {
+            Base base = bases.get(account);
+            return base == null ? Long.MAX_VALUE : PostingJournal.micros(base.asOf());
+        });
+        long records = replayed.get(0).records();
+
+        AtomicLong changed = new AtomicLong();
+        try (ExecutorService writers = Executors.newFixedThreadPool(partitions)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (JournalReplay.Partition p : replayed) {
+                futures.add(writers.submit(() -> changed.addAndGet(write(p, bases))));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted writing rebuilt balances", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Writing rebuilt balances failed", e.getCause());
+        }
+
+        Long accounts = jdbc.queryForObject("select count(*) from accounts", Long.class);
+        log.info("{} {} account balances from {} journal records in {} ms: {} differed, {} skipped without a snapshot "
+                        + "taken after the journal started at {}", dryRun ? "Checked" : "Rebuilt", bases.size(), records,
+                (System.nanoTime() - started) / 1_000_000, changed.get(), accounts - bases.size(), journalStart);
+    }
+
+    // one transaction per partition; returns how many balances differed
+    private long write(JournalReplay.Partition partition, Map<Long, Base> bases) {
+        return tx.execute(status -> {
+            List<Object[]> balances = new ArrayList<>();
+            List<Object[]> buckets = new ArrayList<>();
+            jdbc.query("select a.id, a.balance + coalesce((select sum(b.balance) from account_buckets b "
+                            + "where b.account_id = a.id), 0) from accounts a where mod(a.id, ?) = ?",
+                    rs -> {
+                        long id = rs.getLong(1);
+                        Base base = bases.get(id);
+                        if (base == null) {
+                            return;
+                        }
+                        BigDecimal rebuilt = base.balance().add(partition.net().getOrDefault(id, BigDecimal.ZERO));
+                        if (rebuilt.compareTo(rs.getBigDecimal(2)) != 0) {
+                            log.info("Account {}: balance {}, journal gives {}", id, rs.getBigDecimal(2), rebuilt);
+                            balances.add(new Object[]{rebuilt, id});
+                            buckets.add(new Object[]{id});
+                        }
+                    }, partitions, partition.index());
+            if (!dryRun && !balances.isEmpty()) {
+                jdbc.batchUpdate("update accounts set balance = ?, version = version + 1 where id = ?", balances);
+                jdbc.batchUpdate("update account_buckets set balance = 0 where account_id = ?", buckets);
+            }
+            return (long) balances.size();
+        });
+    }
+}
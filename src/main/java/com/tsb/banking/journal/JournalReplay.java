@@ -0,0 +1,112 @@
+package com.tsb.banking.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/**
+ * Sums the posting journal into a net amount per account, in parallel by account partition.
+ *
+ * Every partition scans all segments through the same read-only mappings and keeps only the accounts with
+ * {@code id % partitions == partition}, so workers share nothing but the page cache and need no merge step.
+ * VOID records count negatively and cancel the posting they repeat.
+ */
+public final class JournalReplay {
+
+    /** Net amounts of one account partition. */
+    public record Partition(int index, Map<Long, BigDecimal> net, long records) {
+    }
+
+    /** Per account, only records created after this instant (in epoch microseconds) are summed. */
+    public interface Since {
+        long afterMicros(long accountId);
+    }
+
+    private JournalReplay() {
+    }
+
+    /**
+     * Replay every segment in {@code dir}.
+     * @param since lower bound per account; accounts it maps to Long.MAX_VALUE are skipped
+     */
+    public static List<Partition> replay(Path dir, int partitions, Since since) throws IOException {
+        List<MappedByteBuffer> segments = new ArrayList<>();
+        for (Path p : PostingJournal.segments(dir)) {
+            segments.add(PostingJournal.mapReadOnly(p));
+        }
+        try (ExecutorService workers = Executors.newFixedThreadPool(partitions)) {
+            List<Future<Partition>> futures = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                int partition = p;
+                futures.add(workers.submit(() -> scan(segments, partition, partitions, since)));
+            }
+            List<Partition> result = new ArrayList<>(partitions);
+            for (Future<Partition> f : futures) {
+                result.add(f.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted replaying the posting journal", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IllegalStateException("Posting journal replay failed", e.getCause());
+        }
+    }
+
+    private static Partition scan(List<MappedByteBuffer> segments, int partition, int partitions, Since since) {
+        Map<Long, long[]> cents = new HashMap<>();
+        byte[] scratch = new byte[PostingJournal.RECORD_BYTES];
+        CRC32C crc = new CRC32C();
+        long records = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            MappedByteBuffer buf = segments.get(s);
+            PostingJournal.Format format = PostingJournal.format(buf);
+            int size = format.recordBytes();
+            long seq = buf.getLong(16);
+            int o = PostingJournal.HEADER_BYTES;
+            for (; o + size <= buf.capacity(); o += size, seq++) {
+                if (!format.valid(buf, o, seq, scratch, crc)) {
+                    break;
+                }
+                long micros = buf.getLong(o + 8);
+                long debited = format.debited(buf, o);
+                long credited = format.credited(buf, o);
+                if (format.kind(buf, o) == Posting.Kind.VOID) {
+                    debited = -debited;
+                    credited = -credited;
+                }
+                long from = buf.getLong(o + 32);
+                long to = buf.getLong(o + 40);
+                if (Math.floorMod(from, partitions) == partition && micros > since.afterMicros(from)) {
+                    cents.computeIfAbsent(from, k -> new long[1])[0] -= debited;
+                }
+                if (Math.floorMod(to, partitions) == partition && micros > since.afterMicros(to)) {
+                    cents.computeIfAbsent(to, k -> new long[1])[0] += credited;
+                }
+                records++;
+            }
+            // a segment ends where the next one starts (early only for a segment of an older format)
+            if (s < segments.size() - 1 && segments.get(s + 1).getLong(16) != seq) {
+                throw new UncheckedIOException(new IOException("Posting journal segment ending at seq " + (seq - 1)
+                        + " is damaged before its end"));
+            }
+        }
+        Map<Long, BigDecimal> net = new HashMap<>(cents.size() * 2);
+        cents.forEach((account, c) -> net.put(account, BigDecimal.valueOf(c[0], 2)));
+        return new Partition(partition, net, records);
+    }
+}
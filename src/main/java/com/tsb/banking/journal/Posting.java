@@ -0,0 +1,46 @@
+package com.tsb.banking.journal;
+
+import com.tsb.banking.model.Money;
+
+import java.time.Instant;
+
+/**
+ * One record of the posting journal: a transfer debiting {@code amount} from one account and crediting
+ * {@code credited} to another, or the VOID that cancels a posting whose database transaction rolled back
+ * after it was journalled. The two amounts differ only for a cross-currency transfer.
+ * A VOID repeats the fields of the posting it cancels, so replay only has to flip its sign.
+ */
+public record Posting(
+        long seq,
+        Kind kind,
+        Instant createdAt,
+        long debitTxnId,
+        long creditTxnId,
+        long fromAccountId,
+        long toAccountId,
+        Money amount,
+        Money credited
+) {
+
+    public enum Kind {
+        POSTING, VOID
+    }
+
+    /** A posting to append; the journal assigns the sequence number. */
+    public static Posting of(Instant createdAt, long debitTxnId, long creditTxnId, long fromAccountId,
+                             long toAccountId, Money amount, Money credited) {
+        return new Posting(0, Kind.POSTING, createdAt, debitTxnId, creditTxnId, fromAccountId, toAccountId, amount,
+                credited);
+    }
+
+    /** A same-currency posting. */
+    public static Posting of(Instant createdAt, long debitTxnId, long creditTxnId, long fromAccountId,
+                             long toAccountId, Money amount) {
+        return of(createdAt, debitTxnId, creditTxnId, fromAccountId, toAccountId, amount, amount);
+    }
+
+    public Posting voiding() {
+        return new Posting(0, Kind.VOID, createdAt, debitTxnId, creditTxnId, fromAccountId, toAccountId, amount,
+                credited);
+    }
+}
@@ -0,0 +1,490 @@
+package com.tsb.banking.journal;
+
+import com.tsb.banking.model.Money;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped journal of postings.
+ *
+ * Segment files (journal-&lt;first seq&gt;.wal) are preallocated to the segment size and mapped read-write.
+ * After a 64 byte header [magic][version][recordBytes][firstSeq][createdMicros][database id] come fixed 80 byte records:
+ * [seq][createdMicros][debitTxnId][creditTxnId][fromAccountId][toAccountId][debited minor units]
+ * [credited minor units][kind][debit currency][credit currency][5 zero bytes][crc32c of the first 76 bytes].
+ * The two amounts differ for a cross-currency transfer. Sequence numbers are contiguous; the first record that is zero, out of
+ * sequence or fails its CRC ends the journal, and is where appending resumes after a crash.
+ *
+ * Segments written before cross-currency transfers (format version 1) hold 64 byte records with a single amount
+ * and currency: [seq][createdMicros][debitTxnId][creditTxnId][fromAccountId][toAccountId][minor units][kind]
+ * [currency][crc32c of the first 60 bytes]. They are still read; appends always go to a version 2 segment.
+ *
+ * The database id (16 bytes, see V18) ties the journal to the database its postings were committed to: a journal
+ * opened against another database, such as a fresh in-memory one, would void or replay postings of transactions
+ * that database never had, so it is refused. Segments written before the id was recorded take the current one.
+ *
+ * Appends only copy the record into the mapping. A single flusher thread forces the written range to disk
+ * and releases every appender it covered (group commit): it waits up to the group-commit window, or until
+ * max-group records are pending, before each force, so concurrent appenders share one fsync.
+ */
+public class PostingJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PostingJournal.class);
+
+    static final int RECORD_BYTES = 80;
+    static final int HEADER_BYTES = 64;
+    static final long MAGIC = 0x54584A524E4C0001L;   // "TXJRNL"
+    static final int VERSION = 2;
+    static final int CRC_OFFSET = 76;
+
+    /** Record layout of one format version; v1 records have one amount and currency for both legs. */
+    record Format(int version, int recordBytes, int crcOffset, int creditedOffset, int kindOffset,
+                  int debitCurrencyOffset, int creditCurrencyOffset) {
+
+        /** Whether the record at {@code offset} is intact and has sequence number {@code seq}. */
+        boolean valid(ByteBuffer buf, int offset, long seq, byte[] scratch, CRC32C crc) {
+            if (buf.getLong(offset) != seq) {
+                return false;
+            }
+            buf.get(offset, scratch, 0, recordBytes);
+            crc.reset();
+            crc.update(scratch, 0, crcOffset);
+            return (int) crc.getValue() == buf.getInt(offset + crcOffset);
+        }
+
+        long debited(ByteBuffer buf, int o) {
+            return buf.getLong(o + 48);
+        }
+
+        long credited(ByteBuffer buf, int o) {
+            return buf.getLong(o + creditedOffset);
+        }
+
+        Posting.Kind kind(ByteBuffer buf, int o) {
+            return Posting.Kind.values()[buf.get(o + kindOffset)];
+        }
+
+        Posting decode(ByteBuffer buf, int o) {
+            return new Posting(buf.getLong(o), kind(buf, o), instant(buf.getLong(o + 8)),
+                    buf.getLong(o + 16), buf.getLong(o + 24), buf.getLong(o + 32), buf.getLong(o + 40),
+                    new Money(debited(buf, o), currency(buf, o + debitCurrencyOffset)),
+                    new Money(credited(buf, o), currency(buf, o + creditCurrencyOffset)));
+        }
+
+        /** Offset just past the last intact record of a segment. */
+        int end(ByteBuffer buf, byte[] scratch, CRC32C crc) {
+            long expected = buf.getLong(16);
+            int offset = HEADER_BYTES;
+            while (offset + recordBytes <= buf.capacity() && valid(buf, offset, expected, scratch, crc)) {
+                offset += recordBytes;
+                expected++;
+            }
+            return offset;
+        }
+    }
+
+    static final Format V1 = new Format(1, 64, 60, 48, 56, 57, 57);
+    static final Format V2 = new Format(VERSION, RECORD_BYTES, CRC_OFFSET, 56, 64, 65, 68);
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final long windowNanos;
+    private final int maxGroup;
+    private final Timer fsyncTimer;
+    private final DistributionSummary groupSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private final byte[] scratch = new byte[RECORD_BYTES];
+    private final ByteBuffer scratchBuf = ByteBuffer.wrap(scratch);
+    private final CRC32C crc = new CRC32C();
+    private MappedByteBuffer current;
+    private Instant startedAt;
+    private int writeOffset;
+    private int flushedOffset;
+    private long lastSeq;
+    private long durableSeq;
+    private UUID database;
+    private volatile IOException failure;
+    private volatile boolean running;
+    private Thread flusher;
+
+    /**
+     * @param fsync whether {@link #awaitDurable} waits for the flusher; without it a crash can lose the postings
+     *              of the last group-commit window
+     */
+    public PostingJournal(Path dir, long segmentBytes, boolean fsync, Duration groupWindow, int maxGroup,
+                          MeterRegistry meters) {
+        this.dir = dir;
+        this.segmentBytes = HEADER_BYTES + Math.max(1, (segmentBytes - HEADER_BYTES) / RECORD_BYTES) * RECORD_BYTES;
+        this.fsync = fsync;
+        this.windowNanos = groupWindow.toNanos();
+        this.maxGroup = maxGroup;
+        this.fsyncTimer = meters.timer("banking.journal.fsync");
+        this.groupSize = DistributionSummary.builder("banking.journal.group-size")
+                .description("Postings made durable by one fsync").register(meters);
+    }
+
+    /**
+     * Find the end of the journal, discarding a torn tail, and start the flusher.
+     * @param database id of the database the postings are committed to
+     * @throws IOException also if the journal was written against another database
+     */
+    public void open(UUID database) throws IOException {
+        Files.createDirectories(dir);
+        List<Path> segments = segments(dir);
+        requireDatabase(segments, database);
+        this.database = database;
+        if (segments.isEmpty()) {
+            startedAt = Instant.now();
+            roll(1);
+        } else {
+            startedAt = header(segments.get(0)).createdAt();
+            Path last = segments.get(segments.size() - 1);
+            Format format = format(mapReadOnly(last));   // checks the format before the torn tail is cleared
+            int size = format.recordBytes();
+            try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                current = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            }
+            int offset = format.end(current, scratch, crc);
+            lastSeq = current.getLong(16) + (offset - HEADER_BYTES) / size - 1;
+            writeOffset = offset;
+            // anything after the last intact record was never acknowledged
+            int torn = 0;
+            for (int o = offset; o + size <= current.capacity(); o += size) {
+                if (current.getLong(o) != 0 || current.getLong(o + size - 8) != 0) {
+                    current.put(o, new byte[size]);
+                    torn++;
+                }
+            }
+            if (torn > 0) {
+                current.force();
+                log.warn("Posting journal {} had {} torn records after seq {}, discarded", last, torn, lastSeq);
+            }
+            if (format != V2) {
+                // older segments stay as they are, new postings go to a segment of the current format
+                log.info("Posting journal {} has format version {}, continuing in a new segment", last,
+                        format.version());
+                current = null;
+                if (offset == HEADER_BYTES) {
+                    Files.delete(last);   // empty, and its name is the one the new segment takes
+                }
+                roll(lastSeq + 1);
+            }
+        }
+        flushedOffset = writeOffset;
+        durableSeq = lastSeq;
+        running = true;
+        flusher = new Thread(this::flushLoop, "posting-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Posting journal {} open at seq {}", dir, lastSeq);
+    }
+
+    /** When the first segment was created; the journal holds every posting appended since. */
+    public Instant startedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Copy the postings into the journal, in order.
+     * @return the sequence number of the last one, to pass to {@link #awaitDurable}
+     */
+    public long append(List<Posting> postings) {
+        lock.lock();
+        try {
+            checkHealthy();
+            for (Posting p : postings) {
+                if (writeOffset + RECORD_BYTES > current.capacity()) {
+                    roll(lastSeq + 1);
+                }
+                encode(p, lastSeq + 1);
+                current.put(writeOffset, scratch);
+                writeOffset += RECORD_BYTES;
+                lastSeq++;
+            }
+            written.signal();
+            return lastSeq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to posting journal " + dir, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Wait until every posting up to {@code seq} is on disk; returns at once when fsync is off. */
+    public void awaitDurable(long seq) {
+        if (!fsync) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                checkHealthy();
+                durable.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the posting journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The last {@code n} records, oldest first. */
+    public List<Posting> tail(int n) throws IOException {
+        List<Posting> out = new ArrayList<>(n);
+        lock.lock();
+        try {
+            for (int o = writeOffset - RECORD_BYTES; o >= HEADER_BYTES && out.size() < n; o -= RECORD_BYTES) {
+                out.add(V2.decode(current, o));
+            }
+        } finally {
+            lock.unlock();
+        }
+        // the previous segment, if the current one is young
+        List<Path> segments = segments(dir);
+        if (out.size() < n && segments.size() > 1) {
+            MappedByteBuffer previous = mapReadOnly(segments.get(segments.size() - 2));
+            Format format = format(previous);
+            int end = format.end(previous, new byte[RECORD_BYTES], new CRC32C());
+            for (int o = end - format.recordBytes(); o >= HEADER_BYTES && out.size() < n; o -= format.recordBytes()) {
+                out.add(format.decode(previous, o));
+            }
+        }
+        Collections.reverse(out);
+        return out;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        lock.lock();
+        try {
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        lock.lock();
+        try {
+            if (current != null) {
+                current.force();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            MappedByteBuffer segment;
+            int from;
+            int to;
+            long seq;
+            lock.lock();
+            try {
+                while (running && lastSeq == durableSeq) {
+                    written.await();
+                }
+                if (lastSeq == durableSeq) {
+                    return;
+                }
+                // let more appenders join this fsync
+                long nanos = windowNanos;
+                while (running && nanos > 0 && lastSeq - durableSeq < maxGroup) {
+                    nanos = written.awaitNanos(nanos);
+                }
+                segment = current;
+                from = flushedOffset;
+                to = writeOffset;
+                seq = lastSeq;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                long start = System.nanoTime();
+                segment.force(from, to - from);
+                fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            } catch (UncheckedIOException e) {
+                fail(e.getCause());
+                return;
+            }
+
+            lock.lock();
+            try {
+                if (segment == current) {
+                    flushedOffset = Math.max(flushedOffset, to);
+                }
+                if (seq > durableSeq) {
+                    groupSize.record(seq - durableSeq);
+                    durableSeq = seq;
+                }
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // called with the lock held: the full segment is forced before appends move on to the next one
+    private void roll(long firstSeq) throws IOException {
+        if (current != null) {
+            current.force();
+            durableSeq = lastSeq;
+            durable.signalAll();
+        }
+        Path file = dir.resolve(String.format("journal-%020d.wal", firstSeq));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            current = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        current.putLong(0, MAGIC).putInt(8, VERSION).putInt(12, RECORD_BYTES).putLong(16, firstSeq)
+                .putLong(24, micros(Instant.now())).putLong(32, database.getMostSignificantBits())
+                .putLong(40, database.getLeastSignificantBits());
+        current.force(0, HEADER_BYTES);
+        writeOffset = HEADER_BYTES;
+        flushedOffset = HEADER_BYTES;
+    }
+
+    private void fail(IOException e) {
+        log.error("Posting journal {} failed, no further postings can be journalled", dir, e);
+        failure = e;
+        lock.lock();
+        try {
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkHealthy() {
+        if (failure != null) {
+            throw new UncheckedIOException("Posting journal " + dir + " failed", failure);
+        }
+    }
+
+    private void encode(Posting p, long seq) {
+        ByteBuffer b = scratchBuf.clear();
+        b.putLong(seq).putLong(micros(p.createdAt())).putLong(p.debitTxnId()).putLong(p.creditTxnId())
+                .putLong(p.fromAccountId()).putLong(p.toAccountId()).putLong(p.amount().minorUnits())
+                .putLong(p.credited().minorUnits()).put((byte) p.kind().ordinal())
+                .put(p.amount().currency().getBytes(StandardCharsets.US_ASCII), 0, 3)
+                .put(p.credited().currency().getBytes(StandardCharsets.US_ASCII), 0, 3).putInt(0).put((byte) 0);
+        crc.reset();
+        crc.update(scratch, 0, CRC_OFFSET);
+        b.putInt((int) crc.getValue());
+    }
+
+    // -- reading, shared with JournalReplay
+
+    record Header(long firstSeq, Instant createdAt) {
+    }
+
+    static List<Path> segments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            // zero-padded first seq, so name order is journal order
+            return files.filter(f -> f.getFileName().toString().matches("journal-\\d{20}\\.wal")).sorted().toList();
+        }
+    }
+
+    /**
+     * Check that every segment was written against {@code database}, and record it in segments that predate the id.
+     * @throws IOException if a segment belongs to another database
+     */
+    static void requireDatabase(List<Path> segments, UUID database) throws IOException {
+        for (Path segment : segments) {
+            MappedByteBuffer buf = mapReadOnly(segment);
+            UUID written = new UUID(buf.getLong(32), buf.getLong(40));
+            if (written.equals(database)) {
+                continue;
+            }
+            if (written.getMostSignificantBits() != 0 || written.getLeastSignificantBits() != 0) {
+                throw new IOException("Posting journal segment " + segment + " belongs to database " + written
+                        + ", not to this database (" + database + "); move the journal away or point app.journal.dir"
+                        + " at the journal of this database");
+            }
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                ByteBuffer id = ByteBuffer.allocate(16).putLong(database.getMostSignificantBits())
+                        .putLong(database.getLeastSignificantBits()).flip();
+                while (id.hasRemaining()) {
+                    channel.write(id, 32 + id.position());
+                }
+                channel.force(false);
+            }
+            log.warn("Posting journal segment {} had no database id, now tied to {}", segment, database);
+        }
+    }
+
+    static Header header(Path segment) throws IOException {
+        MappedByteBuffer buf = mapReadOnly(segment);
+        return new Header(buf.getLong(16), instant(buf.getLong(24)));
+    }
+
+    static MappedByteBuffer mapReadOnly(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.capacity() < HEADER_BYTES || buf.getLong(0) != MAGIC) {
+                throw new IOException("Not a posting journal segment: " + segment);
+            }
+            int version = buf.getInt(8);
+            if ((version != V1.version() && version != V2.version()) || buf.getInt(12) != format(buf).recordBytes()) {
+                throw new IOException("Posting journal segment " + segment + " has format version " + version
+                        + ", this build reads versions 1 and " + VERSION);
+            }
+            return buf;
+        }
+    }
+
+    /** The format of a segment mapped by {@link #mapReadOnly}. */
+    static Format format(ByteBuffer segment) {
+        return segment.getInt(8) == V1.version() ? V1 : V2;
+    }
+
+    private static String currency(ByteBuffer buf, int offset) {
+        byte[] code = new byte[3];
+        buf.get(offset, code);
+        return new String(code, StandardCharsets.US_ASCII);
+    }
+
+    static long micros(Instant t) {
+        return Math.addExact(Math.multiplyExact(t.getEpochSecond(), 1_000_000L), t.getNano() / 1_000);
+    }
+
+    static Instant instant(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+    }
+}
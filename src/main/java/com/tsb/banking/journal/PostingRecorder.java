@@ -0,0 +1,157 @@
+package com.tsb.banking.journal;
+
+import com.tsb.banking.model.Transaction;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Writes the postings of a database transaction to the {@link PostingJournal} (app.journal.enabled=true).
+ *
+ * Postings are collected while the transaction runs and appended in one go just before it commits, while
+ * its row locks are still held, so per account the journal is in posting order. The commit waits until they
+ * are durable; a transaction whose commit then fails gets VOID records. The journal therefore holds every
+ * committed posting, plus possibly postings of transactions that were in flight when the process died.
+ * Those are found on startup among the last app.journal.recovery-tail records, by their debit transaction
+ * missing from the transactions table, and voided. That check needs the journal to belong to this database, so
+ * the journal refuses to open against any other (see PostingJournal).
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.journal", name = "enabled", havingValue = "true")
+public class PostingRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(PostingRecorder.class);
+
+    private final PostingJournal journal;
+    private final JdbcTemplate jdbc;
+    private final int recoveryTail;
+    private final Timer appendTimer;
+
+    public PostingRecorder(JdbcTemplate jdbc,
+                           @Value("${app.journal.dir:./data/journal}") Path dir,
+                           @Value("${app.journal.segment-size:64MB}") DataSize segmentSize,
+                           @Value("${app.journal.fsync:true}") boolean fsync,
+                           @Value("${app.journal.group-commit.window:PT0S}") Duration groupWindow,
+                           @Value("${app.journal.group-commit.max-records:256}") int maxGroup,
+                           @Value("${app.journal.recovery-tail:1000}") int recoveryTail,
+                           MeterRegistry meters) {
+        this.jdbc = jdbc;
+        this.journal = new PostingJournal(dir, segmentSize.toBytes(), fsync, groupWindow, maxGroup, meters);
+        this.recoveryTail = recoveryTail;
+        this.appendTimer = meters.timer("banking.journal.append");
+    }
+
+    // runs before any bean that records postings, so nothing new has been committed yet
+    @PostConstruct
+    void open() throws IOException {
+        journal.open(databaseId(jdbc));
+        List<Posting> tail = journal.tail(recoveryTail);
+        Set<Long> voided = new HashSet<>();
+        List<Long> debits = new ArrayList<>();
+        for (Posting p : tail) {
+            (p.kind() == Posting.Kind.VOID ? voided : debits).add(p.debitTxnId());
+        }
+        debits.removeAll(voided);
+        if (debits.isEmpty()) {
+            return;
+        }
+        Set<Long> committed = new HashSet<>(jdbc.queryForList(
+                "select id from transactions where id in (" + String.join(", ", Collections.nCopies(debits.size(), "?")) + ")",
+                Long.class, debits.toArray()));
+        List<Posting> orphans = tail.stream()
+                .filter(p -> p.kind() == Posting.Kind.POSTING && !voided.contains(p.debitTxnId())
+                        && !committed.contains(p.debitTxnId()))
+                .map(Posting::voiding)
+                .toList();
+        if (!orphans.isEmpty()) {
+            journal.awaitDurable(journal.append(orphans));
+            log.warn("Voided {} journalled postings whose transactions never committed", orphans.size());
+        }
+    }
+
+    /** The id V18 gave this database. */
+    static UUID databaseId(JdbcTemplate jdbc) {
+        return UUID.fromString(jdbc.queryForObject("select database_id from database_identity where id = 1", String.class));
+    }
+
+    @PreDestroy
+    void close() throws InterruptedException {
+        journal.close();
+    }
+
+    /** Journal a transfer posted in the current transaction. */
+    public void record(Transaction debit, Transaction credit) {
+        record(Posting.of(debit.getCreatedAt(), debit.getId(), credit.getId(), debit.getAccount().getId(),
+                credit.getAccount().getId(), debit.getAmount(), credit.getAmount()));
+    }
+
+    /** Journal a posting before the current transaction commits, or right away outside a transaction. */
+    public void record(Posting posting) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            write(List.of(posting));
+            return;
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new Pending();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.postings.add(posting);
+    }
+
+    private void write(List<Posting> postings) {
+        appendTimer.record(() -> journal.awaitDurable(journal.append(postings)));
+    }
+
+    private class Pending implements TransactionSynchronization {
+
+        private final List<Posting> postings = new ArrayList<>();
+        private boolean written;
+
+        // a journal failure here rolls the transaction back, so nothing commits unjournalled
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            write(postings);
+            written = true;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(PostingRecorder.this);
+            if (!written || status == STATUS_COMMITTED) {
+                return;
+            }
+            if (status == STATUS_UNKNOWN) {
+                log.error("Commit outcome of {} journalled postings is unknown; the journal is checked on restart",
+                        postings.size());
+                return;
+            }
+            try {
+                journal.append(postings.stream().map(Posting::voiding).toList());
+            } catch (RuntimeException e) {
+                log.error("Failed to void {} postings of a rolled back transaction", postings.size(), e);
+            }
+        }
+    }
+}
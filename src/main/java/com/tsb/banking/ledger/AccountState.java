@@ -0,0 +1,31 @@
+package com.tsb.banking.ledger;
+
+/**
+ * In-memory view of an account held by the ledger engine.
+ * The balance is only mutated by the writer thread of the partition that owns the account;
+ * it is volatile so any thread can read the latest value. It is held in minor units, see Money.
+ */
+class AccountState {
+
+    final long id;
+    final long customerId;
+    final String number;
+    final String currency;
+    private volatile long balance;
+
+    AccountState(long id, long customerId, String number, String currency, long balance) {
+        this.id = id;
+        this.customerId = customerId;
+        this.number = number;
+        this.currency = currency;
+        this.balance = balance;
+    }
+
+    long balance() {
+        return balance;
+    }
+
+    void apply(long delta) {
+        balance = Math.addExact(balance, delta);
+    }
+}
@@ -0,0 +1,35 @@
+package com.tsb.banking.ledger;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * One accepted transfer as recorded in the ledger journal.
+ * Holds everything needed to rebuild balances and write the rows to the database later.
+ */
+public record JournalEntry(
+        long seq,
+        Instant createdAt,
+        long customerId,
+        long fromAccountId,
+        long toAccountId,
+        String fromNumber,
+        String toNumber,
+        BigDecimal amount,
+        String currency,
+        String memo,
+        long debitTxnId,
+        long creditTxnId,
+        String idemScope,
+        String idemKey,
+        String payloadHash
+) {
+
+    public String reference() {
+        return memo == null ? "Internal transfer" : memo;
+    }
+
+    public boolean hasIdempotencyKey() {
+        return idemKey != null;
+    }
+}
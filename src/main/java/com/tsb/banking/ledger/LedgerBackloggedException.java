@@ -0,0 +1,12 @@
+package com.tsb.banking.ledger;
+
+/**
+ * The ledger engine's database writer has app.ledger.engine.writer-queue-capacity transfers waiting, so no more
+ * are accepted until it catches up. RestExceptionHandler answers 503.
+ */
+public class LedgerBackloggedException extends RuntimeException {
+
+    public LedgerBackloggedException(int backlog) {
+        super("Ledger engine has " + backlog + " transfers waiting for the database");
+    }
+}
@@ -0,0 +1,193 @@
+package com.tsb.banking.ledger;
+
+import com.tsb.banking.journal.Posting;
+import com.tsb.banking.journal.PostingRecorder;
+import com.tsb.banking.model.Money;
+import com.tsb.banking.service.AccountVersions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Background writer that copies journalled transfers into the accounts/transactions tables.
+ *
+ * Entries are drained in batches and written, once the journal has synced them, in one database
+ * transaction together with the ledger checkpoint, so after a restart only entries past the checkpoint
+ * are replayed. Journal segments behind the checkpoint are deleted after each commit.
+ * Balances are written as deltas, which keeps the updates independent of batch boundaries.
+ * With app.journal.enabled the batch also goes to the posting journal before it commits.
+ * The queue is bounded; the engine stops accepting transfers while it is full.
+ */
+class LedgerDbWriter implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerDbWriter.class);
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final LedgerJournal journal;
+    private final AccountVersions versions;
+    private final PostingRecorder postings;
+    private final int batchSize;
+    private final BlockingQueue<JournalEntry> queue;
+    private final Consumer<JournalEntry> written;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    LedgerDbWriter(JdbcTemplate jdbc, TransactionTemplate tx, LedgerJournal journal, AccountVersions versions,
+                   PostingRecorder postings, int batchSize, int capacity, Consumer<JournalEntry> written) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.journal = journal;
+        this.versions = versions;
+        this.postings = postings;
+        this.batchSize = batchSize;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        this.written = written;
+    }
+
+    void start() {
+        thread = new Thread(this, "ledger-db-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Whether the queue is full; the engine checks this, under its journal lock, before journalling an entry. */
+    boolean full() {
+        return queue.remainingCapacity() == 0;
+    }
+
+    /** Queue an entry the caller made sure there is room for (see {@link #full()}). */
+    void enqueue(JournalEntry entry) {
+        queue.add(entry);
+    }
+
+    /** Queue an entry, waiting for room; for replay on startup, once the writer runs. */
+    void put(JournalEntry entry) throws InterruptedException {
+        queue.put(entry);
+    }
+
+    int backlog() {
+        return queue.size();
+    }
+
+    /** Stop after everything already queued has been written. */
+    void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    @Override
+    public void run() {
+        List<JournalEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    JournalEntry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // keep the batch and retry; the journal still holds every entry
+                log.error("Ledger DB write of {} entries failed, retrying", batch.size(), e);
+                sleepQuietly(1000);
+            }
+        }
+    }
+
+    private void write(List<JournalEntry> batch) {
+        long lastSeq = batch.stream().mapToLong(JournalEntry::seq).max().orElseThrow();
+        // never persist a transfer whose journal record could still be lost
+        journal.awaitDurable(lastSeq);
+        tx.executeWithoutResult(status -> {
+            jdbc.batchUpdate(
+                    "insert into transactions (id, account_id, type, amount, currency, reference, counterparty, created_at) "
+                            + "values (?, ?, ?, ?, ?, ?, ?, ?)",
+                    legs(batch));
+            jdbc.batchUpdate("update accounts set balance = balance + ?, version = version + 1 where id = ?", deltas(batch));
+            // same outbox rows TransferService writes; ids follow journal order, which LedgerEventRelay preserves.
+            // The engine only posts same-currency transfers, so the credited leg equals the debited one.
+            jdbc.batchUpdate(
+                    "insert into ledger_events (debit_txn_id, credit_txn_id, from_account_id, to_account_id, amount, currency, "
+                            + "credit_amount, credit_currency, created_at) values (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    batch.stream().map(e -> new Object[]{e.debitTxnId(), e.creditTxnId(), e.fromAccountId(),
+                            e.toAccountId(), e.amount(), e.currency(), e.amount(), e.currency(),
+                            Timestamp.from(e.createdAt())}).toList());
+
+            List<Object[]> keys = new ArrayList<>();
+            for (JournalEntry e : batch) {
+                if (e.hasIdempotencyKey()) {
+                    keys.add(new Object[]{e.idemScope(), e.idemKey(), e.payloadHash(),
+                            e.debitTxnId(), e.creditTxnId(), Timestamp.from(e.createdAt())});
+                }
+            }
+            if (!keys.isEmpty()) {
+                jdbc.batchUpdate(
+                        "insert into idempotency_keys (scope, ikey, payload_hash, debit_txn_id, credit_txn_id, created_at) "
+                                + "values (?, ?, ?, ?, ?, ?)",
+                        keys);
+            }
+
+            if (postings != null) {
+                for (JournalEntry e : batch) {
+                    postings.record(Posting.of(e.createdAt(), e.debitTxnId(), e.creditTxnId(), e.fromAccountId(),
+                            e.toAccountId(), Money.of(e.amount(), e.currency())));
+                }
+            }
+
+            jdbc.update("update ledger_checkpoint set last_seq = ? where id = 1 and last_seq < ?", lastSeq, lastSeq);
+        });
+        journal.release(lastSeq);
+        for (JournalEntry e : batch) {
+            versions.changed(e.customerId(), e.fromAccountId(), e.toAccountId(), e.debitTxnId());
+            written.accept(e);
+        }
+    }
+
+    private static List<Object[]> legs(List<JournalEntry> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size() * 2);
+        for (JournalEntry e : batch) {
+            Timestamp at = Timestamp.from(e.createdAt());
+            rows.add(new Object[]{e.debitTxnId(), e.fromAccountId(), "DEBIT", e.amount(), e.currency(),
+                    e.reference(), e.toNumber(), at});
+            rows.add(new Object[]{e.creditTxnId(), e.toAccountId(), "CREDIT", e.amount(), e.currency(),
+                    e.reference(), e.fromNumber(), at});
+        }
+        return rows;
+    }
+
+    private static List<Object[]> deltas(List<JournalEntry> batch) {
+        List<Object[]> rows = new ArrayList<>(batch.size() * 2);
+        for (JournalEntry e : batch) {
+            rows.add(new Object[]{e.amount().negate(), e.fromAccountId()});
+            rows.add(new Object[]{e.amount(), e.toAccountId()});
+        }
+        return rows;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.tsb.banking.ledger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.tsb.banking.api.dto.BatchTransferItemDto;
+import com.tsb.banking.api.dto.TransferRequestDto;
+import com.tsb.banking.api.dto.TransferResponseDto;
+import com.tsb.banking.exception.BusinessException;
+import com.tsb.banking.exception.NotFoundException;
+import com.tsb.banking.journal.PostingRecorder;
+import com.tsb.banking.model.Money;
+import com.tsb.banking.repo.IdempotencyKeyRepository;
+import com.tsb.banking.service.AccountVersions;
+import com.tsb.banking.service.IdempotencyStore;
+import com.tsb.banking.service.TransferService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional in-memory ledger engine for transfers (app.ledger.engine.enabled=true).
+ *
+ * Balances are kept in memory and partitioned by account id; each partition has a single writer
+ * thread, so the debit side of a transfer is checked and applied without any locking. An accepted
+ * transfer is appended to the journal and acknowledged once the journal's group commit has synced it,
+ * so partition threads never wait for an fsync. A background writer then copies it to the
+ * accounts/transactions tables and advances the persisted checkpoint, behind which journal segments
+ * are deleted. On startup the engine loads balances from the database and replays the journal
+ * entries that are newer than the checkpoint.
+ *
+ * Transaction ids are reserved by the engine from transactions_seq so they can be returned before
+ * the rows are written.
+ *
+ * Idempotency keys are cached like IdempotencyStore does, up to app.idempotency.cache-size and until
+ * app.idempotency.ttl after they were created. A key the writer has not committed yet is only in memory, so it
+ * is exempt from both until then. Once app.ledger.engine.writer-queue-capacity transfers wait for the writer
+ * (the database is down or slow), new transfers are refused with {@link LedgerBackloggedException}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.ledger.engine", name = "enabled", havingValue = "true")
+public class LedgerEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerEngine.class);
+    // increment of transactions_seq, see V9__Pooled_id_sequences
+    private static final int TXN_ID_BLOCK = 50;
+    // balance includes the sub-balance buckets of hot accounts; the engine itself only writes accounts.balance
+    private static final String ACCOUNT_COLUMNS = "a.id, a.customer_id, a.number, a.currency, a.balance + coalesce("
+            + "(select sum(b.balance) from account_buckets b where b.account_id = a.id), 0) as balance";
+
+    private record Posting(long debitTxnId, long creditTxnId) {}
+    // written: the idempotency_keys row is committed, so the slot may be evicted
+    private record IdempotentSlot(String payloadHash, Instant createdAt, CompletableFuture<Posting> posting,
+                                  boolean written) {
+
+        IdempotentSlot asWritten() {
+            return new IdempotentSlot(payloadHash, createdAt, posting, true);
+        }
+    }
+    private record Debited(JournalEntry entry, long amount, long fromBalance) {}
+    private record Credited(long seq, TransferResponseDto response) {}
+
+    private final JdbcTemplate jdbc;
+    private final IdempotencyKeyRepository idemRepo;
+    private final ThreadPoolExecutor[] partitions;
+    private final LedgerJournal journal;
+    private final LedgerDbWriter writer;
+    private final AccountVersions versions;
+    private final TransactionTemplate tx;
+
+    private final ConcurrentHashMap<Long, AccountState> accounts = new ConcurrentHashMap<>();
+    private final Cache<String, IdempotentSlot> idempotency;
+    // transaction ids are taken from transactions_seq in blocks, like Hibernate's pooled optimizer does
+    private final Object idLock = new Object();
+    private long txnIdNext = 1;
+    private long txnIdBlockEnd;
+    private long journalMaxTxnId;
+    private final Object journalLock = new Object();
+    private long lastSeq;
+
+    public LedgerEngine(JdbcTemplate jdbc,
+                        PlatformTransactionManager txManager,
+                        IdempotencyKeyRepository idemRepo,
+                        AccountVersions versions,
+                        ObjectProvider<PostingRecorder> postings,
+                        MeterRegistry meters,
+                        @Value("${app.ledger.engine.partitions:4}") int partitionCount,
+                        @Value("${app.ledger.engine.partition-queue-capacity:10000}") int queueCapacity,
+                        @Value("${app.ledger.engine.journal-dir:./data/ledger}") String journalDir,
+                        @Value("${app.ledger.engine.fsync:true}") boolean fsync,
+                        @Value("${app.ledger.engine.journal-segment-size:64MB}") DataSize segmentSize,
+                        @Value("${app.ledger.engine.group-commit.window:PT0S}") Duration groupWindow,
+                        @Value("${app.ledger.engine.group-commit.max-records:256}") int maxGroup,
+                        @Value("${app.ledger.engine.writer-batch-size:500}") int writerBatchSize,
+                        @Value("${app.ledger.engine.writer-queue-capacity:100000}") int writerQueueCapacity,
+                        @Value("${app.idempotency.ttl:PT24H}") Duration idempotencyTtl,
+                        @Value("${app.idempotency.cache-size:100000}") long idempotencyCacheSize) {
+        this.jdbc = jdbc;
+        this.idemRepo = idemRepo;
+        this.journal = new LedgerJournal(Path.of(journalDir), segmentSize.toBytes(), fsync, groupWindow, maxGroup);
+        this.versions = versions;
+        this.tx = new TransactionTemplate(txManager);
+        this.writer = new LedgerDbWriter(jdbc, new TransactionTemplate(txManager), journal, versions,
+                postings.getIfAvailable(), writerBatchSize, writerQueueCapacity, this::written);
+        Gauge.builder("banking.ledger.writer.backlog", writer, LedgerDbWriter::backlog)
+                .description("Journalled transfers not yet written to the database").register(meters);
+        Expiry<String, IdempotentSlot> expiry = IdempotencyStore.expireAfterCreation(idempotencyTtl, IdempotentSlot::createdAt);
+        this.idempotency = Caffeine.newBuilder()
+                .maximumWeight(idempotencyCacheSize)
+                .weigher((String k, IdempotentSlot s) -> s.written() ? 1 : 0)
+                .expireAfter(new Expiry<String, IdempotentSlot>() {
+                    @Override
+                    public long expireAfterCreate(String key, IdempotentSlot slot, long currentTime) {
+                        return slot.written() ? expiry.expireAfterCreate(key, slot, currentTime) : Long.MAX_VALUE;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, IdempotentSlot slot, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, slot, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, IdempotentSlot slot, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        this.partitions = new ThreadPoolExecutor[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            String name = "ledger-partition-" + i;
+            partitions[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    r -> new Thread(r, name),
+                    LedgerEngine::blockUntilQueued);
+        }
+    }
+
+    @PostConstruct
+    void start() throws IOException, InterruptedException {
+        jdbc.query("select " + ACCOUNT_COLUMNS + " from accounts a", rs -> {
+            long id = rs.getLong("id");
+            accounts.put(id, new AccountState(id, rs.getLong("customer_id"), rs.getString("number"),
+                    rs.getString("currency"), Money.minorUnits(rs.getBigDecimal("balance"))));
+        });
+        long checkpoint = jdbc.queryForObject("select last_seq from ledger_checkpoint where id = 1", Long.class);
+
+        // only entries after the checkpoint are read; older segments are deleted
+        List<JournalEntry> entries = journal.open(checkpoint);
+        lastSeq = journal.lastSeq();
+        // running already, so replaying more entries than the writer queue holds waits for it
+        writer.start();
+        int replayed = 0;
+        for (JournalEntry e : entries) {
+            journalMaxTxnId = Math.max(journalMaxTxnId, Math.max(e.debitTxnId(), e.creditTxnId()));
+            long amount = Money.minorUnits(e.amount());
+            state(e.fromAccountId()).apply(-amount);
+            state(e.toAccountId()).apply(amount);
+            if (e.hasIdempotencyKey()) {
+                idempotency.put(slotKey(e.idemScope(), e.idemKey()), new IdempotentSlot(e.payloadHash(), e.createdAt(),
+                        CompletableFuture.completedFuture(new Posting(e.debitTxnId(), e.creditTxnId())), false));
+            }
+            writer.put(e);
+            replayed++;
+        }
+        log.info("Ledger engine started: {} accounts, {} partitions, {} journal entries replayed after checkpoint {}",
+                accounts.size(), partitions.length, replayed, checkpoint);
+    }
+
+    @PreDestroy
+    void stop() throws Exception {
+        for (ThreadPoolExecutor p : partitions) {
+            p.shutdown();
+        }
+        for (ThreadPoolExecutor p : partitions) {
+            p.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        writer.stop();
+        journal.close();
+    }
+
+    /**
+     * Same contract and error codes as {@link TransferService#transfer(TransferRequestDto)}, except that
+     * cross-currency transfers are not priced here and fail with CURRENCY_MISMATCH.
+     */
+    public TransferResponseDto transfer(TransferRequestDto request) {
+        if (request.fromAccountId().equals(request.toAccountId())) {
+            throw new BusinessException("TRANSFER_SAME_ACCOUNT", "fromAccount and toAccount must be different");
+        }
+        long amount = TransferService.amount(request).minorUnits();
+
+        String scope = "customer:" + request.customerId();
+        String key = (request.idempotencyKey() == null || request.idempotencyKey().isBlank()) ? null : request.idempotencyKey();
+        String payloadHash = null;
+        IdempotentSlot claimed = null;
+        if (key != null) {
+            payloadHash = TransferService.payloadHash(request);
+            String slotKey = slotKey(scope, key);
+            IdempotentSlot existing = idempotency.getIfPresent(slotKey);
+            if (existing == null) {
+                existing = persistedSlot(scope, key);
+                if (existing != null) {
+                    IdempotentSlot raced = idempotency.asMap().putIfAbsent(slotKey, existing);
+                    existing = raced != null ? raced : existing;
+                }
+            }
+            if (existing == null) {
+                claimed = new IdempotentSlot(payloadHash, Instant.now(), new CompletableFuture<>(), false);
+                existing = idempotency.asMap().putIfAbsent(slotKey, claimed);
+            }
+            if (existing != null) {
+                return replay(existing, payloadHash, request);
+            }
+        }
+
+        String hash = payloadHash;
+        try {
+            Credited credited = await(CompletableFuture
+                    .supplyAsync(() -> debit(request, amount, scope, key, hash), partitionOf(request.fromAccountId()))
+                    .thenCompose(d -> CompletableFuture.supplyAsync(() -> credit(d), partitionOf(request.toAccountId())))
+            );
+            // the caller waits for the group commit, not the partition threads
+            journal.awaitDurable(credited.seq());
+            TransferResponseDto response = credited.response();
+            if (claimed != null) {
+                claimed.posting().complete(new Posting(response.debitTxnId(), response.creditTxnId()));
+            }
+            return response;
+        } catch (RuntimeException e) {
+            if (claimed != null) {
+                idempotency.asMap().remove(slotKey(scope, key), claimed);
+                claimed.posting().completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Batch variant of {@link #transfer(TransferRequestDto)}; items are applied in order and fail independently.
+     */
+    public List<BatchTransferItemDto> transferBatch(List<TransferRequestDto> requests) {
+        List<BatchTransferItemDto> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                results.add(BatchTransferItemDto.ok(i, transfer(requests.get(i))));
+            } catch (BusinessException e) {
+                results.add(BatchTransferItemDto.failed(i, e.getCode(), e.getMessage()));
+            } catch (NotFoundException e) {
+                results.add(BatchTransferItemDto.failed(i, "NOT_FOUND", e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /** Latest in-memory balance, which may be ahead of the accounts table. */
+    public Optional<BigDecimal> balanceOf(long accountId) {
+        return Optional.ofNullable(accounts.get(accountId)).map(s -> Money.toBigDecimal(s.balance()));
+    }
+
+    /** Number of journalled transfers not yet written to the database. */
+    public int writerBacklog() {
+        return writer.backlog();
+    }
+
+    // Runs on the partition thread that owns the debit account
+    private Debited debit(TransferRequestDto request, long amount, String scope, String key, String payloadHash) {
+        AccountState from = state(request.fromAccountId());
+        AccountState to = state(request.toAccountId());
+
+        if (from.customerId != request.customerId() || to.customerId != request.customerId()) {
+            throw new BusinessException("OWNERSHIP", "Both accounts must belong to the customer");
+        }
+        // journal entries carry a single amount, so both accounts must hold the request currency
+        if (!from.currency.equals(request.currency()) || !to.currency.equals(request.currency())) {
+            throw new BusinessException("CURRENCY_MISMATCH", "Currency must match both accounts");
+        }
+        if (from.balance() < amount) {
+            throw new BusinessException("INSUFFICIENT_FUNDS", "Insufficient funds");
+        }
+
+        from.apply(-amount);
+        long fromBalance = from.balance();
+        long debitTxnId = nextTxnId();
+        long creditTxnId = nextTxnId();
+        try {
+            synchronized (journalLock) {
+                // checked before the entry is journalled: a journalled entry must reach the writer
+                if (writer.full()) {
+                    throw new LedgerBackloggedException(writer.backlog());
+                }
+                JournalEntry entry = new JournalEntry(lastSeq + 1, Instant.now(), request.customerId(),
+                        from.id, to.id, from.number, to.number, request.amount(), request.currency(), request.memo(),
+                        debitTxnId, creditTxnId, key == null ? null : scope, key, payloadHash);
+                journal.append(entry);
+                lastSeq = entry.seq();
+                writer.enqueue(entry);
+                return new Debited(entry, amount, fromBalance);
+            }
+        } catch (RuntimeException e) {
+            from.apply(amount);
+            throw e;
+        }
+    }
+
+    // Runs on the partition thread that owns the credit account
+    private Credited credit(Debited d) {
+        AccountState to = state(d.entry().toAccountId());
+        to.apply(d.amount());
+        // balances read from memory changed now; the transaction rows follow when the writer commits
+        versions.changed(d.entry().customerId(), d.entry().fromAccountId(), d.entry().toAccountId(), d.entry().debitTxnId());
+        return new Credited(d.entry().seq(), new TransferResponseDto(d.entry().debitTxnId(), d.entry().creditTxnId(),
+                Money.toBigDecimal(d.fromBalance()), Money.toBigDecimal(to.balance())));
+    }
+
+    private TransferResponseDto replay(IdempotentSlot slot, String payloadHash, TransferRequestDto request) {
+        if (!slot.payloadHash().equals(payloadHash)) {
+            throw new BusinessException("IDEMPOTENCY_Exception", "Idempotency key has been used with different payload");
+        }
+        Posting p = await(slot.posting());
+        return new TransferResponseDto(p.debitTxnId(), p.creditTxnId(),
+                Money.toBigDecimal(state(request.fromAccountId()).balance()),
+                Money.toBigDecimal(state(request.toAccountId()).balance()));
+    }
+
+    // a read-write transaction keeps this check on the primary even when reads go to a replica
+    private IdempotentSlot persistedSlot(String scope, String key) {
+        return tx.execute(status -> idemRepo.findByScopeAndKey(scope, key))
+                .map(k -> new IdempotentSlot(k.getPayloadHash(), k.getCreatedAt(),
+                        CompletableFuture.completedFuture(new Posting(k.getDebitTxnId(), k.getCreditTxnId())), true))
+                .orElse(null);
+    }
+
+    // called by the writer once the entry's rows, and so its idempotency key, are committed
+    private void written(JournalEntry e) {
+        if (e.hasIdempotencyKey()) {
+            idempotency.asMap().computeIfPresent(slotKey(e.idemScope(), e.idemKey()), (k, s) -> s.asWritten());
+        }
+    }
+
+    private long nextTxnId() {
+        synchronized (idLock) {
+            while (txnIdNext > txnIdBlockEnd) {
+                long hi = jdbc.queryForObject("select nextval('transactions_seq')", Long.class);
+                txnIdBlockEnd = hi;
+                // skip ids of journal entries that may not have reached the table yet
+                txnIdNext = Math.max(hi - TXN_ID_BLOCK + 1, journalMaxTxnId + 1);
+            }
+            return txnIdNext++;
+        }
+    }
+
+    private AccountState state(long id) {
+        AccountState s = accounts.get(id);
+        if (s == null) {
+            // account created after startup; it has no engine activity yet so the table is current
+            s = jdbc.query("select " + ACCOUNT_COLUMNS + " from accounts a where a.id = ?",
+                    rs -> rs.next() ? new AccountState(rs.getLong("id"), rs.getLong("customer_id"),
+                            rs.getString("number"), rs.getString("currency"),
+                            Money.minorUnits(rs.getBigDecimal("balance"))) : null,
+                    id);
+            if (s != null) {
+                AccountState raced = accounts.putIfAbsent(id, s);
+                s = raced != null ? raced : s;
+            }
+        }
+        if (s == null) {
+            throw new NotFoundException("Account " + id + " not found");
+        }
+        return s;
+    }
+
+    private ThreadPoolExecutor partitionOf(long accountId) {
+        return partitions[(int) Math.floorMod(accountId, (long) partitions.length)];
+    }
+
+    private static String slotKey(String scope, String key) {
+        return scope + "|" + key;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw e;
+        }
+    }
+
+    // Back-pressure: callers wait for room in the partition queue instead of being rejected
+    private static void blockUntilQueued(Runnable r, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Ledger engine is shutting down");
+        }
+        try {
+            executor.getQueue().put(r);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for ledger partition", e);
+        }
+    }
+}
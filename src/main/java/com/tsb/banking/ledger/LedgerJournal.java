@@ -0,0 +1,482 @@
+package com.tsb.banking.ledger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of accepted transfers, split into segment files (transfers-&lt;first seq&gt;.journal).
+ *
+ * Record layout: [int payloadLength][long crc32(payload)][payload]; sequence numbers increase through the journal.
+ * Appends are written to the current segment without syncing. A single flusher thread forces the segment and
+ * releases every appender it covered (group commit), waiting up to the group-commit window, or until max-group
+ * records are pending, before each force. A segment is rolled once it reaches the segment size, and deleted once
+ * the database writer's checkpoint has passed every record in it, so startup reads only what is not yet persisted.
+ *
+ * On open, an incomplete or zeroed record at the very end of the last segment is a torn write from a crash (it was
+ * never acknowledged) and is truncated. Any other damaged record could hide acknowledged transfers after it, so
+ * opening fails instead.
+ */
+public class LedgerJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerJournal.class);
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+    // single file written before the journal was segmented; same record format
+    private static final String LEGACY_FILE = "transfers.journal";
+
+    private record Segment(long firstSeq, Path file) {}
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final long windowNanos;
+    private final int maxGroup;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private FileChannel channel;
+    private long channelBytes;
+    private long lastSeq;
+    private long durableSeq;
+    private volatile IOException failure;
+    private volatile boolean running;
+    private Thread flusher;
+
+    /**
+     * @param fsync whether {@link #awaitDurable} waits for the flusher; without it a crash can lose the transfers
+     *              the operating system had not written yet
+     */
+    public LedgerJournal(Path dir, long segmentBytes, boolean fsync, Duration groupWindow, int maxGroup) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.windowNanos = groupWindow.toNanos();
+        this.maxGroup = maxGroup;
+    }
+
+    /**
+     * Delete the segments behind {@code checkpoint}, read the entries after it, truncate a torn tail and open the
+     * journal for appending.
+     * @throws IOException if a record other than the last one is damaged
+     */
+    public List<JournalEntry> open(long checkpoint) throws IOException {
+        lock.lock();
+        try {
+            Files.createDirectories(dir);
+            adoptLegacyFile(checkpoint);
+            List<Segment> found = list();
+            List<JournalEntry> entries = new ArrayList<>();
+            lastSeq = checkpoint;
+            for (int i = 0; i < found.size(); i++) {
+                Segment s = found.get(i);
+                if (i + 1 < found.size() && found.get(i + 1).firstSeq() <= checkpoint + 1) {
+                    Files.delete(s.file());
+                    continue;
+                }
+                boolean last = i == found.size() - 1;
+                long validBytes = read(s, last, checkpoint, entries);
+                segments.addLast(s);
+                if (last) {
+                    channel = FileChannel.open(s.file(), StandardOpenOption.WRITE);
+                    if (channel.size() > validBytes) {
+                        channel.truncate(validBytes);
+                        channel.force(true);
+                    }
+                    channel.position(validBytes);
+                    channelBytes = validBytes;
+                }
+            }
+            durableSeq = lastSeq;
+            if (fsync) {
+                running = true;
+                flusher = new Thread(this::flushLoop, "ledger-journal-flusher");
+                flusher.setDaemon(true);
+                flusher.start();
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sequence number of the last journalled entry, or the checkpoint passed to {@link #open} if there is none. */
+    public long lastSeq() {
+        lock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write one entry; callers append in sequence order and call {@link #awaitDurable} before acknowledging it.
+     */
+    public void append(JournalEntry entry) {
+        byte[] payload = encode(entry);
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buf.putInt(payload.length).putLong(crc32(payload)).put(payload).flip();
+        lock.lock();
+        try {
+            checkHealthy();
+            if (channel == null || channelBytes >= segmentBytes) {
+                roll(entry.seq());
+            }
+            while (buf.hasRemaining()) {
+                channelBytes += channel.write(buf);
+            }
+            lastSeq = entry.seq();
+            written.signal();
+        } catch (IOException e) {
+            // a partly written record must not be followed by others
+            fail(e);
+            throw new UncheckedIOException("Failed to append to ledger journal " + dir, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Wait until every entry up to {@code seq} is on disk; returns at once when fsync is off. */
+    public void awaitDurable(long seq) {
+        if (!fsync) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                checkHealthy();
+                durable.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the ledger journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Delete the segments whose entries are all at or below {@code checkpoint}; the current one is kept. */
+    public void release(long checkpoint) {
+        List<Path> released = new ArrayList<>();
+        lock.lock();
+        try {
+            while (segments.size() > 1) {
+                Segment first = segments.removeFirst();
+                if (segments.peekFirst().firstSeq() > checkpoint + 1) {
+                    segments.addFirst(first);
+                    break;
+                }
+                released.add(first.file());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Path file : released) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete ledger journal segment {}", file, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        running = false;
+        lock.lock();
+        try {
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        lock.lock();
+        try {
+            if (channel != null) {
+                channel.force(true);
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            FileChannel ch;
+            long seq;
+            lock.lock();
+            try {
+                while (running && lastSeq == durableSeq) {
+                    written.await();
+                }
+                if (lastSeq == durableSeq) {
+                    return;
+                }
+                // let more appenders join this fsync
+                long nanos = windowNanos;
+                while (running && nanos > 0 && lastSeq - durableSeq < maxGroup) {
+                    nanos = written.awaitNanos(nanos);
+                }
+                ch = channel;
+                seq = lastSeq;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                ch.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                if (error != null && ch == channel) {
+                    fail(error);
+                    return;
+                }
+                // a failed force on a rolled segment is fine: roll forced it before closing it
+                durableSeq = Math.max(durableSeq, seq);
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // called with the lock held: the full segment is forced before appends move on to the next one
+    private void roll(long firstSeq) throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            durableSeq = lastSeq;
+            durable.signalAll();
+        }
+        Segment s = new Segment(firstSeq, dir.resolve(fileName(firstSeq)));
+        channel = FileChannel.open(s.file(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        channelBytes = 0;
+        segments.addLast(s);
+    }
+
+    private void fail(IOException e) {
+        log.error("Ledger journal {} failed, no further transfers can be journalled", dir, e);
+        failure = e;
+        durable.signalAll();
+    }
+
+    private void checkHealthy() {
+        if (failure != null) {
+            throw new UncheckedIOException("Ledger journal " + dir + " failed", failure);
+        }
+    }
+
+    // -- reading
+
+    /**
+     * Read the intact records of one segment, adding those after {@code checkpoint} to {@code out}.
+     * @return the length of the intact prefix
+     */
+    private long read(Segment s, boolean last, long checkpoint, List<JournalEntry> out) throws IOException {
+        long size = Files.size(s.file());
+        long offset = 0;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(s.file()), 64 * 1024))) {
+            while (offset < size) {
+                String damage = null;
+                int len = 0;
+                if (size - offset < HEADER_BYTES) {
+                    damage = "an incomplete record header";
+                } else {
+                    len = in.readInt();
+                    long crc = in.readLong();
+                    if (len <= 0 || len > MAX_RECORD_BYTES) {
+                        damage = "an invalid record length";
+                    } else if (offset + HEADER_BYTES + len > size) {
+                        damage = "an incomplete record";
+                    } else {
+                        byte[] payload = new byte[len];
+                        in.readFully(payload);
+                        if (crc32(payload) != crc) {
+                            damage = "a record failing its CRC";
+                        } else {
+                            JournalEntry e = decode(payload);
+                            if (e.seq() <= lastSeq && e.seq() > checkpoint) {
+                                throw new IOException("Ledger journal " + s.file() + " has seq " + e.seq()
+                                        + " after seq " + lastSeq + " at offset " + offset);
+                            }
+                            if (e.seq() > checkpoint) {
+                                out.add(e);
+                            }
+                            lastSeq = Math.max(lastSeq, e.seq());
+                        }
+                    }
+                }
+                if (damage != null) {
+                    if (last && tornTail(s.file(), offset, len, size)) {
+                        log.warn("Ledger journal {} has a torn record at offset {}, truncating", s.file(), offset);
+                        return offset;
+                    }
+                    throw new IOException("Ledger journal " + s.file() + " has " + damage + " at offset " + offset
+                            + " followed by more data; restore the segment before starting the ledger engine");
+                }
+                offset += HEADER_BYTES + len;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Whether the damaged record at {@code offset} is the unacknowledged tail of a crash: it runs to the end of the
+     * file, or everything from it on is zero (space the file system allocated but never wrote).
+     */
+    private static boolean tornTail(Path file, long offset, int len, long size) throws IOException {
+        if (len > 0 && len <= MAX_RECORD_BYTES && offset + HEADER_BYTES + len >= size) {
+            return true;
+        }
+        if (size - offset < HEADER_BYTES) {
+            return true;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            in.skipNBytes(offset);
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private List<Segment> list() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            // zero-padded first seq, so name order is journal order
+            return files.filter(f -> f.getFileName().toString().matches("transfers-\\d{20}\\.journal")).sorted()
+                    .map(f -> new Segment(Long.parseLong(f.getFileName().toString().substring(10, 30)), f))
+                    .toList();
+        }
+    }
+
+    // name the pre-segmentation journal file after its first sequence number so it is read as the first segment
+    private void adoptLegacyFile(long checkpoint) throws IOException {
+        Path legacy = dir.resolve(LEGACY_FILE);
+        if (!Files.exists(legacy)) {
+            return;
+        }
+        long firstSeq = checkpoint + 1;
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(legacy)))) {
+            int len = in.readInt();
+            in.readLong();
+            if (len > 0 && len <= MAX_RECORD_BYTES) {
+                byte[] payload = new byte[len];
+                in.readFully(payload);
+                firstSeq = decode(payload).seq();
+            }
+        } catch (IOException e) {
+            // empty or torn at the first record; read as a segment like any other
+        }
+        Path target = dir.resolve(fileName(firstSeq));
+        Files.move(legacy, target, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Ledger journal {} renamed to {}", legacy, target);
+    }
+
+    private static String fileName(long firstSeq) {
+        return String.format("transfers-%020d.journal", firstSeq);
+    }
+
+    private static long crc32(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    private static byte[] encode(JournalEntry e) {
+        var bytes = new ByteArrayOutputStream(160);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeLong(e.seq());
+            out.writeLong(e.createdAt().toEpochMilli());
+            out.writeLong(e.customerId());
+            out.writeLong(e.fromAccountId());
+            out.writeLong(e.toAccountId());
+            out.writeUTF(e.fromNumber());
+            out.writeUTF(e.toNumber());
+            out.writeUTF(e.amount().toPlainString());
+            out.writeUTF(e.currency());
+            writeNullable(out, e.memo());
+            out.writeLong(e.debitTxnId());
+            out.writeLong(e.creditTxnId());
+            writeNullable(out, e.idemScope());
+            writeNullable(out, e.idemKey());
+            writeNullable(out, e.payloadHash());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static JournalEntry decode(byte[] payload) throws IOException {
+        try (var in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            return new JournalEntry(
+                    in.readLong(),
+                    Instant.ofEpochMilli(in.readLong()),
+                    in.readLong(),
+                    in.readLong(),
+                    in.readLong(),
+                    in.readUTF(),
+                    in.readUTF(),
+                    new BigDecimal(in.readUTF()),
+                    in.readUTF(),
+                    readNullable(in),
+                    in.readLong(),
+                    in.readLong(),
+                    readNullable(in),
+                    readNullable(in),
+                    readNullable(in));
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -1,13 +1,13 @@
 package com.tsb.banking.model;
 
 import jakarta.persistence.*;
-import java.math.BigDecimal;
 
 @Entity
 @Table(name = "accounts")
 public class Account {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "accounts_seq")
+  @SequenceGenerator(name = "accounts_seq", sequenceName = "accounts_seq", allocationSize = 50)
   private Long id;
 
   @ManyToOne(fetch = FetchType.LAZY)
@@ -20,12 +20,23 @@ public class Account {
   @Column(nullable = false, length = 3)
   private String currency;
 
+  // minor units of currency; the transfer path works on the long, see Money
+  @Convert(converter = MinorUnitsConverter.class)
   @Column(nullable = false, precision = 19, scale = 2)
-  private BigDecimal balance;
+  private long balance;
 
   @Column(nullable = false)
   private String status = "ACTIVE";
 
+  // bumped on every balance change, also by the SQL updates in AccountRepository and the ledger writer
+  @Version
+  @Column(nullable = false)
+  private long version;
+
+  // > 0: credits go to this many account_buckets rows, see HotAccountBuckets
+  @Column(name = "hot_buckets", nullable = false)
+  private int hotBuckets;
+
   public Long getId() {
     return id;
   }
@@ -50,11 +61,33 @@ public class Account {
   public void setCurrency(String currency) {
     this.currency = currency;
   }
-  public BigDecimal getBalance() {
+  public Money getBalance() {
+    return new Money(balance, currency);
+  }
+  // no Money allocated, for the transfer path and responses
+  public long balanceMinorUnits() {
     return balance;
   }
-  public void setBalance(BigDecimal balance) {
-    this.balance = balance;
+  public void setBalance(Money balance) {
+    requireCurrency(balance);
+    this.balance = balance.minorUnits();
+  }
+  public boolean covers(Money amount) {
+    requireCurrency(amount);
+    return balance >= amount.minorUnits();
+  }
+  public void debit(Money amount) {
+    requireCurrency(amount);
+    balance = Math.subtractExact(balance, amount.minorUnits());
+  }
+  public void credit(Money amount) {
+    requireCurrency(amount);
+    balance = Math.addExact(balance, amount.minorUnits());
+  }
+  private void requireCurrency(Money amount) {
+    if (!currency.equals(amount.currency())) {
+      throw new IllegalArgumentException("Account " + id + " holds " + currency + ", not " + amount.currency());
+    }
   }
   public String getStatus() {
     return status;
@@ -62,4 +95,13 @@ public class Account {
   public void setStatus(String status) {
     this.status = status;
   }
+  public long getVersion() {
+    return version;
+  }
+  public int getHotBuckets() {
+    return hotBuckets;
+  }
+  public void setHotBuckets(int hotBuckets) {
+    this.hotBuckets = hotBuckets;
+  }
 }
@@ -2,6 +2,7 @@ package com.tsb.banking.model;
 
 import jakarta.persistence.*;
 
+import java.math.BigDecimal;
 import java.time.Instant;
 
 /**
@@ -18,7 +19,8 @@ import java.time.Instant;
 public class IdempotencyKey {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "idempotency_keys_seq")
+    @SequenceGenerator(name = "idempotency_keys_seq", sequenceName = "idempotency_keys_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, length = 64)
@@ -33,6 +35,13 @@ public class IdempotencyKey {
     private Long debitTxnId;
     private Long creditTxnId;
 
+    // balances returned by the original request; null for keys stored before they were recorded
+    @Column(name = "from_balance", precision = 19, scale = 2)
+    private BigDecimal fromBalance;
+
+    @Column(name = "to_balance", precision = 19, scale = 2)
+    private BigDecimal toBalance;
+
     @Column(nullable = false)
     private Instant createdAt = Instant.now();
 
@@ -80,6 +89,22 @@ public class IdempotencyKey {
         this.creditTxnId = creditTxnId;
     }
 
+    public BigDecimal getFromBalance() {
+        return fromBalance;
+    }
+
+    public void setFromBalance(BigDecimal fromBalance) {
+        this.fromBalance = fromBalance;
+    }
+
+    public BigDecimal getToBalance() {
+        return toBalance;
+    }
+
+    public void setToBalance(BigDecimal toBalance) {
+        this.toBalance = toBalance;
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
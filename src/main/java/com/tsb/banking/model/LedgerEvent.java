@@ -0,0 +1,117 @@
+package com.tsb.banking.model;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Outbox row for a posted transfer; seq is assigned when the event is published.
+ */
+@Entity
+@Table(name = "ledger_events")
+public class LedgerEvent {
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ledger_events_seq")
+  @SequenceGenerator(name = "ledger_events_seq", sequenceName = "ledger_events_seq", allocationSize = 50)
+  private Long id;
+
+  private Long seq;
+
+  @Column(name = "debit_txn_id", nullable = false)
+  private Long debitTxnId;
+
+  @Column(name = "credit_txn_id", nullable = false)
+  private Long creditTxnId;
+
+  @Column(name = "from_account_id", nullable = false)
+  private Long fromAccountId;
+
+  @Column(name = "to_account_id", nullable = false)
+  private Long toAccountId;
+
+  @Column(nullable = false, precision = 19, scale = 2)
+  private BigDecimal amount;
+
+  @Column(nullable = false, length = 3)
+  private String currency;
+
+  // what the credited account received; differs from amount/currency for a cross-currency transfer
+  @Column(name = "credit_amount", nullable = false, precision = 19, scale = 2)
+  private BigDecimal creditAmount;
+
+  @Column(name = "credit_currency", nullable = false, length = 3)
+  private String creditCurrency;
+
+  @Column(name = "fx_rate", precision = 19, scale = 8)
+  private BigDecimal fxRate;
+
+  @Column(name = "created_at", nullable = false)
+  private Instant createdAt = Instant.now();
+
+  public Long getId() {
+    return id;
+  }
+  public Long getSeq() {
+    return seq;
+  }
+  public Long getDebitTxnId() {
+    return debitTxnId;
+  }
+  public void setDebitTxnId(Long debitTxnId) {
+    this.debitTxnId = debitTxnId;
+  }
+  public Long getCreditTxnId() {
+    return creditTxnId;
+  }
+  public void setCreditTxnId(Long creditTxnId) {
+    this.creditTxnId = creditTxnId;
+  }
+  public Long getFromAccountId() {
+    return fromAccountId;
+  }
+  public void setFromAccountId(Long fromAccountId) {
+    this.fromAccountId = fromAccountId;
+  }
+  public Long getToAccountId() {
+    return toAccountId;
+  }
+  public void setToAccountId(Long toAccountId) {
+    this.toAccountId = toAccountId;
+  }
+  public BigDecimal getAmount() {
+    return amount;
+  }
+  public void setAmount(BigDecimal amount) {
+    this.amount = amount;
+  }
+  public String getCurrency() {
+    return currency;
+  }
+  public void setCurrency(String currency) {
+    this.currency = currency;
+  }
+  public BigDecimal getCreditAmount() {
+    return creditAmount;
+  }
+  public void setCreditAmount(BigDecimal creditAmount) {
+    this.creditAmount = creditAmount;
+  }
+  public String getCreditCurrency() {
+    return creditCurrency;
+  }
+  public void setCreditCurrency(String creditCurrency) {
+    this.creditCurrency = creditCurrency;
+  }
+  public BigDecimal getFxRate() {
+    return fxRate;
+  }
+  public void setFxRate(BigDecimal fxRate) {
+    this.fxRate = fxRate;
+  }
+  public Instant getCreatedAt() {
+    return createdAt;
+  }
+  public void setCreatedAt(Instant createdAt) {
+    this.createdAt = createdAt;
+  }
+}
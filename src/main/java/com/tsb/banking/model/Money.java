@@ -0,0 +1,67 @@
+package com.tsb.banking.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+
+/**
+ * An amount as a whole number of minor units (cents) of its currency.
+ *
+ * Every currency held here has two decimal places, like the numeric(19,2) columns, so a long covers any amount
+ * up to about 92 quadrillion. Conversion from BigDecimal happens at the API and persistence edges only; balance
+ * arithmetic is plain long arithmetic and throws ArithmeticException on overflow instead of wrapping around.
+ */
+public record Money(long minorUnits, String currency) {
+
+  public static final int SCALE = 2;
+
+  public Money {
+    Objects.requireNonNull(currency, "currency");
+  }
+
+  /**
+   * Exact conversion.
+   * @throws ArithmeticException if the amount has non-zero digits past the second decimal place or does not fit
+   */
+  public static Money of(BigDecimal amount, String currency) {
+    return new Money(minorUnits(amount), currency);
+  }
+
+  public static long minorUnits(BigDecimal amount) {
+    return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+  }
+
+  public static BigDecimal toBigDecimal(long minorUnits) {
+    return BigDecimal.valueOf(minorUnits, SCALE);
+  }
+
+  public BigDecimal toBigDecimal() {
+    return toBigDecimal(minorUnits);
+  }
+
+  public Money plus(Money other) {
+    requireSameCurrency(other);
+    return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+  }
+
+  public Money minus(Money other) {
+    requireSameCurrency(other);
+    return new Money(Math.subtractExact(minorUnits, other.minorUnits), currency);
+  }
+
+  public boolean isLessThan(Money other) {
+    requireSameCurrency(other);
+    return minorUnits < other.minorUnits;
+  }
+
+  public void requireSameCurrency(Money other) {
+    if (!currency.equals(other.currency)) {
+      throw new IllegalArgumentException("Currency mismatch: " + currency + " and " + other.currency);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return toBigDecimal().toPlainString() + " " + currency;
+  }
+}
@@ -6,7 +6,8 @@ import java.time.Instant;
 @Entity
 @Table(name = "otp_tokens")
 public class OtpToken {
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Id @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "otp_tokens_seq")
+    @SequenceGenerator(name = "otp_tokens_seq", sequenceName = "otp_tokens_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
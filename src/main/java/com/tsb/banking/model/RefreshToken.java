@@ -7,7 +7,8 @@ import java.time.Instant;
 @Table(name = "refresh_tokens",
         uniqueConstraints = @UniqueConstraint(name = "uk_refresh_jti", columnNames = "jti"))
 public class RefreshToken {
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Id @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "refresh_tokens_seq")
+    @SequenceGenerator(name = "refresh_tokens_seq", sequenceName = "refresh_tokens_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY) @JoinColumn(name = "user_id", nullable = false)
@@ -16,6 +17,9 @@ public class RefreshToken {
     @Column(nullable = false, length = 64)
     private String jti;
 
+    @Column(name = "family_id", nullable = false, length = 64)
+    private String familyId; // jti of the token issued at login, shared by all its rotations
+
     @Column(name = "expires_at", nullable = false)
     private Instant expiresAt;
 
@@ -52,6 +56,14 @@ public class RefreshToken {
         this.jti = jti;
     }
 
+    public String getFamilyId() {
+        return familyId;
+    }
+
+    public void setFamilyId(String familyId) {
+        this.familyId = familyId;
+    }
+
     public Instant getExpiresAt() {
         return expiresAt;
     }
@@ -8,7 +8,8 @@ import java.time.Instant;
 @Table(name = "transactions")
 public class Transaction {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+  @SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_seq", allocationSize = 50)
   private Long id;
 
   @ManyToOne(fetch = FetchType.LAZY)
@@ -18,12 +19,18 @@ public class Transaction {
   @Column(nullable = false)
   private String type; // DEBIT/CREDIT
 
+  // minor units of currency, see Money
+  @Convert(converter = MinorUnitsConverter.class)
   @Column(nullable = false, precision = 19, scale = 2)
-  private BigDecimal amount;
+  private long amount;
 
   @Column(nullable = false, length = 3)
   private String currency;
 
+  // rate the transfer was priced at when the accounts hold different currencies, see FxRates
+  @Column(name = "fx_rate", precision = 19, scale = 8)
+  private BigDecimal fxRate;
+
   private String reference;
   private String counterparty;
 
@@ -48,11 +55,15 @@ public class Transaction {
   public void setType(String type) {
     this.type = type;
   }
-  public BigDecimal getAmount() {
+  public Money getAmount() {
+    return new Money(amount, currency);
+  }
+  public long amountMinorUnits() {
     return amount;
   }
-  public void setAmount(BigDecimal amount)
-  { this.amount = amount;
+  public void setAmount(Money amount) {
+    this.amount = amount.minorUnits();
+    this.currency = amount.currency();
   }
   public String getCurrency() {
     return currency;
@@ -60,6 +71,12 @@ public class Transaction {
   public void setCurrency(String currency) {
     this.currency = currency;
   }
+  public BigDecimal getFxRate() {
+    return fxRate;
+  }
+  public void setFxRate(BigDecimal fxRate) {
+    this.fxRate = fxRate;
+  }
   public String getReference() {
     return reference;
   }
@@ -1,9 +1,11 @@
 package com.tsb.banking.model;
 
+import com.tsb.banking.service.UserCacheEvictionListener;
 import jakarta.persistence.*;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(UserCacheEvictionListener.class)
 public class User {
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
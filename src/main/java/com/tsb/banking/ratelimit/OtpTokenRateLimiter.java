@@ -0,0 +1,29 @@
+package com.tsb.banking.ratelimit;
+
+import com.tsb.banking.repo.OtpTokenRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Database-backed limiter for OTP requests: counts the tokens already issued to a destination within the window.
+ * The issued otp_tokens rows are the record, so every node sees the same count; each check is a query on
+ * idx_otp_destination. The key is the destination.
+ */
+public class OtpTokenRateLimiter implements RateLimiter {
+
+    private final OtpTokenRepository otpRepo;
+    private final int limit;
+    private final Duration window;
+
+    public OtpTokenRateLimiter(OtpTokenRepository otpRepo, int limit, Duration window) {
+        this.otpRepo = otpRepo;
+        this.limit = limit;
+        this.window = window;
+    }
+
+    @Override
+    public boolean tryAcquire(String purpose, String destination) {
+        return otpRepo.countByDestinationAndPurposeAndCreatedAtAfter(destination, purpose, Instant.now().minus(window)) < limit;
+    }
+}
@@ -0,0 +1,33 @@
+package com.tsb.banking.ratelimit;
+
+import com.tsb.banking.repo.OtpTokenRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class RateLimitConfig {
+
+    /** OTP requests per destination: app.otp.max-req-per-hour, in memory or counted in otp_tokens. */
+    @Bean
+    public RateLimiter otpRateLimiter(OtpTokenRepository otpRepo,
+                                      @Value("${app.otp.max-req-per-hour:5}") int maxRequestsPerHour,
+                                      @Value("${app.otp.rate-limiter:memory}") String store,
+                                      @Value("${app.rate-limit.max-keys:100000}") long maxKeys) {
+        return switch (store) {
+            case "memory" -> new SlidingWindowRateLimiter(maxRequestsPerHour, Duration.ofHours(1), maxKeys);
+            case "database" -> new OtpTokenRateLimiter(otpRepo, maxRequestsPerHour, Duration.ofHours(1));
+            default -> throw new IllegalArgumentException("app.otp.rate-limiter must be memory or database, not " + store);
+        };
+    }
+
+    /** Login attempts per username, checked before the password is hashed. */
+    @Bean
+    public RateLimiter loginRateLimiter(@Value("${app.security.login.max-attempts:10}") int maxAttempts,
+                                        @Value("${app.security.login.window:PT15M}") Duration window,
+                                        @Value("${app.rate-limit.max-keys:100000}") long maxKeys) {
+        return new SlidingWindowRateLimiter(maxAttempts, window, maxKeys);
+    }
+}
@@ -0,0 +1,13 @@
+package com.tsb.banking.ratelimit;
+
+/**
+ * Limits how often something may happen per key, e.g. OTP requests per destination or logins per username.
+ */
+public interface RateLimiter {
+
+    /**
+     * Take one attempt for {@code key} under {@code purpose}.
+     * @return true if the attempt is allowed (and counted), false if the limit is reached (not counted)
+     */
+    boolean tryAcquire(String purpose, String key);
+}
@@ -0,0 +1,55 @@
+package com.tsb.banking.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory sliding-window limiter: at most {@code limit} attempts per key within any {@code window}.
+ *
+ * Each key holds the times of its recent allowed attempts in an immutable array that is replaced by
+ * compare-and-set, so concurrent attempts for the same key never block and never over-admit. Keys idle for a
+ * full window are evicted, and at most {@code maxKeys} are tracked. Limits are per application node.
+ */
+public class SlidingWindowRateLimiter implements RateLimiter {
+
+    private static final long[] NONE = new long[0];
+
+    private final int limit;
+    private final long windowNanos;
+    private final Cache<String, AtomicReference<long[]>> attempts;
+
+    public SlidingWindowRateLimiter(int limit, Duration window, long maxKeys) {
+        this.limit = limit;
+        this.windowNanos = window.toNanos();
+        this.attempts = Caffeine.newBuilder()
+                .expireAfterAccess(window)
+                .maximumSize(maxKeys)
+                .build();
+    }
+
+    @Override
+    public boolean tryAcquire(String purpose, String key) {
+        AtomicReference<long[]> ref = attempts.get(purpose + "|" + key, k -> new AtomicReference<>(NONE));
+        while (true) {
+            long now = System.nanoTime();
+            long[] current = ref.get();
+            // attempt times are appended in order, so the ones still inside the window are a suffix
+            int from = 0;
+            while (from < current.length && now - current[from] >= windowNanos) {
+                from++;
+            }
+            if (current.length - from >= limit) {
+                return false;
+            }
+            long[] next = Arrays.copyOfRange(current, from, current.length + 1);
+            next[next.length - 1] = now;
+            if (ref.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+}
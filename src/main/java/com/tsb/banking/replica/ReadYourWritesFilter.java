@@ -0,0 +1,44 @@
+package com.tsb.banking.replica;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Bounds replica lag for callers that just wrote.
+ *
+ * Transfers return their debit transaction id in {@value #HEADER}. A GET that sends it back reads from the
+ * replica only once that transaction is visible there, and from the primary until then.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.datasource.replica", name = "url")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Consistency-Token";
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"GET".equals(request.getMethod()) || request.getHeader(HEADER) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        long txnId;
+        try {
+            txnId = Long.parseLong(request.getHeader(HEADER).trim());
+        } catch (NumberFormatException e) {
+            chain.doFilter(request, response);
+            return;
+        }
+        try (ReplicaDataSource.Pin pin = ReplicaDataSource.requireVisible(txnId)) {
+            chain.doFilter(request, response);
+        }
+    }
+}
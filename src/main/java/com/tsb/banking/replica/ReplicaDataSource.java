@@ -0,0 +1,118 @@
+package com.tsb.banking.replica;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.LongStream;
+
+/**
+ * Where read-only transactions get their connections: the replica, unless it has not caught up yet.
+ *
+ * Callers that depend on recent transfers name their transaction ids with {@link #requireVisible}. Before the
+ * first replica connection of that scope is handed out, the replica is asked whether it has those rows; if it
+ * does not, the scope reads from the primary instead. Replicas apply commits in order, so a visible transfer
+ * also means everything committed before it is visible.
+ */
+public class ReplicaDataSource extends DelegatingDataSource {
+
+    public interface Pin extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Scope {
+        final Scope outer;
+        long[] pending;
+        boolean primary;
+
+        Scope(Scope outer, long[] pending, boolean primary) {
+            this.outer = outer;
+            this.pending = pending;
+            this.primary = primary;
+        }
+    }
+
+    private static final ThreadLocal<Scope> SCOPE = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    public ReplicaDataSource(DataSource replica, DataSource primary, MeterRegistry meters) {
+        super(replica);
+        this.primary = primary;
+        this.replicaReads = meters.counter("banking.replica.read-your-writes", "target", "replica");
+        this.primaryReads = meters.counter("banking.replica.read-your-writes", "target", "primary");
+    }
+
+    /** Until the returned pin is closed, read-only transactions on this thread must see these transactions. */
+    public static Pin requireVisible(long... txnIds) {
+        Scope outer = SCOPE.get();
+        long[] pending = outer == null ? txnIds : LongStream.concat(Arrays.stream(outer.pending), Arrays.stream(txnIds)).toArray();
+        SCOPE.set(new Scope(outer, pending, outer != null && outer.primary));
+        return () -> {
+            if (outer == null) {
+                SCOPE.remove();
+            } else {
+                SCOPE.set(outer);
+            }
+        };
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Scope scope = SCOPE.get();
+        if (scope == null || (scope.pending.length == 0 && !scope.primary)) {
+            return super.getConnection();
+        }
+        if (scope.primary) {
+            return primary.getConnection();
+        }
+        Connection con = super.getConnection();
+        boolean visible;
+        try {
+            visible = visible(con, scope.pending);
+        } catch (SQLException | RuntimeException e) {
+            con.close();
+            throw e;
+        }
+        if (visible) {
+            replicaReads.increment();
+            scope.pending = new long[0];
+            return con;
+        }
+        con.close();
+        primaryReads.increment();
+        scope.primary = true;
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        // routing needs the pools' own credentials; Hikari refuses these the same way
+        throw new SQLFeatureNotSupportedException("Replica connections use the pool's credentials");
+    }
+
+    private static boolean visible(Connection con, long[] txnIds) throws SQLException {
+        long[] ids = Arrays.stream(txnIds).distinct().toArray();
+        String sql = "select count(*) from transactions where id in (" + String.join(", ", Collections.nCopies(ids.length, "?")) + ")";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            for (int i = 0; i < ids.length; i++) {
+                ps.setLong(i + 1, ids[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1) == ids.length;
+            }
+        }
+    }
+}
@@ -4,9 +4,12 @@ import com.tsb.banking.model.Account;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,4 +21,24 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
   @Query("select a from Account a where a.id = :id")
   Optional<Account> findByIdForUpdate(@Param("id") Long id);
 
+  // rows are locked in ascending id order so concurrent batches cannot deadlock each other
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("select a from Account a where a.id in :ids order by a.id")
+  List<Account> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+  // Account.balance is a long of minor units, so SQL arithmetic on the column is native and binds decimals
+
+  // conditional debit: 0 rows updated means insufficient funds (or no such account)
+  @Modifying
+  @Query(value = "update accounts set balance = balance - :amount, version = version + 1 where id = :id and balance >= :amount",
+      nativeQuery = true)
+  int debitIfSufficient(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+  @Modifying
+  @Query(value = "update accounts set balance = balance + :amount, version = version + 1 where id = :id", nativeQuery = true)
+  int credit(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+  @Query(value = "select balance from accounts where id = :id", nativeQuery = true)
+  BigDecimal balanceOf(@Param("id") Long id);
+
 }
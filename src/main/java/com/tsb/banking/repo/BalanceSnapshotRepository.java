@@ -0,0 +1,18 @@
+package com.tsb.banking.repo;
+
+import com.tsb.banking.model.BalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+public interface BalanceSnapshotRepository extends JpaRepository<BalanceSnapshot, Long> {
+
+    Optional<BalanceSnapshot> findTopByAccountIdOrderByAsOfDesc(Long accountId);
+
+    // nearest snapshot at or before the instant
+    Optional<BalanceSnapshot> findTopByAccountIdAndAsOfLessThanEqualOrderByAsOfDesc(Long accountId, Instant at);
+
+    // nearest snapshot after the instant, used when the instant predates the first snapshot before it
+    Optional<BalanceSnapshot> findTopByAccountIdAndAsOfGreaterThanOrderByAsOfAsc(Long accountId, Instant at);
+}
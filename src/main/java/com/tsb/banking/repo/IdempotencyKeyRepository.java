@@ -2,10 +2,15 @@ package com.tsb.banking.repo;
 
 import com.tsb.banking.model.IdempotencyKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, Long> {
 
     Optional<IdempotencyKey> findByScopeAndKey(String scope, String key);
 
+    // superset of the wanted (scope, key) pairs; callers match the exact pairs
+    List<IdempotencyKey> findByScopeInAndKeyIn(Collection<String> scopes, Collection<String> keys);
+
 }
@@ -0,0 +1,7 @@
+package com.tsb.banking.repo;
+
+import com.tsb.banking.model.LedgerEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface LedgerEventRepository extends JpaRepository<LedgerEvent, Long> {
+}
@@ -2,7 +2,12 @@ package com.tsb.banking.repo;
 
 import com.tsb.banking.model.RefreshToken;
 import org.springframework.data.jpa.repository.JpaRepository;
-import java.time.Instant;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
 import java.util.Optional;
 
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
@@ -11,6 +16,15 @@ public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long
 
     boolean existsByJti(String jti);
 
-    long deleteByExpiresAtBefore(Instant cutoff);
+    // Marks the token rotated only if nobody else did first; 0 means it was already used
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true, t.replacedByJti = :replacedBy where t.jti = :jti and t.revoked = false")
+    int revokeIfActive(@Param("jti") String jti, @Param("replacedBy") String replacedBy);
+
+    // Commits on its own, so the revocation sticks even though the request that triggered it fails
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true where t.familyId = :familyId and t.revoked = false")
+    int revokeFamily(@Param("familyId") String familyId);
 
 }
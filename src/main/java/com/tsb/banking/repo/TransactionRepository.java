@@ -1,13 +1,57 @@
 package com.tsb.banking.repo;
 
 import com.tsb.banking.model.Transaction;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.List;
 
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
   Page<Transaction> findByAccountIdAndCreatedAtBetweenOrderByCreatedAtDesc(
       Long accountId, Instant from, Instant to, Pageable pageable);
+
+  long countByAccountIdAndCreatedAtBetween(Long accountId, Instant from, Instant to);
+
+  // Keyset pages, newest first: both walk idx_txn_account_created (account_id, created_at, id) without OFFSET
+  @Query("select t from Transaction t where t.account.id = :accountId and t.createdAt between :from and :to "
+      + "order by t.createdAt desc, t.id desc")
+  List<Transaction> findFirstKeysetPage(@Param("accountId") Long accountId, @Param("from") Instant from,
+                                        @Param("to") Instant to, Limit limit);
+
+  @Query("select t from Transaction t where t.account.id = :accountId and t.createdAt between :from and :to "
+      + "and (t.createdAt < :afterCreatedAt or (t.createdAt = :afterCreatedAt and t.id < :afterId)) "
+      + "order by t.createdAt desc, t.id desc")
+  List<Transaction> findKeysetPageAfter(@Param("accountId") Long accountId, @Param("from") Instant from,
+                                        @Param("to") Instant to, @Param("afterCreatedAt") Instant afterCreatedAt,
+                                        @Param("afterId") Long afterId, Limit limit);
+
+  // Net amounts are summed natively over the numeric column; Transaction.amount is a long of minor units
+
+  // Net effect on the balance (credits - debits) of transactions with after < created_at <= upTo
+  @Query(nativeQuery = true, value = "select coalesce(sum(case when type = 'CREDIT' then amount else -amount end), 0) from transactions "
+      + "where account_id = :accountId and created_at > :after and created_at <= :upTo")
+  BigDecimal netAmountBetween(@Param("accountId") Long accountId, @Param("after") Instant after,
+                              @Param("upTo") Instant upTo);
+
+  // Net effect on the balance of transactions with created_at > after
+  @Query(nativeQuery = true, value = "select coalesce(sum(case when type = 'CREDIT' then amount else -amount end), 0) from transactions "
+      + "where account_id = :accountId and created_at > :after")
+  BigDecimal netAmountAfter(@Param("accountId") Long accountId, @Param("after") Instant after);
+
+  // Net effect on the balance of transactions with from <= created_at <= upTo
+  @Query(nativeQuery = true, value = "select coalesce(sum(case when type = 'CREDIT' then amount else -amount end), 0) from transactions "
+      + "where account_id = :accountId and created_at >= :from and created_at <= :upTo")
+  BigDecimal netAmountFrom(@Param("accountId") Long accountId, @Param("from") Instant from,
+                           @Param("upTo") Instant upTo);
+
+  // Net effect on the balance of transactions with created_at >= from
+  @Query(nativeQuery = true, value = "select coalesce(sum(case when type = 'CREDIT' then amount else -amount end), 0) from transactions "
+      + "where account_id = :accountId and created_at >= :from")
+  BigDecimal netAmountSince(@Param("accountId") Long accountId, @Param("from") Instant from);
 }
@@ -1,6 +1,9 @@
 package com.tsb.banking.security;
 
+import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,16 +19,19 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Instant;
 
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
 
-    private final JwtService jwtService;
+    private final VerifiedTokenCache tokenCache;
     private final UserDetailsService userDetailsService;
+    private final MeterRegistry meters;
 
-    public JwtAuthFilter(JwtService jwtService, UserDetailsService userDetailsService) {
-        this.jwtService = jwtService;
+    public JwtAuthFilter(VerifiedTokenCache tokenCache, UserDetailsService userDetailsService, MeterRegistry meters) {
+        this.tokenCache = tokenCache;
         this.userDetailsService = userDetailsService;
+        this.meters = meters;
     }
 
     /** Do not run this filter for public endpoints and preflight */
@@ -51,30 +57,47 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         String token = h.substring(7).trim();
 
+        // banking.auth.jwt{outcome=...}: token verification + user lookup, excluding the rest of the chain
+        Timer.Sample sample = Timer.start(meters);
         try {
+            // Parse & validate JWT once (or reuse an earlier verification); throws JwtException if invalid
+            JwtClaims claims = tokenCache.verify(token);
+
             // Do not allow refresh tokens to call protected APIs
-            if (jwtService.isRefreshToken(token)) {
+            if (claims.refresh()) {
+                stop(sample, "refresh_token_not_allowed");
                 unauthorized(response, "refresh_token_not_allowed");
                 return;
             }
+            if (claims.isExpired(Instant.now())) {
+                stop(sample, "token_expired");
+                unauthorized(response, "token_expired");
+                return;
+            }
 
-            // Parse & validate JWT, then load user
-            String username = jwtService.getUsername(token); // throws JwtException if invalid
+            // Load user
             if (SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails user = userDetailsService.loadUserByUsername(username);
-                if (jwtService.isExpired(token)) {
-                    unauthorized(response, "token_expired");
-                    return;
-                }
+                UserDetails user = userDetailsService.loadUserByUsername(claims.subject());
                 var auth = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
                 auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(auth);
             }
-
-            chain.doFilter(request, response);
+            stop(sample, "ok");
+        } catch (ExpiredJwtException ex) {
+            stop(sample, "token_expired");
+            unauthorized(response, "token_expired");
+            return;
         } catch (JwtException | UsernameNotFoundException ex) {
+            stop(sample, "invalid_token");
             unauthorized(response, "invalid_token");
+            return;
         }
+
+        chain.doFilter(request, response);
+    }
+
+    private void stop(Timer.Sample sample, String outcome) {
+        sample.stop(meters.timer("banking.auth.jwt", "outcome", outcome));
     }
 
     private void unauthorized(HttpServletResponse res, String msg) throws IOException {
@@ -0,0 +1,16 @@
+package com.tsb.banking.security;
+
+import java.time.Instant;
+
+/**
+ * Claims of a JWT whose signature and issuer have been verified.
+ */
+public record JwtClaims(String subject,
+                        String jti,
+                        Instant expiresAt,
+                        boolean refresh) {
+
+    public boolean isExpired(Instant now) {
+        return expiresAt.isBefore(now);
+    }
+}
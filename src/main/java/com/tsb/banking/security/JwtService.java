@@ -21,6 +21,8 @@ import java.util.UUID;
 public class JwtService {
 
     private final Key key;
+    // immutable and thread-safe, so built once
+    private final JwtParser parser;
     private final long accessTtlMinutes;
     private final long refreshTtlDays;
     private final String issuer;
@@ -34,6 +36,12 @@ public class JwtService {
         this.accessTtlMinutes = accessTtlMinutes;
         this.refreshTtlDays = refreshTtlDays;
         this.issuer = issuer;
+
+        JwtParserBuilder pb = Jwts.parserBuilder().setSigningKey(key);
+        if (!issuer.isBlank()){
+            pb.requireIssuer(issuer);
+        }
+        this.parser = pb.build();
     }
 
     // Backward-compatible alias: generate an **access** token.
@@ -80,11 +88,15 @@ public class JwtService {
     }
 
     public Jws<Claims> parse(String token) {
-        JwtParserBuilder pb = Jwts.parserBuilder().setSigningKey(key);
-        if (!issuer.isBlank()){
-            pb.requireIssuer(issuer);
-        }
-        return pb.build().parseClaimsJws(token);
+        return parser.parseClaimsJws(token);
+    }
+
+    /** Verify the token once and return the claims callers need. */
+    public JwtClaims verify(String token) {
+        Claims c = parse(token).getBody();
+        Object type = c.get("type");
+        return new JwtClaims(c.getSubject(), c.getId(), c.getExpiration().toInstant(),
+                type != null && "refresh".equals(type.toString()));
     }
 
     public String getUsername(String token) {
@@ -0,0 +1,50 @@
+package com.tsb.banking.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * In-memory index of refresh token jtis that have been rotated or revoked, and of revoked token families.
+ * A replayed refresh token is recognised here without a database lookup. Entries are kept for the refresh
+ * token lifetime, after which the token no longer verifies anyway; a miss (eviction, restart) falls back
+ * to the refresh_tokens table.
+ */
+@Component
+public class RevokedRefreshTokens implements MeterBinder {
+
+    private final Cache<String, String> familyByJti;
+    private final Cache<String, Boolean> revokedFamilies;
+
+    public RevokedRefreshTokens(@Value("${app.security.jwt.refresh-ttl-days:7}") long refreshTtlDays,
+                                @Value("${app.security.refresh-tokens.revoked-index-size:100000}") long maxSize) {
+        Duration ttl = Duration.ofDays(refreshTtlDays);
+        this.familyByJti = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).recordStats().build();
+        this.revokedFamilies = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, familyByJti, "refresh.revoked");
+    }
+
+    /** Family of the jti if it is known to be rotated or revoked, otherwise null. */
+    public String familyOf(String jti) {
+        return familyByJti.getIfPresent(jti);
+    }
+
+    public void revoked(String jti, String familyId) {
+        familyByJti.put(jti, familyId);
+    }
+
+    /** Remember the family as revoked; false if it already was, so the caller can skip the bulk update. */
+    public boolean revokeFamily(String familyId) {
+        return revokedFamilies.asMap().putIfAbsent(familyId, Boolean.TRUE) == null;
+    }
+}
@@ -0,0 +1,75 @@
+package com.tsb.banking.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+/**
+ * Bounded cache of already verified bearer tokens, keyed by the SHA-256 digest of the token.
+ * A repeat request with the same token skips signature verification and JSON decoding.
+ * Entries expire together with the token; invalid tokens are never cached.
+ */
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+
+    private final JwtService jwtService;
+    private final Cache<String, JwtClaims> cache;
+
+    public VerifiedTokenCache(JwtService jwtService,
+                              @Value("${app.security.jwt.verified-cache-size:10000}") long maxSize) {
+        this.jwtService = jwtService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, JwtClaims>() {
+                    @Override
+                    public long expireAfterCreate(String key, JwtClaims claims, long currentTime) {
+                        return Math.max(0, Duration.between(Instant.now(), claims.expiresAt()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, JwtClaims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, JwtClaims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "jwt.verified");
+    }
+
+    /**
+     * Verified claims for the token, parsing it only on a cache miss.
+     * @throws io.jsonwebtoken.JwtException if the token is invalid
+     */
+    public JwtClaims verify(String token) {
+        return cache.get(digest(token), k -> jwtService.verify(token));
+    }
+
+    private static String digest(String token) {
+        try {
+            var md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
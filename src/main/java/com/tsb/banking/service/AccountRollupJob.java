@@ -0,0 +1,131 @@
+package com.tsb.banking.service;
+
+import com.tsb.banking.events.LedgerEventLog;
+import com.tsb.banking.events.TransferPosted;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps account_daily_rollups up to date from the ledger change feed.
+ *
+ * Each run folds the events after rollup_checkpoint into per account/day/currency deltas and applies them
+ * together with the new checkpoint in one transaction, so every event is counted exactly once. The checkpoint
+ * row is locked for the duration, which also keeps instances from applying the same events twice.
+ * Transfers never wait on rollup rows; rollups trail the feed by up to app.rollups.interval.
+ */
+@Component
+public class AccountRollupJob {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountRollupJob.class);
+
+    private record Key(long accountId, LocalDate day, String currency) {
+    }
+
+    private static final class Totals {
+        long debitCount;
+        BigDecimal debitTotal = BigDecimal.ZERO;
+        long creditCount;
+        BigDecimal creditTotal = BigDecimal.ZERO;
+    }
+
+    private final LedgerEventLog eventLog;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final int batchSize;
+    private final Counter applied;
+
+    public AccountRollupJob(LedgerEventLog eventLog, JdbcTemplate jdbc, TransactionTemplate tx,
+                            @Value("${app.rollups.batch-size:1000}") int batchSize,
+                            MeterRegistry meters) {
+        this.eventLog = eventLog;
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.batchSize = batchSize;
+        this.applied = meters.counter("banking.rollups.events");
+    }
+
+    @Scheduled(fixedDelayString = "${app.rollups.interval:PT5S}")
+    public void run() {
+        try {
+            int n;
+            do {
+                n = applyNext();
+            } while (n == batchSize);
+        } catch (RuntimeException e) {
+            log.error("Account rollup update failed, retrying next run", e);
+        }
+    }
+
+    // one batch of events and the checkpoint after it, atomically; returns the number of events applied
+    private int applyNext() {
+        Integer n = tx.execute(status -> {
+            long checkpoint = jdbc.queryForObject(
+                    "select last_offset from rollup_checkpoint where id = 1 for update", Long.class);
+            List<TransferPosted> events = eventLog.readAfter(checkpoint, batchSize);
+            if (events.isEmpty()) {
+                return 0;
+            }
+            Map<Key, Totals> deltas = new HashMap<>();
+            for (TransferPosted e : events) {
+                // same calendar day as the stored created_at, like the V13 backfill
+                LocalDate day = LocalDate.ofInstant(e.postedAt(), ZoneId.systemDefault());
+                Totals debit = deltas.computeIfAbsent(new Key(e.fromAccountId(), day, e.currency()), k -> new Totals());
+                debit.debitCount++;
+                debit.debitTotal = debit.debitTotal.add(e.amount());
+                Totals credit = deltas.computeIfAbsent(new Key(e.toAccountId(), day, e.creditCurrency()), k -> new Totals());
+                credit.creditCount++;
+                credit.creditTotal = credit.creditTotal.add(e.creditAmount());
+            }
+            apply(deltas);
+            jdbc.update("update rollup_checkpoint set last_offset = ? where id = 1",
+                    events.get(events.size() - 1).offset());
+            return events.size();
+        });
+        applied.increment(n);
+        return n;
+    }
+
+    // update existing rows, insert the rest; no other writer can insert them while the checkpoint is locked
+    private void apply(Map<Key, Totals> deltas) {
+        List<Key> keys = new ArrayList<>(deltas.keySet());
+        List<Object[]> updates = new ArrayList<>(keys.size());
+        for (Key k : keys) {
+            Totals t = deltas.get(k);
+            updates.add(new Object[]{t.debitCount, t.debitTotal, t.creditCount, t.creditTotal,
+                    k.accountId(), Date.valueOf(k.day()), k.currency()});
+        }
+        int[] updated = jdbc.batchUpdate("update account_daily_rollups set debit_count = debit_count + ?, "
+                + "debit_total = debit_total + ?, credit_count = credit_count + ?, credit_total = credit_total + ? "
+                + "where account_id = ? and posted_on = ? and currency = ?", updates);
+
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (updated[i] == 0) {
+                Key k = keys.get(i);
+                Totals t = deltas.get(k);
+                inserts.add(new Object[]{k.accountId(), Date.valueOf(k.day()), k.currency(),
+                        t.debitCount, t.debitTotal, t.creditCount, t.creditTotal});
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbc.batchUpdate("insert into account_daily_rollups (account_id, posted_on, currency, debit_count, debit_total, "
+                    + "credit_count, credit_total) values (?, ?, ?, ?, ?, ?, ?)", inserts);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.tsb.banking.service;
+
+import com.tsb.banking.api.dto.AccountRollupDto;
+import com.tsb.banking.exception.BusinessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Period totals and counts per account, read from account_daily_rollups (one row per day with activity)
+ * instead of aggregating transactions. See {@link AccountRollupJob} for how current they are.
+ */
+@Service
+public class AccountRollupService {
+
+    // longest range one request may cover
+    private static final long MAX_DAYS = 3660;
+
+    public enum Period {
+        DAY, MONTH, TOTAL;
+
+        public static Period of(String value) {
+            try {
+                return Period.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException("UNSUPPORTED_PERIOD", "period must be day, month or total");
+            }
+        }
+
+        LocalDate start(LocalDate day, LocalDate from) {
+            return switch (this) {
+                case DAY -> day;
+                case MONTH -> day.withDayOfMonth(1).isBefore(from) ? from : day.withDayOfMonth(1);
+                case TOTAL -> from;
+            };
+        }
+
+        LocalDate end(LocalDate day, LocalDate to) {
+            LocalDate end = switch (this) {
+                case DAY -> day;
+                case MONTH -> day.withDayOfMonth(day.lengthOfMonth());
+                case TOTAL -> to;
+            };
+            return end.isAfter(to) ? to : end;
+        }
+    }
+
+    private record Key(LocalDate start, String currency) {
+    }
+
+    private final JdbcTemplate jdbc;
+
+    public AccountRollupService(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Totals per period and currency, oldest first; periods without activity are left out.
+     * @param from first day, inclusive
+     * @param to last day, inclusive
+     */
+    @Transactional(readOnly = true)
+    public List<AccountRollupDto> rollups(Long accountId, LocalDate from, LocalDate to, Period period) {
+        if (from.isAfter(to)) {
+            throw new BusinessException("INVALID_RANGE", "from must not be after to");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+            throw new BusinessException("INVALID_RANGE", "range must not exceed " + MAX_DAYS + " days");
+        }
+        Map<Key, AccountRollupDto> periods = new LinkedHashMap<>();
+        jdbc.query("select posted_on, currency, debit_count, debit_total, credit_count, credit_total "
+                        + "from account_daily_rollups where account_id = ? and posted_on between ? and ? "
+                        + "order by posted_on, currency",
+                rs -> {
+                    LocalDate day = rs.getDate(1).toLocalDate();
+                    Key key = new Key(period.start(day, from), rs.getString(2));
+                    AccountRollupDto sum = periods.get(key);
+                    periods.put(key, new AccountRollupDto(key.start(), period.end(day, to), key.currency(),
+                            rs.getLong(3) + (sum == null ? 0 : sum.debitCount()),
+                            rs.getBigDecimal(4).add(sum == null ? BigDecimal.ZERO : sum.debitTotal()),
+                            rs.getLong(5) + (sum == null ? 0 : sum.creditCount()),
+                            rs.getBigDecimal(6).add(sum == null ? BigDecimal.ZERO : sum.creditTotal())));
+                },
+                accountId, Date.valueOf(from), Date.valueOf(to));
+        return new ArrayList<>(periods.values());
+    }
+}
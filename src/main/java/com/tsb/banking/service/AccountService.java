@@ -2,27 +2,53 @@ package com.tsb.banking.service;
 
 import com.tsb.banking.api.dto.AccountDto;
 import com.tsb.banking.exception.NotFoundException;
+import com.tsb.banking.ledger.LedgerEngine;
 import com.tsb.banking.model.Account;
+import com.tsb.banking.model.Money;
 import com.tsb.banking.repo.AccountRepository;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class AccountService {
 
   private final AccountRepository accountRepository;
+  // present only when app.ledger.engine.enabled=true
+  private final LedgerEngine ledgerEngine;
+  private final HotAccountBuckets buckets;
 
-  public AccountService(AccountRepository accountRepository) {
+  public AccountService(AccountRepository accountRepository, ObjectProvider<LedgerEngine> ledgerEngine,
+                        HotAccountBuckets buckets) {
     this.accountRepository = accountRepository;
+    this.ledgerEngine = ledgerEngine.getIfAvailable();
+    this.buckets = buckets;
   }
 
+  @Transactional(readOnly = true)
   public List<AccountDto> accountsForCustomer(Long customerId) {
-    return accountRepository.findByCustomerId(customerId).stream()
-        .map(a -> new AccountDto(a.getId(), a.getNumber(), a.getCurrency(), a.getBalance()))
+    List<Account> accounts = accountRepository.findByCustomerId(customerId);
+    // one query for the bucket sums of all hot accounts of the customer
+    List<Long> hot = accounts.stream().filter(buckets::hasBuckets).map(Account::getId).toList();
+    Map<Long, BigDecimal> pending = ledgerEngine == null ? buckets.pending(hot) : Map.of();
+    return accounts.stream()
+        .map(a -> new AccountDto(a.getId(), a.getNumber(), a.getCurrency(), balanceOf(a, pending)))
         .toList();
   }
 
+  // the ledger engine writes balances to the table in the background, so its in-memory view is newer
+  // (it loaded the bucket sums on startup)
+  private BigDecimal balanceOf(Account a, Map<Long, BigDecimal> pending) {
+    if (ledgerEngine != null) {
+      return ledgerEngine.balanceOf(a.getId()).orElseGet(() -> Money.toBigDecimal(a.balanceMinorUnits()));
+    }
+    return Money.toBigDecimal(a.balanceMinorUnits()).add(pending.getOrDefault(a.getId(), BigDecimal.ZERO));
+  }
+
   // throw NotFoundException if not found
   public Account requireAccount(Long id) {
     return accountRepository.findById(id).orElseThrow(() -> new NotFoundException("Account " + id + " not found"));
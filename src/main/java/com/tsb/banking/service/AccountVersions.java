@@ -0,0 +1,117 @@
+package com.tsb.banking.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ETags for the reads of accounts and of customers' account lists, derived from persisted state so that every
+ * instance tags the same data alike.
+ *
+ * An account's version is its accounts.version plus the versions of its account_buckets rows. Every balance change
+ * bumps one of them in the transaction that inserts the transaction rows, so the version moves exactly when the
+ * account's reads can change. A customer's version adds up the customer's accounts the same way, and counts them.
+ * The tag is read in a read-only transaction just before the data, inside the same replica scope, so a response
+ * is never tagged newer than its data. Reading it is one primary key lookup.
+ *
+ * With the ledger engine, balances are served from memory ahead of the accounts table, so tags also carry a
+ * watermark this instance moves whenever the engine applies a transfer (the engine runs on a single instance).
+ *
+ * Each watermark also remembers the debit transaction ids of the last few transfers this instance posted, so a
+ * read served from a replica can first make sure those are visible there (see ReplicaDataSource).
+ */
+@Component
+public class AccountVersions {
+
+  // more than one only if transfers of the same account commit at nearly the same time
+  private static final int RECENT_TRANSFERS = 4;
+  private static final Mark NONE = new Mark(0, new long[0]);
+  private static final String ACCOUNT_VERSION = "select a.version + coalesce((select sum(b.version) "
+      + "from account_buckets b where b.account_id = a.id), 0) from accounts a where a.id = ?";
+  private static final String CUSTOMER_VERSION = "select count(*), coalesce(sum(a.version + coalesce((select sum(b.version) "
+      + "from account_buckets b where b.account_id = a.id), 0)), 0) from accounts a where a.customer_id = ?";
+
+  private record Mark(long version, long[] recentTxnIds) {
+
+    Mark next(long version, long txnId) {
+      long[] recent = new long[Math.min(recentTxnIds.length + 1, RECENT_TRANSFERS)];
+      recent[0] = txnId;
+      System.arraycopy(recentTxnIds, 0, recent, 1, recent.length - 1);
+      return new Mark(Math.max(this.version, version), recent);
+    }
+  }
+
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate readOnly;
+  private final boolean ledgerEngine;
+  private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+  private final AtomicLong clock = new AtomicLong();
+  // one entry per account/customer that had a transfer on this instance since startup
+  private final ConcurrentHashMap<Long, Mark> accounts = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Long, Mark> customers = new ConcurrentHashMap<>();
+
+  public AccountVersions(JdbcTemplate jdbc, PlatformTransactionManager txManager,
+                         @Value("${app.ledger.engine.enabled:false}") boolean ledgerEngine) {
+    this.jdbc = jdbc;
+    this.readOnly = new TransactionTemplate(txManager);
+    this.readOnly.setReadOnly(true);
+    this.ledgerEngine = ledgerEngine;
+  }
+
+  /** Read within the replica scope of the account's read, before it. */
+  public String accountTag(long accountId) {
+    Long version = readOnly.execute(status ->
+        jdbc.query(ACCOUNT_VERSION, rs -> rs.next() ? rs.getLong(1) : 0L, accountId));
+    return tag(Long.toString(version), accounts.getOrDefault(accountId, NONE));
+  }
+
+  /** Read within the replica scope of the customer's read, before it. */
+  public String customerTag(long customerId) {
+    String version = readOnly.execute(status ->
+        jdbc.queryForObject(CUSTOMER_VERSION, (rs, i) -> rs.getLong(1) + "-" + rs.getLong(2), customerId));
+    return tag(version, customers.getOrDefault(customerId, NONE));
+  }
+
+  /** Debit transaction ids of the latest transfers of the account, newest first. */
+  public long[] recentTransfers(long accountId) {
+    return accounts.getOrDefault(accountId, NONE).recentTxnIds().clone();
+  }
+
+  public long[] recentCustomerTransfers(long customerId) {
+    return customers.getOrDefault(customerId, NONE).recentTxnIds().clone();
+  }
+
+  private String tag(String persisted, Mark local) {
+    return ledgerEngine
+        ? "\"" + persisted + "." + epoch + "." + local.version() + "\""
+        : "\"" + persisted + "\"";
+  }
+
+  /** Mark the accounts changed once the current transaction commits (right away outside one). */
+  public void changedAfterCommit(long customerId, long fromAccountId, long toAccountId, long debitTxnId) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          changed(customerId, fromAccountId, toAccountId, debitTxnId);
+        }
+      });
+    } else {
+      changed(customerId, fromAccountId, toAccountId, debitTxnId);
+    }
+  }
+
+  public void changed(long customerId, long fromAccountId, long toAccountId, long debitTxnId) {
+    long version = clock.incrementAndGet();
+    accounts.compute(fromAccountId, (id, m) -> (m == null ? NONE : m).next(version, debitTxnId));
+    accounts.compute(toAccountId, (id, m) -> (m == null ? NONE : m).next(version, debitTxnId));
+    customers.compute(customerId, (id, m) -> (m == null ? NONE : m).next(version, debitTxnId));
+  }
+}
@@ -0,0 +1,128 @@
+package com.tsb.banking.service;
+
+import com.tsb.banking.api.dto.BalanceAtDto;
+import com.tsb.banking.archive.ArchiveView;
+import com.tsb.banking.archive.TransactionArchive;
+import com.tsb.banking.exception.NotFoundException;
+import com.tsb.banking.model.Account;
+import com.tsb.banking.model.BalanceSnapshot;
+import com.tsb.banking.model.Money;
+import com.tsb.banking.repo.AccountRepository;
+import com.tsb.banking.repo.BalanceSnapshotRepository;
+import com.tsb.banking.repo.TransactionRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Point-in-time balances.
+ *
+ * A balance as of any instant starts from the nearest {@link BalanceSnapshot} and replays only the
+ * transactions between the snapshot and the instant, so the cost does not depend on account age.
+ * Opening balances are not recorded as transactions, which is why the first snapshot of an account is
+ * anchored on the current balance rather than summed from zero. Transactions before the archive watermark
+ * are summed from the archive's per-chunk totals.
+ */
+@Service
+public class BalanceHistoryService {
+
+    private final AccountRepository accountRepo;
+    private final TransactionRepository txnRepo;
+    private final BalanceSnapshotRepository snapshotRepo;
+    private final HotAccountBuckets buckets;
+    private final TransactionArchive archive;
+
+    public BalanceHistoryService(AccountRepository accountRepo, TransactionRepository txnRepo,
+                                 BalanceSnapshotRepository snapshotRepo, HotAccountBuckets buckets,
+                                 TransactionArchive archive) {
+        this.accountRepo = accountRepo;
+        this.txnRepo = txnRepo;
+        this.snapshotRepo = snapshotRepo;
+        this.buckets = buckets;
+        this.archive = archive;
+    }
+
+    /**
+     * Balance of the account including every transaction with created_at <= at.
+     * @param at the instant, null means now
+     */
+    @Transactional(readOnly = true)
+    public BalanceAtDto balanceAt(Long accountId, Instant at) {
+        Account account = accountRepo.findById(accountId)
+                .orElseThrow(() -> new NotFoundException("Account " + accountId + " not found"));
+        Instant t = (at == null) ? Instant.now() : at;
+
+        BigDecimal balance;
+        Optional<BalanceSnapshot> before = snapshotRepo.findTopByAccountIdAndAsOfLessThanEqualOrderByAsOfDesc(accountId, t);
+        if (before.isPresent()) {
+            // roll forward from the snapshot
+            balance = before.get().getBalance().add(netAmount(accountId, before.get().getAsOf(), t));
+        } else {
+            Optional<BalanceSnapshot> after = snapshotRepo.findTopByAccountIdAndAsOfGreaterThanOrderByAsOfAsc(accountId, t);
+            if (after.isPresent()) {
+                // roll back from the first snapshot
+                balance = after.get().getBalance().subtract(netAmount(accountId, t, after.get().getAsOf()));
+            } else {
+                // no snapshots yet: roll back from the current balance
+                balance = buckets.balanceOf(account).subtract(netAmount(accountId, t, null));
+            }
+        }
+        return new BalanceAtDto(accountId, account.getCurrency(), t, balance);
+    }
+
+    /**
+     * Write a snapshot of the account as of the instant, unless nothing changed since the previous one.
+     * Later snapshots are rolled forward from the previous snapshot without touching the account row;
+     * the first one is anchored on the current balance under the account row lock, so no transfer on
+     * the account is in flight while it is computed.
+     * @param asOf must be far enough in the past that every transaction created before it has committed
+     * @return true if a snapshot was written
+     */
+    @Transactional
+    public boolean snapshot(Long accountId, Instant asOf) {
+        Optional<BalanceSnapshot> last = snapshotRepo.findTopByAccountIdOrderByAsOfDesc(accountId);
+        BigDecimal balance;
+        if (last.isPresent()) {
+            if (!last.get().getAsOf().isBefore(asOf)) {
+                return false;
+            }
+            BigDecimal net = netAmount(accountId, last.get().getAsOf(), asOf);
+            if (net.signum() == 0) {
+                return false;
+            }
+            balance = last.get().getBalance().add(net);
+        } else {
+            Account account = accountRepo.findByIdForUpdate(accountId)
+                    .orElseThrow(() -> new NotFoundException("Account " + accountId + " not found"));
+            // bucket credits do not take the row lock; draining the buckets locks them out too
+            if (buckets.hasBuckets(account)) {
+                account.credit(buckets.drain(account));
+            }
+            balance = Money.toBigDecimal(account.balanceMinorUnits()).subtract(netAmount(accountId, asOf, null));
+        }
+
+        BalanceSnapshot s = new BalanceSnapshot();
+        s.setAccountId(accountId);
+        s.setAsOf(asOf);
+        s.setBalance(balance);
+        snapshotRepo.save(s);
+        return true;
+    }
+
+    // Net effect of transactions with after < created_at <= upTo (null: no upper bound), archived or live
+    private BigDecimal netAmount(Long accountId, Instant after, Instant upTo) {
+        ArchiveView archived = archive.current();
+        Instant liveFrom = archived.archivedBefore();
+        if (!after.isBefore(liveFrom)) {
+            return upTo == null ? txnRepo.netAmountAfter(accountId, after) : txnRepo.netAmountBetween(accountId, after, upTo);
+        }
+        BigDecimal net = archived.netAmount(accountId, after, upTo);
+        if (upTo != null && upTo.isBefore(liveFrom)) {
+            return net;
+        }
+        return net.add(upTo == null ? txnRepo.netAmountSince(accountId, liveFrom) : txnRepo.netAmountFrom(accountId, liveFrom, upTo));
+    }
+}
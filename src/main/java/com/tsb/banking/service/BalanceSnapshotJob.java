@@ -0,0 +1,62 @@
+package com.tsb.banking.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Periodically writes balance snapshots for every account, one short transaction per account.
+ * Snapshots are taken {@code app.balance-snapshots.lag} in the past so that transfers still in flight
+ * at that instant have committed.
+ */
+@Component
+public class BalanceSnapshotJob {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceSnapshotJob.class);
+    private static final int PAGE = 500;
+
+    private final BalanceHistoryService balanceHistory;
+    private final JdbcTemplate jdbc;
+    private final Duration lag;
+
+    public BalanceSnapshotJob(BalanceHistoryService balanceHistory,
+                              JdbcTemplate jdbc,
+                              @Value("${app.balance-snapshots.lag:PT5M}") Duration lag) {
+        this.balanceHistory = balanceHistory;
+        this.jdbc = jdbc;
+        this.lag = lag;
+    }
+
+    @Scheduled(initialDelayString = "${app.balance-snapshots.initial-delay:PT1M}",
+            fixedDelayString = "${app.balance-snapshots.interval:PT1H}")
+    public void run() {
+        Instant asOf = Instant.now().minus(lag).truncatedTo(ChronoUnit.MINUTES);
+        long written = 0;
+        long afterId = 0;
+        List<Long> ids;
+        do {
+            ids = jdbc.queryForList("select id from accounts where id > ? order by id limit " + PAGE, Long.class, afterId);
+            for (Long id : ids) {
+                try {
+                    if (balanceHistory.snapshot(id, asOf)) {
+                        written++;
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Balance snapshot of account {} as of {} failed", id, asOf, e);
+                }
+            }
+            if (!ids.isEmpty()) {
+                afterId = ids.get(ids.size() - 1);
+            }
+        } while (ids.size() == PAGE);
+        log.info("Balance snapshots as of {}: {} written", asOf, written);
+    }
+}
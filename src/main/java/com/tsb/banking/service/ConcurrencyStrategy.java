@@ -0,0 +1,22 @@
+package com.tsb.banking.service;
+
+/**
+ * How a single transfer protects the two account balances it changes, see {@code app.transfer.concurrency}.
+ */
+public enum ConcurrencyStrategy {
+
+    /** Lock both account rows (select ... for update) in id order before reading the balances. */
+    PESSIMISTIC,
+
+    /**
+     * Read without locks and write with a version check on {@code Account.version};
+     * a conflicting transfer is retried with jittered backoff.
+     */
+    OPTIMISTIC,
+
+    /**
+     * No read lock: debit with {@code update ... where balance >= amount} and credit with a plain increment,
+     * both applied in id order; the balances returned are read back afterwards.
+     */
+    CONDITIONAL
+}
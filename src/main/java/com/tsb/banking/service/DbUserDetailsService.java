@@ -1,43 +1,87 @@
 package com.tsb.banking.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.tsb.banking.model.User;
 import com.tsb.banking.repo.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * @author zhangyunlin
  *
  *  UserDetailsService implementation that loads user details from the database
+ *
+ *  Lookups are cached for a short TTL; {@link UserCacheEvictionListener} evicts a user whenever the
+ *  row changes (password reset, role change), so revocation does not wait for the TTL.
  */
 @Service
-public class DbUserDetailsService implements UserDetailsService {
+public class DbUserDetailsService implements UserDetailsService, MeterBinder {
+
+    // Immutable snapshot; a fresh UserDetails is built per call because Spring Security erases
+    // the password of the returned instance after authentication
+    private record CachedUser(String username, String passwordHash, List<SimpleGrantedAuthority> authorities) {}
 
     private final UserRepository userRepo;
+    private final Cache<String, CachedUser> cache;
 
-    public DbUserDetailsService(UserRepository userRepo) {
+    public DbUserDetailsService(UserRepository userRepo,
+                                @Value("${app.security.user-cache.ttl-seconds:60}") long ttlSeconds,
+                                @Value("${app.security.user-cache.max-size:10000}") long maxSize) {
         this.userRepo = userRepo;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "user.details");
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        CachedUser u = cache.get(key(username), k -> load(username));
+        return org.springframework.security.core.userdetails.User
+                .withUsername(u.username())
+                //  use password hash, like BCrypt hash
+                .password(u.passwordHash())
+                .authorities(u.authorities())
+                .accountLocked(false).accountExpired(false).credentialsExpired(false).disabled(false)
+                .build();
+    }
+
+    /** Drop the cached entry so the next lookup reads the database. */
+    public void evict(String username) {
+        cache.invalidate(key(username));
+    }
+
+    // Spring Data runs the lookup in its own read-only transaction, so with a replica configured it is served there
+    private CachedUser load(String username) {
         User u = userRepo.findByUsernameIgnoreCase(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
         List<SimpleGrantedAuthority> auths = Arrays.stream(u.getRoles().split(","))
                 .map(String::trim).filter(s -> !s.isEmpty())
                 .map(SimpleGrantedAuthority::new).toList();
-        return org.springframework.security.core.userdetails.User
-                .withUsername(u.getUsername())
-                //  use password hash, like BCrypt hash
-                .password(u.getPasswordHash())
-                .authorities(auths)
-                .accountLocked(false).accountExpired(false).credentialsExpired(false).disabled(false)
-                .build();
+        return new CachedUser(u.getUsername(), u.getPasswordHash(), auths);
+    }
+
+    // usernames are matched case-insensitively
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
     }
 }
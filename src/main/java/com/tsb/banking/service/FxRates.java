@@ -0,0 +1,105 @@
+package com.tsb.banking.service;
+
+import com.tsb.banking.exception.BusinessException;
+import com.tsb.banking.model.Money;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FX rates that price cross-currency transfers, loaded from {@code fx_rates}.
+ *
+ * The table is read into an immutable snapshot that replaces the previous one with a single volatile write
+ * every {@code app.fx.refresh}, so pricing a transfer takes two map lookups and no locks or queries. A pair
+ * without a row of its own is priced at the inverse of the reverse pair, rounded to the 8 decimal places the
+ * rate is recorded with. When {@code app.fx.max-age} is set, rates not updated within it are refused.
+ *
+ * Nothing in this application writes {@code fx_rates}: the rows V15 inserts are fixed development values. A real
+ * deployment keeps the table (rate and updated_at) current from a rate feed, and should then set max-age.
+ */
+@Component
+public class FxRates {
+
+    private static final Logger log = LoggerFactory.getLogger(FxRates.class);
+    private static final int RATE_SCALE = 8;
+
+    /** 1 {@code base} buys {@code rate} {@code quote}. */
+    public record Rate(String base, String quote, BigDecimal rate, Instant updatedAt) {
+
+        /**
+         * The amount in the quote currency, rounded half-even to the minor unit.
+         * @throws ArithmeticException if the result does not fit a long of minor units
+         */
+        public Money convert(Money amount) {
+            if (!amount.currency().equals(base)) {
+                throw new IllegalArgumentException("Rate " + base + "/" + quote + " cannot convert " + amount);
+            }
+            long minorUnits = BigDecimal.valueOf(amount.minorUnits()).multiply(rate)
+                    .setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+            return new Money(minorUnits, quote);
+        }
+
+        Rate inverse() {
+            return new Rate(quote, base, BigDecimal.ONE.divide(rate, RATE_SCALE, RoundingMode.HALF_EVEN), updatedAt);
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final Duration maxAge;
+    // base -> quote -> rate; replaced as a whole on refresh
+    private volatile Map<String, Map<String, Rate>> rates = Map.of();
+
+    /** @param maxAge null to accept rates of any age */
+    public FxRates(JdbcTemplate jdbc, @Value("${app.fx.max-age:}") Duration maxAge) {
+        this.jdbc = jdbc;
+        this.maxAge = maxAge;
+    }
+
+    // loaded before the first transfer; the schedule starts one interval later
+    @PostConstruct
+    @Scheduled(initialDelayString = "${app.fx.refresh:PT1M}", fixedDelayString = "${app.fx.refresh:PT1M}")
+    public void refresh() {
+        Map<String, Map<String, Rate>> loaded = new HashMap<>();
+        jdbc.query("select base_currency, quote_currency, rate, updated_at from fx_rates", rs -> {
+            Rate r = new Rate(rs.getString(1), rs.getString(2), rs.getBigDecimal(3), rs.getTimestamp(4).toInstant());
+            loaded.computeIfAbsent(r.base(), k -> new HashMap<>()).put(r.quote(), r);
+        });
+        for (Map<String, Rate> quotes : Map.copyOf(loaded).values()) {
+            for (Rate r : Map.copyOf(quotes).values()) {
+                loaded.computeIfAbsent(r.quote(), k -> new HashMap<>()).putIfAbsent(r.base(), r.inverse());
+            }
+        }
+        Map<String, Map<String, Rate>> snapshot = new HashMap<>();
+        loaded.forEach((base, quotes) -> snapshot.put(base, Map.copyOf(quotes)));
+        if (!snapshot.equals(rates)) {
+            log.info("FX rates loaded for {} currencies", snapshot.size());
+        }
+        rates = Map.copyOf(snapshot);
+    }
+
+    /**
+     * The rate to convert {@code base} into {@code quote} with, from the current snapshot.
+     * @throws BusinessException FX_RATE_UNAVAILABLE if the pair has no rate or its rate is too old
+     */
+    public Rate rate(String base, String quote) {
+        Rate r = rates.getOrDefault(base, Map.of()).get(quote);
+        if (r == null) {
+            throw new BusinessException("FX_RATE_UNAVAILABLE", "No FX rate from " + base + " to " + quote);
+        }
+        if (maxAge != null && r.updatedAt().isBefore(Instant.now().minus(maxAge))) {
+            throw new BusinessException("FX_RATE_UNAVAILABLE", "The FX rate from " + base + " to " + quote + " is out of date");
+        }
+        return r;
+    }
+}
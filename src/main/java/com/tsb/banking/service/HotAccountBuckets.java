@@ -0,0 +1,186 @@
+package com.tsb.banking.service;
+
+import com.tsb.banking.model.Account;
+import com.tsb.banking.model.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sub-balance buckets of hot accounts.
+ *
+ * An account with {@code hot_buckets = n > 0} receives credits into one of n {@code account_buckets} rows
+ * picked at random, so concurrent credits do not queue on the account row. Its balance is
+ * {@code accounts.balance} plus the sum of the buckets; a debit drains the buckets into the account row
+ * while holding the account row lock.
+ *
+ * The set of hot accounts is reloaded every {@code app.hot-accounts.refresh}; bucket rows are created
+ * before an account is treated as hot, so until then its credits simply take the normal path.
+ *
+ * Reads and debits include the buckets while the account has any, flagged or not ({@link #hasBuckets}): after
+ * {@code hot_buckets} is set back to 0, instances that have not refreshed yet still credit the buckets. The
+ * refresh moves the buckets of un-flagged accounts into the account row and deletes them; a credit that then
+ * finds its bucket gone goes to the account row.
+ */
+@Component
+public class HotAccountBuckets {
+
+    private static final Logger log = LoggerFactory.getLogger(HotAccountBuckets.class);
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    // account id -> number of buckets credits are spread over; replaced as a whole on refresh
+    private volatile Map<Long, Integer> hot = Map.of();
+    // accounts with bucket rows as of the last refresh, flagged or not
+    private volatile Set<Long> withBuckets = Set.of();
+
+    public HotAccountBuckets(JdbcTemplate jdbc, TransactionTemplate tx) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+    }
+
+    @Scheduled(fixedDelayString = "${app.hot-accounts.refresh:PT30S}")
+    public void refresh() {
+        Map<Long, Integer> flagged = new HashMap<>();
+        jdbc.query("select id, hot_buckets from accounts where hot_buckets > 0",
+                rs -> { flagged.put(rs.getLong("id"), rs.getInt("hot_buckets")); });
+        for (var e : flagged.entrySet()) {
+            Integer known = hot.get(e.getKey());
+            if (known == null || known < e.getValue()) {
+                createBuckets(e.getKey(), e.getValue());
+            }
+        }
+        if (!flagged.equals(hot)) {
+            log.info("Hot accounts: {}", flagged);
+        }
+        hot = Map.copyOf(flagged);
+        // include accounts un-flagged since the last refresh until their buckets are gone
+        withBuckets = Set.copyOf(jdbc.queryForList("select distinct account_id from account_buckets", Long.class));
+        for (Long accountId : jdbc.queryForList("select distinct b.account_id from account_buckets b "
+                + "join accounts a on a.id = b.account_id where a.hot_buckets = 0", Long.class)) {
+            removeBuckets(accountId);
+        }
+    }
+
+    // account row first, then buckets: the order transfers lock them in
+    private void removeBuckets(long accountId) {
+        tx.executeWithoutResult(status -> {
+            Integer flag = jdbc.queryForObject("select hot_buckets from accounts where id = ? for update",
+                    Integer.class, accountId);
+            if (flag == null || flag != 0) {
+                return;
+            }
+            BigDecimal balance = BigDecimal.ZERO;
+            long versions = 0;
+            for (Map<String, Object> row : jdbc.queryForList("select balance, version from account_buckets "
+                    + "where account_id = ? order by bucket for update", accountId)) {
+                balance = balance.add((BigDecimal) row.get("balance"));
+                versions += ((Number) row.get("version")).longValue();
+            }
+            // the bucket versions leave the account's ETag with the rows, so the account version takes them over
+            jdbc.update("update accounts set balance = balance + ?, version = version + ? + 1 where id = ?",
+                    balance, versions, accountId);
+            jdbc.update("delete from account_buckets where account_id = ?", accountId);
+            log.info("Moved the buckets of account {}, no longer hot, into its balance", accountId);
+        });
+    }
+
+    private void createBuckets(long accountId, int buckets) {
+        for (int b = 0; b < buckets; b++) {
+            try {
+                jdbc.update("insert into account_buckets (account_id, bucket, balance) select ?, ?, 0 "
+                        + "where not exists (select 1 from account_buckets where account_id = ? and bucket = ?)",
+                        accountId, b, accountId, b);
+            } catch (DuplicateKeyException raced) {
+                // created concurrently by another instance
+            }
+        }
+    }
+
+    public boolean isHot(Long accountId) {
+        return hot.containsKey(accountId);
+    }
+
+    /** Whether the account's balance may include buckets, so reads must add them and debits drain them. */
+    public boolean hasBuckets(Account account) {
+        return account.getHotBuckets() > 0 || withBuckets.contains(account.getId());
+    }
+
+    /**
+     * Add the amount to a random bucket of a hot account; locks only that bucket row. If the account is no longer
+     * hot and its buckets are gone, the amount goes to the account row instead.
+     */
+    public void credit(Long accountId, Money amount) {
+        int bucket = ThreadLocalRandom.current().nextInt(hot.get(accountId));
+        // the version feeds the account's ETag, see AccountVersions
+        int rows = jdbc.update("update account_buckets set balance = balance + ?, version = version + 1 "
+                        + "where account_id = ? and bucket = ?",
+                amount.toBigDecimal(), accountId, bucket);
+        if (rows != 1) {
+            jdbc.update("update accounts set balance = balance + ?, version = version + 1 where id = ?",
+                    amount.toBigDecimal(), accountId);
+        }
+    }
+
+    /**
+     * Lock every bucket of the account, reset them to zero and return what they held.
+     * The caller adds the result to the account row, which it must have locked (or version-checked) already.
+     */
+    public Money drain(Account account) {
+        List<BigDecimal> held = jdbc.queryForList(
+                "select balance from account_buckets where account_id = ? order by bucket for update",
+                BigDecimal.class, account.getId());
+        long sum = 0;
+        for (BigDecimal b : held) {
+            sum = Math.addExact(sum, Money.minorUnits(b));
+        }
+        if (sum != 0) {
+            jdbc.update("update account_buckets set balance = 0 where account_id = ?", account.getId());
+        }
+        return new Money(sum, account.getCurrency());
+    }
+
+    /** Balance of the account, including its buckets. */
+    public BigDecimal balanceOf(Account account) {
+        BigDecimal balance = Money.toBigDecimal(account.balanceMinorUnits());
+        return hasBuckets(account) ? balance.add(pending(account.getId())) : balance;
+    }
+
+    /** Balance including buckets, read in one statement so a concurrent drain cannot be counted twice or missed. */
+    public BigDecimal balanceOf(Long accountId) {
+        return jdbc.queryForObject("select a.balance + coalesce((select sum(b.balance) from account_buckets b "
+                + "where b.account_id = a.id), 0) from accounts a where a.id = ?", BigDecimal.class, accountId);
+    }
+
+    public BigDecimal pending(Long accountId) {
+        return jdbc.queryForObject("select coalesce(sum(balance), 0) from account_buckets where account_id = ?",
+                BigDecimal.class, accountId);
+    }
+
+    /** Bucket sums of several accounts in one query; accounts without buckets are absent. */
+    public Map<Long, BigDecimal> pending(Collection<Long> accountIds) {
+        Map<Long, BigDecimal> sums = new HashMap<>();
+        if (accountIds.isEmpty()) {
+            return sums;
+        }
+        String in = String.join(",", Collections.nCopies(accountIds.size(), "?"));
+        jdbc.query("select account_id, sum(balance) as pending from account_buckets where account_id in (" + in + ") "
+                        + "group by account_id",
+                rs -> { sums.put(rs.getLong("account_id"), rs.getBigDecimal("pending")); },
+                accountIds.toArray());
+        return sums;
+    }
+}
@@ -0,0 +1,50 @@
+package com.tsb.banking.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Deletes idempotency keys older than app.idempotency.ttl, a bounded batch per statement so the
+ * purge never holds locks on a large range of idempotency_keys at once.
+ */
+@Component
+public class IdempotencyPurgeJob {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyPurgeJob.class);
+
+    private final JdbcTemplate jdbc;
+    private final Duration ttl;
+    private final int batchSize;
+
+    public IdempotencyPurgeJob(JdbcTemplate jdbc,
+                               @Value("${app.idempotency.ttl:PT24H}") Duration ttl,
+                               @Value("${app.idempotency.purge-batch-size:1000}") int batchSize) {
+        this.jdbc = jdbc;
+        this.ttl = ttl;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${app.idempotency.purge-interval:PT10M}",
+            fixedDelayString = "${app.idempotency.purge-interval:PT10M}")
+    public void purge() {
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(ttl));
+        long total = 0;
+        int deleted;
+        do {
+            deleted = jdbc.update("delete from idempotency_keys where id in "
+                    + "(select id from idempotency_keys where created_at < ? order by id limit ?)", cutoff, batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+        if (total > 0) {
+            log.info("Purged {} idempotency keys created before {}", total, cutoff.toInstant());
+        }
+    }
+}
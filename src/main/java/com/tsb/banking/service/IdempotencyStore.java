@@ -0,0 +1,176 @@
+package com.tsb.banking.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.tsb.banking.api.dto.TransferResponseDto;
+import com.tsb.banking.exception.BusinessException;
+import com.tsb.banking.model.IdempotencyKey;
+import com.tsb.banking.repo.IdempotencyKeyRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Two-tier store of transfer idempotency keys.
+ *
+ * Recent keys and the response they produced are kept in a bounded in-memory cache, so a client retry
+ * is answered without touching the database; the idempotency_keys table is the durable tier behind it.
+ * Keys live for app.idempotency.ttl from their created_at, after which {@link IdempotencyPurgeJob} deletes them;
+ * cached entries expire at the same moment, however late they were cached.
+ */
+@Component
+public class IdempotencyStore implements MeterBinder {
+
+    /**
+     * A stored key. {@code response} is the original response, or null for keys stored before
+     * responses were recorded (callers then rebuild it from current balances).
+     */
+    public record Replay(String payloadHash, Long debitTxnId, Long creditTxnId, TransferResponseDto response,
+                         Instant createdAt) {
+
+        public void requireSamePayload(String payloadHash) {
+            if (!this.payloadHash.equals(payloadHash)) {
+                throw new BusinessException("IDEMPOTENCY_Exception", "Idempotency key has been used with different payload");
+            }
+        }
+    }
+
+    private final IdempotencyKeyRepository repo;
+    private final Duration ttl;
+    private final Cache<String, Replay> cache;
+
+    public IdempotencyStore(IdempotencyKeyRepository repo,
+                            @Value("${app.idempotency.ttl:PT24H}") Duration ttl,
+                            @Value("${app.idempotency.cache-size:100000}") long cacheSize) {
+        this.repo = repo;
+        this.ttl = ttl;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(expireAfterCreation(ttl, Replay::createdAt))
+                .recordStats()
+                .build();
+    }
+
+    /** Expires a cached key {@code ttl} after the key was created, rather than after it was cached. */
+    public static <V> Expiry<String, V> expireAfterCreation(Duration ttl, Function<V, Instant> createdAt) {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String key, V value, long currentTime) {
+                return Math.max(0, Duration.between(Instant.now(), createdAt.apply(value).plus(ttl)).toNanos());
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, V value, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, value, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(String key, V value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "idempotency");
+    }
+
+    public static String slot(String scope, String key) {
+        return scope + "|" + key;
+    }
+
+    /** Look the key up in memory only; entries found here always carry the original response. */
+    public Optional<Replay> cached(String scope, String key) {
+        return Optional.ofNullable(cache.getIfPresent(slot(scope, key)));
+    }
+
+    /** Look the key up in memory, then in the database. */
+    public Optional<Replay> find(String scope, String key) {
+        Replay hit = cache.getIfPresent(slot(scope, key));
+        if (hit != null) {
+            return Optional.of(hit);
+        }
+        return repo.findByScopeAndKey(scope, key).map(this::remember);
+    }
+
+    /**
+     * Look many keys up at once; the database is queried once for all keys missing from memory.
+     * @return replays keyed by {@link #slot(String, String)}
+     */
+    public Map<String, Replay> findAll(Collection<String> scopes, Collection<String> keys) {
+        Map<String, Replay> found = new HashMap<>();
+        boolean missing = false;
+        var s = scopes.iterator();
+        for (String key : keys) {
+            String slot = slot(s.next(), key);
+            Replay hit = cache.getIfPresent(slot);
+            if (hit != null) {
+                found.put(slot, hit);
+            } else {
+                missing = true;
+            }
+        }
+        if (missing) {
+            // superset of the wanted pairs; only exact (scope, key) matches are used
+            for (IdempotencyKey k : repo.findByScopeInAndKeyIn(scopes, keys)) {
+                found.putIfAbsent(slot(k.getScope(), k.getKey()), remember(k));
+            }
+        }
+        return found;
+    }
+
+    /** Persist the key with its response in the caller's transaction; it is cached once that commits. */
+    public void save(String scope, String key, String payloadHash, TransferResponseDto response) {
+        IdempotencyKey idem = new IdempotencyKey();
+        idem.setScope(scope);
+        idem.setKey(key);
+        idem.setPayloadHash(payloadHash);
+        idem.setDebitTxnId(response.debitTxnId());
+        idem.setCreditTxnId(response.creditTxnId());
+        idem.setFromBalance(response.fromBalance());
+        idem.setToBalance(response.toBalance());
+        repo.save(idem);
+        cacheAfterCommit(scope, key, new Replay(payloadHash, response.debitTxnId(), response.creditTxnId(), response,
+                idem.getCreatedAt()));
+    }
+
+    // a key written by the caller's transaction, once it commits (immediately if there is none)
+    private void cacheAfterCommit(String scope, String key, Replay replay) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.put(slot(scope, key), replay);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.put(slot(scope, key), replay);
+            }
+        });
+    }
+
+    private Replay remember(IdempotencyKey k) {
+        TransferResponseDto response = k.getFromBalance() == null ? null
+                : new TransferResponseDto(k.getDebitTxnId(), k.getCreditTxnId(), k.getFromBalance(), k.getToBalance());
+        Replay replay = new Replay(k.getPayloadHash(), k.getDebitTxnId(), k.getCreditTxnId(), response,
+                k.getCreatedAt());
+        // a row past its ttl is only waiting for the purge; it is not worth a cache slot
+        if (response != null && k.getCreatedAt().plus(ttl).isAfter(Instant.now())) {
+            cache.put(slot(k.getScope(), k.getKey()), replay);
+        }
+        return replay;
+    }
+}
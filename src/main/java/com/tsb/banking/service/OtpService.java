@@ -1,11 +1,15 @@
 package com.tsb.banking.service;
 
-import com.tsb.banking.auth.sms.SmsSender;
+import com.tsb.banking.auth.sms.SmsOutbox;
 import com.tsb.banking.exception.BusinessException;
 import com.tsb.banking.model.OtpToken;
 import com.tsb.banking.model.User;
+import com.tsb.banking.ratelimit.RateLimiter;
 import com.tsb.banking.repo.OtpTokenRepository;
 import com.tsb.banking.repo.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,6 +20,7 @@ import java.security.SecureRandom;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.HexFormat;
+import java.util.function.Supplier;
 
 /**
  * @author zhangyunlin
@@ -27,20 +32,39 @@ public class OtpService {
 
     private final OtpTokenRepository otpRepo;
     private final UserRepository userRepo;
-    private final SmsSender smsSender;
+    private final SmsOutbox smsOutbox;
     private final long ttlMinutes;
-    private final int maxRequestsPerHour;
+    private final RateLimiter rateLimiter;
+    private final MeterRegistry meters;
 
     public OtpService(OtpTokenRepository otpRepo,
                       UserRepository userRepo,
-                      SmsSender smsSender,
+                      SmsOutbox smsOutbox,
                       @Value("${app.otp.ttl-minutes:10}") long ttlMinutes,
-                      @Value("${app.otp.max-req-per-hour:5}") int maxRequestsPerHour) {
+                      @Qualifier("otpRateLimiter") RateLimiter rateLimiter,
+                      MeterRegistry meters) {
         this.otpRepo = otpRepo;
         this.userRepo = userRepo;
-        this.smsSender = smsSender;
+        this.smsOutbox = smsOutbox;
         this.ttlMinutes = ttlMinutes;
-        this.maxRequestsPerHour = maxRequestsPerHour;
+        this.rateLimiter = rateLimiter;
+        this.meters = meters;
+    }
+
+    // Time an OTP operation, tagged with "ok" or the BusinessException code it failed with
+    private <T> T timed(String name, Supplier<T> operation) {
+        Timer.Sample sample = Timer.start(meters);
+        String outcome = "error";
+        try {
+            T result = operation.get();
+            outcome = "ok";
+            return result;
+        } catch (BusinessException e) {
+            outcome = e.getCode();
+            throw e;
+        } finally {
+            sample.stop(meters.timer(name, "outcome", outcome));
+        }
     }
 
     // Simple SHA-256 hash function for OTP codes
@@ -68,6 +92,10 @@ public class OtpService {
      */
     @Transactional
     public String requestPasswordReset(String identifier) {
+        return timed("banking.otp.request", () -> issuePasswordReset(identifier));
+    }
+
+    private String issuePasswordReset(String identifier) {
         User user = userRepo.findByIdentifier(identifier)
                 .orElseThrow(() -> new BusinessException("USER_NOT_FOUND", "User not found"));
 
@@ -76,10 +104,8 @@ public class OtpService {
             throw new BusinessException("NO_PHONE", "User has no phone number on file");
         }
 
-        // Simple rate limit per destination per hour
-        long recent = otpRepo.countByDestinationAndPurposeAndCreatedAtAfter(
-                phone, "PASSWORD_RESET", Instant.now().minus(1, ChronoUnit.HOURS));
-        if (recent >= maxRequestsPerHour) {
+        // Rate limit per destination per hour, see app.otp.rate-limiter
+        if (!rateLimiter.tryAcquire("PASSWORD_RESET", phone)) {
             throw new BusinessException("RATE_LIMIT", "Too many OTP requests, please try later");
         }
 
@@ -93,8 +119,8 @@ public class OtpService {
         token.setExpiresAt(Instant.now().plus(ttlMinutes, ChronoUnit.MINUTES));
         otpRepo.save(token);
 
-        // Send SMS (mock)
-        smsSender.send(phone, "Your reset code is: " + code + " (valid " + ttlMinutes + " minutes)");
+        // Queue the SMS; it goes out after commit, so a slow gateway does not hold this transaction
+        smsOutbox.enqueue(phone, "Your reset code is: " + code + " (valid " + ttlMinutes + " minutes)", token.getExpiresAt());
 
         // Return masked phone for UX
         return mask(phone);
@@ -102,6 +128,13 @@ public class OtpService {
 
     @Transactional
     public void confirmPasswordReset(String identifier, String code, String newPassword, PasswordService passwordService) {
+        timed("banking.otp.confirm", () -> {
+            confirm(identifier, code, newPassword, passwordService);
+            return null;
+        });
+    }
+
+    private void confirm(String identifier, String code, String newPassword, PasswordService passwordService) {
         User user = userRepo.findByIdentifier(identifier)
                 .orElseThrow(() -> new BusinessException("USER_NOT_FOUND", "User not found"));
 
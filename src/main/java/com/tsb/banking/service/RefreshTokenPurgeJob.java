@@ -0,0 +1,46 @@
+package com.tsb.banking.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * Deletes expired refresh tokens, a bounded batch per statement, off the refresh path. An expired token
+ * no longer verifies, so nothing needs its row any more.
+ */
+@Component
+public class RefreshTokenPurgeJob {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenPurgeJob.class);
+
+    private final JdbcTemplate jdbc;
+    private final int batchSize;
+
+    public RefreshTokenPurgeJob(JdbcTemplate jdbc,
+                                @Value("${app.security.refresh-tokens.purge-batch-size:1000}") int batchSize) {
+        this.jdbc = jdbc;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${app.security.refresh-tokens.purge-interval:PT1H}",
+            fixedDelayString = "${app.security.refresh-tokens.purge-interval:PT1H}")
+    public void purge() {
+        Timestamp cutoff = Timestamp.from(Instant.now());
+        long total = 0;
+        int deleted;
+        do {
+            deleted = jdbc.update("delete from refresh_tokens where id in "
+                    + "(select id from refresh_tokens where expires_at < ? order by id limit ?)", cutoff, batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+        if (total > 0) {
+            log.info("Purged {} refresh tokens expired before {}", total, cutoff.toInstant());
+        }
+    }
+}
@@ -4,28 +4,46 @@ import com.tsb.banking.model.RefreshToken;
 import com.tsb.banking.model.User;
 import com.tsb.banking.repo.RefreshTokenRepository;
 import com.tsb.banking.repo.UserRepository;
+import com.tsb.banking.security.JwtClaims;
 import com.tsb.banking.security.JwtService;
+import com.tsb.banking.security.RevokedRefreshTokens;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 
 @Service
 public class RefreshTokenService {
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
     private final RefreshTokenRepository repo;
     private final JwtService jwt;
     private final UserRepository users;
+    private final RevokedRefreshTokens revokedTokens;
+    private final TransactionTemplate tx;
 
-    public RefreshTokenService(RefreshTokenRepository repo, JwtService jwt, UserRepository users) {
+    public RefreshTokenService(RefreshTokenRepository repo, JwtService jwt, UserRepository users,
+                               RevokedRefreshTokens revokedTokens, TransactionTemplate tx) {
         this.repo = repo; this.jwt = jwt; this.users = users;
+        this.revokedTokens = revokedTokens; this.tx = tx;
     }
 
     public record Pair(String accessToken, String refreshToken, long expiresInSeconds) {}
 
-    // On login: issue access + refresh and persist the refresh by JTI
+    // pair == null means the presented token had already been used
+    private record Rotation(String familyId, Pair pair) {}
+
+    // On login: issue access + refresh and persist the refresh by JTI; the refresh token starts a new family
     @Transactional
     public Pair issueForUser(String username) {
         User u = users.findByUsernameIgnoreCase(username).orElseThrow();
+        return issue(u, null);
+    }
+
+    private Pair issue(User u, String familyId) {
         var userDetails = org.springframework.security.core.userdetails.User
                 .withUsername(u.getUsername())
                 .password(u.getPasswordHash())
@@ -33,40 +51,61 @@ public class RefreshTokenService {
                 .build();
 
         String refresh = jwt.generateRefresh(userDetails);
+        JwtClaims claims = jwt.verify(refresh);
         RefreshToken row = new RefreshToken();
         row.setUser(u);
-        row.setJti(jwt.getJti(refresh));
-        row.setExpiresAt(jwt.getExpiry(refresh));
+        row.setJti(claims.jti());
+        row.setFamilyId(familyId != null ? familyId : claims.jti());
+        row.setExpiresAt(claims.expiresAt());
         repo.save(row);
 
         String access = jwt.generateAccess(userDetails);
         return new Pair(access, refresh, jwt.getAccessTtlMinutes() * 60);
     }
 
-    // On refresh: rotate refresh token
-    @Transactional
+    // On refresh: rotate refresh token. Presenting a token that was already rotated revokes its whole family,
+    // since either the client or whoever copied the token holds a live descendant of it.
     public Pair rotate(String refreshToken) {
-        if (!jwt.isRefreshToken(refreshToken)) {
+        JwtClaims claims = jwt.verify(refreshToken);
+        if (!claims.refresh()) {
             throw new IllegalArgumentException("Not a refresh token");
         }
-        String jti = jwt.getJti(refreshToken);
-        RefreshToken current = repo.findByJti(jti).orElseThrow(() ->
-                new IllegalStateException("Refresh token not recognized"));
-        if (current.isRevoked() || current.getExpiresAt().isBefore(Instant.now())) {
-            throw new IllegalStateException("Refresh token expired or revoked");
+        String jti = claims.jti();
+        String knownFamily = revokedTokens.familyOf(jti);
+        if (knownFamily != null) {
+            throw reused(knownFamily);
         }
-        current.setRevoked(true);
-        repo.save(current);
 
-        String username = jwt.getUsername(refreshToken);
+        Rotation rotation = tx.execute(status -> {
+            RefreshToken current = repo.findByJti(jti).orElseThrow(() ->
+                    new IllegalStateException("Refresh token not recognized"));
+            if (current.isRevoked()) {
+                return new Rotation(current.getFamilyId(), null);
+            }
+            if (current.getExpiresAt().isBefore(Instant.now())) {
+                throw new IllegalStateException("Refresh token expired or revoked");
+            }
+            Pair pair = issue(current.getUser(), current.getFamilyId());
+            if (repo.revokeIfActive(jti, jwt.getJti(pair.refreshToken())) == 0) {
+                // a concurrent refresh with the same token won
+                status.setRollbackOnly();
+                return new Rotation(current.getFamilyId(), null);
+            }
+            return new Rotation(current.getFamilyId(), pair);
+        });
 
-        // creates the replacement
-        Pair pair = issueForUser(username);
-        current.setReplacedByJti(jwt.getJti(pair.refreshToken()));
-        repo.save(current);
+        revokedTokens.revoked(jti, rotation.familyId());
+        if (rotation.pair() == null) {
+            throw reused(rotation.familyId());
+        }
+        return rotation.pair();
+    }
 
-        // cleanup
-        repo.deleteByExpiresAtBefore(Instant.now());
-        return pair;
+    private IllegalStateException reused(String familyId) {
+        if (revokedTokens.revokeFamily(familyId)) {
+            int revoked = repo.revokeFamily(familyId);
+            log.warn("Refresh token reuse detected, revoked {} tokens of family {}", revoked, familyId);
+        }
+        return new IllegalStateException("Refresh token expired or revoked");
     }
-}
\ No newline at end of file
+}
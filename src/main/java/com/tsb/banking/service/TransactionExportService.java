@@ -0,0 +1,208 @@
+package com.tsb.banking.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tsb.banking.api.dto.TransactionDto;
+import com.tsb.banking.archive.ArchiveView;
+import com.tsb.banking.archive.TransactionArchive;
+import com.tsb.banking.exception.BusinessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Streams the full transaction history of an account as NDJSON or CSV.
+ *
+ * Rows are read with a forward-only cursor (fetch size app.export.fetch-size) and written straight to
+ * the output stream one at a time, so memory use does not grow with the size of the history and no
+ * entities are loaded into the persistence context. Archived transactions come first, straight from the
+ * segment files, then the live rows from the archive watermark on.
+ */
+@Service
+public class TransactionExportService {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        public final String contentType;
+        public final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public static Format of(String value) {
+            try {
+                return Format.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException("UNSUPPORTED_FORMAT", "format must be ndjson or csv");
+            }
+        }
+    }
+
+    private static final String SQL =
+            "select id, type, amount, currency, reference, counterparty, created_at, fx_rate from transactions "
+                    + "where account_id = ? and created_at between ? and ? order by created_at, id";
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final TransactionArchive archive;
+    private final int fetchSize;
+
+    public TransactionExportService(JdbcTemplate jdbc,
+                                    ObjectMapper objectMapper,
+                                    TransactionArchive archive,
+                                    @Value("${app.export.fetch-size:500}") int fetchSize) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.archive = archive;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Write every transaction of the account in the range, oldest first.
+     * Runs in a read-only transaction, which PostgreSQL needs to honour the fetch size.
+     * @param from optional start time (inclusive), null means from the epoch
+     * @param to optional end time (inclusive), null means now
+     */
+    @Transactional(readOnly = true)
+    public void export(Long accountId, Instant from, Instant to, Format format, OutputStream out) throws IOException {
+        Instant f = (from == null) ? Instant.EPOCH : from;
+        Instant t = (to == null) ? Instant.now() : to;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        RowWriter rows = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+
+        ArchiveView archived = archive.current();
+        Instant liveFrom = f;
+        if (f.isBefore(archived.archivedBefore())) {
+            archived.oldestFirst(accountId, f, t, rows::write);
+            liveFrom = archived.archivedBefore();
+        }
+        Timestamp liveFromTs = Timestamp.from(liveFrom);
+        try {
+            jdbc.query(con -> {
+                PreparedStatement ps = con.prepareStatement(SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                ps.setLong(1, accountId);
+                ps.setTimestamp(2, liveFromTs);
+                ps.setTimestamp(3, Timestamp.from(t));
+                return ps;
+            }, rs -> {
+                try {
+                    rows.write(new TransactionDto(rs.getLong("id"), rs.getString("type"), rs.getBigDecimal("amount"),
+                            rs.getString("currency"), rs.getString("reference"), rs.getString("counterparty"),
+                            rs.getTimestamp("created_at").toInstant(), rs.getBigDecimal("fx_rate")));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // client went away
+            throw e.getCause();
+        }
+        rows.finish();
+        writer.flush();
+    }
+
+    private interface RowWriter {
+        void write(TransactionDto row) throws IOException;
+
+        default void finish() throws IOException {
+        }
+    }
+
+    private final class NdjsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private final JsonGenerator gen;
+
+        NdjsonRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            this.gen = objectMapper.getFactory().createGenerator(writer)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // lines are separated by '\n' below, not by Jackson's default root separator
+            this.gen.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(TransactionDto row) throws IOException {
+            gen.writeStartObject();
+            gen.writeNumberField("id", row.id());
+            gen.writeStringField("type", row.type());
+            gen.writeNumberField("amount", row.amount());
+            gen.writeStringField("currency", row.currency());
+            gen.writeStringField("reference", row.reference());
+            gen.writeStringField("counterparty", row.counterparty());
+            gen.writeStringField("createdAt", row.createdAt().toString());
+            gen.writeNumberField("fxRate", row.fxRate());
+            gen.writeEndObject();
+            gen.flush();
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            gen.close();
+        }
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write("id,type,amount,currency,reference,counterparty,createdAt,fxRate\n");
+        }
+
+        @Override
+        public void write(TransactionDto row) throws IOException {
+            writer.write(Long.toString(row.id()));
+            writer.write(',');
+            writer.write(row.type());
+            writer.write(',');
+            writer.write(row.amount().toPlainString());
+            writer.write(',');
+            writer.write(row.currency());
+            writer.write(',');
+            writeField(row.reference());
+            writer.write(',');
+            writeField(row.counterparty());
+            writer.write(',');
+            writer.write(row.createdAt().toString());
+            writer.write(',');
+            if (row.fxRate() != null) {
+                writer.write(row.fxRate().toPlainString());
+            }
+            writer.write('\n');
+        }
+
+        // RFC 4180 quoting
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+}
@@ -1,37 +1,160 @@
 package com.tsb.banking.service;
 
+import com.tsb.banking.archive.ArchiveView;
+import com.tsb.banking.archive.TransactionArchive;
 import com.tsb.banking.api.dto.TransactionDto;
+import com.tsb.banking.api.dto.TransactionSliceDto;
+import com.tsb.banking.exception.BusinessException;
+import com.tsb.banking.model.Money;
+import com.tsb.banking.model.Transaction;
 import com.tsb.banking.repo.TransactionRepository;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 
 @Service
 public class TransactionService {
 
+  // bounds the rows fetched, and pre-allocated, for one page
+  public static final int MAX_PAGE_SIZE = 200;
+
   private final TransactionRepository transactionRepository;
+  private final TransactionArchive archive;
 
-  public TransactionService(TransactionRepository transactionRepository) {
+  public TransactionService(TransactionRepository transactionRepository, TransactionArchive archive) {
     this.transactionRepository = transactionRepository;
+    this.archive = archive;
   }
 
   /**
-   * Get paginated transactions for an account within an optional time range
+   * Get paginated transactions for an account within an optional time range.
+   * Everything created before the archive watermark is older than every live row, so a page is the live
+   * rows first and is topped up from the archive.
    * @param accountId the account ID
    * @param from optional start time (inclusive), null means from the epoch
    * @param to optional end time (inclusive), null means now
    * @param page 0-based page index
-   * @param size page size
+   * @param size page size, 1 to MAX_PAGE_SIZE
    * @return
    */
+  @Transactional(readOnly = true)
   public Page<TransactionDto> transactionsForAccount(Long accountId, Instant from, Instant to, int page, int size) {
+    if (page < 0) {
+      throw new BusinessException("INVALID_PAGE", "page must not be negative");
+    }
+    requirePageSize(size);
+    Instant f = (from == null) ? Instant.EPOCH : from;
+    Instant t = (to == null) ? Instant.now() : to;
+    ArchiveView archived = archive.current();
+    Instant liveFrom = f.isBefore(archived.archivedBefore()) ? archived.archivedBefore() : f;
+    PageRequest pageable = PageRequest.of(page, size);
+    Page<TransactionDto> live = transactionRepository.findByAccountIdAndCreatedAtBetweenOrderByCreatedAtDesc(
+        accountId, liveFrom, t, pageable)
+      .map(TransactionService::toDto);
+    if (!f.isBefore(archived.archivedBefore())) {
+      return live;
+    }
+
+    List<TransactionDto> rows = new ArrayList<>(live.getContent());
+    if (rows.size() < size) {
+      long skip = Math.max(0, pageable.getOffset() - live.getTotalElements());
+      rows.addAll(archived.newestFirst(accountId, f, t, skip, size - rows.size()));
+    }
+    return new PageImpl<>(rows, pageable, live.getTotalElements() + archived.count(accountId, f, t));
+  }
+
+  /**
+   * Get transactions for an account, newest first, continuing after an opaque cursor.
+   * Every page costs the same index range scan, however deep; the total is only counted on request.
+   * @param accountId the account ID
+   * @param from optional start time (inclusive), null means from the epoch
+   * @param to optional end time (inclusive), null means now
+   * @param cursor nextCursor of the previous page, null for the first page
+   * @param size page size, 1 to MAX_PAGE_SIZE
+   * @param includeTotal also count all transactions in the range
+   * @return
+   */
+  @Transactional(readOnly = true)
+  public TransactionSliceDto transactionsAfterCursor(Long accountId, Instant from, Instant to, String cursor,
+                                                     int size, boolean includeTotal) {
+    requirePageSize(size);
     Instant f = (from == null) ? Instant.EPOCH : from;
     Instant t = (to == null) ? Instant.now() : to;
-    return transactionRepository.findByAccountIdAndCreatedAtBetweenOrderByCreatedAtDesc(
-        accountId, f, t, PageRequest.of(page, size))
-      .map(tx -> new TransactionDto(tx.getId(), tx.getType(), tx.getAmount(), tx.getCurrency(),
-                            tx.getReference(), tx.getCounterparty(), tx.getCreatedAt()));
+
+    ArchiveView archived = archive.current();
+    Instant liveFrom = f.isBefore(archived.archivedBefore()) ? archived.archivedBefore() : f;
+    Cursor c = (cursor == null || cursor.isBlank()) ? null : Cursor.decode(cursor);
+
+    // fetch one extra row to learn whether there is a next page
+    List<TransactionDto> rows = new ArrayList<>(size + 1);
+    if (c == null) {
+      transactionRepository.findFirstKeysetPage(accountId, liveFrom, t, Limit.of(size + 1))
+          .forEach(tx -> rows.add(toDto(tx)));
+    } else if (!c.createdAt().isBefore(archived.archivedBefore())) {
+      transactionRepository.findKeysetPageAfter(accountId, liveFrom, t, c.createdAt(), c.id(), Limit.of(size + 1))
+          .forEach(tx -> rows.add(toDto(tx)));
+    }
+    // the live rows ran out: continue in the archive, which is all older
+    if (rows.size() <= size && f.isBefore(archived.archivedBefore())) {
+      int limit = size + 1 - rows.size();
+      rows.addAll(c == null || !c.createdAt().isBefore(archived.archivedBefore())
+          ? archived.newestFirst(accountId, f, t, 0, limit)
+          : archived.newestBefore(accountId, f, t, c.createdAt(), c.id(), limit));
+    }
+
+    String next = null;
+    List<TransactionDto> pageRows = rows;
+    if (rows.size() > size) {
+      pageRows = rows.subList(0, size);
+      TransactionDto last = pageRows.get(size - 1);
+      next = new Cursor(last.createdAt(), last.id()).encode();
+    }
+    Long total = null;
+    if (includeTotal) {
+      total = transactionRepository.countByAccountIdAndCreatedAtBetween(accountId, liveFrom, t);
+      if (f.isBefore(archived.archivedBefore())) {
+        total += archived.count(accountId, f, t);
+      }
+    }
+    return new TransactionSliceDto(pageRows, size, next, total);
+  }
+
+  private static TransactionDto toDto(Transaction tx) {
+    return new TransactionDto(tx.getId(), tx.getType(), Money.toBigDecimal(tx.amountMinorUnits()), tx.getCurrency(),
+        tx.getReference(), tx.getCounterparty(), tx.getCreatedAt(), tx.getFxRate());
+  }
+
+  private static void requirePageSize(int size) {
+    if (size < 1 || size > MAX_PAGE_SIZE) {
+      throw new BusinessException("INVALID_PAGE_SIZE", "size must be between 1 and " + MAX_PAGE_SIZE);
+    }
+  }
+
+  // Position of the last row of a page: (created_at, id), base64url encoded for clients
+  private record Cursor(Instant createdAt, long id) {
+
+    String encode() {
+      String raw = createdAt.getEpochSecond() + ":" + createdAt.getNano() + ":" + id;
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Cursor decode(String cursor) {
+      try {
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+        return new Cursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])),
+            Long.parseLong(parts[2]));
+      } catch (RuntimeException e) {
+        throw new BusinessException("INVALID_CURSOR", "cursor is not valid");
+      }
+    }
   }
 }
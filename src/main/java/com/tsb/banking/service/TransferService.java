@@ -1,21 +1,39 @@
 package com.tsb.banking.service;
 
+import com.tsb.banking.api.dto.BatchTransferItemDto;
 import com.tsb.banking.api.dto.TransferRequestDto;
 import com.tsb.banking.api.dto.TransferResponseDto;
+import com.tsb.banking.events.LedgerEventLog;
 import com.tsb.banking.exception.BusinessException;
 import com.tsb.banking.exception.NotFoundException;
+import com.tsb.banking.journal.PostingRecorder;
 import com.tsb.banking.model.Account;
-import com.tsb.banking.model.IdempotencyKey;
+import com.tsb.banking.model.Money;
 import com.tsb.banking.model.Transaction;
 import com.tsb.banking.repo.AccountRepository;
-import com.tsb.banking.repo.IdempotencyKeyRepository;
 import com.tsb.banking.repo.TransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 @Service
@@ -23,12 +41,56 @@ public class TransferService {
 
     private final AccountRepository accountRepo;
     private final TransactionRepository txnRepo;
-    private final IdempotencyKeyRepository idemRepo;
+    private final IdempotencyStore idempotencyStore;
+    private final TransactionTemplate tx;
+    private final MeterRegistry meters;
+    // banking.transfer.phase{phase=...}: time spent in each step of a single transfer
+    private final Timer idempotencyTimer;
+    private final Timer lockTimer;
+    private final Timer validationTimer;
+    private final Timer persistTimer;
+    private final Counter retries;
+    private final ConcurrencyStrategy concurrency;
+    private final HotAccountBuckets buckets;
+    private final LedgerEventLog ledgerEvents;
+    private final AccountVersions versions;
+    private final PostingRecorder postings;
+    private final FxRates fxRates;
+    private final int maxAttempts;
+    private final long backoffMillis;
 
-    public TransferService(AccountRepository accountRepo, TransactionRepository txnRepo, IdempotencyKeyRepository idemRepo) {
+    public TransferService(AccountRepository accountRepo, TransactionRepository txnRepo, IdempotencyStore idempotencyStore,
+                           PlatformTransactionManager txManager, MeterRegistry meters,
+                           HotAccountBuckets buckets, LedgerEventLog ledgerEvents, AccountVersions versions,
+                           ObjectProvider<PostingRecorder> postings, FxRates fxRates,
+                           @Value("${app.transfer.concurrency:pessimistic}") ConcurrencyStrategy concurrency,
+                           @Value("${app.transfer.optimistic.max-attempts:5}") int maxAttempts,
+                           @Value("${app.transfer.optimistic.backoff-millis:5}") long backoffMillis) {
         this.accountRepo = accountRepo;
         this.txnRepo = txnRepo;
-        this.idemRepo = idemRepo;
+        this.idempotencyStore = idempotencyStore;
+        this.tx = new TransactionTemplate(txManager);
+        this.meters = meters;
+        this.idempotencyTimer = phaseTimer(meters, "idempotency");
+        this.lockTimer = phaseTimer(meters, "lock");
+        this.validationTimer = phaseTimer(meters, "validation");
+        this.persistTimer = phaseTimer(meters, "persist");
+        this.retries = meters.counter("banking.transfer.retries");
+        this.concurrency = concurrency;
+        this.buckets = buckets;
+        this.ledgerEvents = ledgerEvents;
+        this.versions = versions;
+        this.postings = postings.getIfAvailable();
+        this.fxRates = fxRates;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+    }
+
+    private static Timer phaseTimer(MeterRegistry meters, String phase) {
+        return Timer.builder("banking.transfer.phase")
+                .description("Time spent in one phase of a single transfer")
+                .tag("phase", phase)
+                .register(meters);
     }
 
     private static String sha256(String s) {
@@ -40,99 +102,440 @@ public class TransferService {
         }
     }
 
-    @Transactional
+    // Hash of the transfer payload, stored with an idempotency key to detect key reuse
+    public static String payloadHash(TransferRequestDto request) {
+        return sha256(request.fromAccountId()+":"+request.toAccountId()+":"+request.amount()+":"+request.currency()+":"+String.valueOf(request.memo()));
+    }
+
+    /**
+     * The request amount in minor units, converted once so the rest of a transfer compares and adds longs.
+     */
+    public static Money amount(TransferRequestDto request) {
+        if (request.amount().scale() > 2) {
+            throw new BusinessException("AMOUNT_PRECISION", "amount must have at most 2 decimal places");
+        }
+        try {
+            return Money.of(request.amount(), request.currency());
+        } catch (ArithmeticException e) {
+            throw new BusinessException("AMOUNT_TOO_LARGE", "amount is too large");
+        }
+    }
+
+    /**
+     * Replays of recently used idempotency keys are answered from memory, before any transaction is
+     * opened; everything else runs in one database transaction.
+     */
     public TransferResponseDto transfer(TransferRequestDto request) {
+        Timer.Sample sample = Timer.start(meters);
+        String outcome = "error";
+        try {
+            TransferResponseDto response = doTransfer(request);
+            outcome = "ok";
+            return response;
+        } catch (BusinessException e) {
+            outcome = e.getCode();
+            throw e;
+        } finally {
+            sample.stop(meters.timer("banking.transfer", "outcome", outcome));
+        }
+    }
+
+    private TransferResponseDto doTransfer(TransferRequestDto request) {
 
         // Check accounts
         if (request.fromAccountId().equals(request.toAccountId())) {
             throw new BusinessException("TRANSFER_SAME_ACCOUNT", "fromAccount and toAccount must be different");
         }
 
-        // Check transfer amount precision
-        if (request.amount().scale() > 2) {
-            throw new BusinessException("AMOUNT_PRECISION", "amount must have at most 2 decimal places");
-        }
+        // Check transfer amount precision and range
+        Money amount = amount(request);
 
         // Idempotency (scope per customer)
         String scope = "customer:" + request.customerId();
-        if (request.idempotencyKey() != null && !request.idempotencyKey().isBlank()) {
-            String payloadHash = sha256(request.fromAccountId()+":"+request.toAccountId()+":"+request.amount()+":"+request.currency()+":"+String.valueOf(request.memo()));
+        String key = (request.idempotencyKey() == null || request.idempotencyKey().isBlank()) ? null : request.idempotencyKey();
+        String payloadHash = key == null ? null : payloadHash(request);
+        if (key != null) {
+            var cached = idempotencyTimer.record(() -> idempotencyStore.cached(scope, key));
+            if (cached.isPresent()) {
+                cached.get().requireSamePayload(payloadHash);
+                return cached.get().response();
+            }
+        }
+
+        // only OPTIMISTIC produces version conflicts; the whole transaction is retried
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return tx.execute(status -> post(request, amount, scope, key, payloadHash));
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw new BusinessException("CONCURRENT_UPDATE", "Account was updated concurrently, please retry");
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    // Full jitter: sleep a random time up to backoff * 2^(attempt-1)
+    private void backoff(int attempt) {
+        long bound = backoffMillis << Math.min(attempt - 1, 10);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("CONCURRENT_UPDATE", "Account was updated concurrently, please retry");
+        }
+    }
+
+    private TransferResponseDto post(TransferRequestDto request, Money amount, String scope, String key, String payloadHash) {
 
-            // Check if idem key exists
-            var existing = idemRepo.findByScopeAndKey(scope, request.idempotencyKey());
+        // Check if idem key exists
+        if (key != null) {
+            var existing = idempotencyTimer.record(() -> idempotencyStore.find(scope, key));
             if (existing.isPresent()) {
                 var idem = existing.get();
-                if (!idem.getPayloadHash().equals(payloadHash)) {
-                    throw new BusinessException("IDEMPOTENCY_Exception", "Idempotency key has been used with different payload");
+                idem.requireSamePayload(payloadHash);
+                if (idem.response() != null) {
+                    return idem.response();
                 }
-                // return current balances + saved txn ids
+                // key stored without a response: return current balances + saved txn ids
                 var from = accountRepo.findById(request.fromAccountId()).orElseThrow(() -> new NotFoundException("Account "+request.fromAccountId()+" not found"));
                 var to = accountRepo.findById(request.toAccountId()).orElseThrow(() -> new NotFoundException("Account "+request.toAccountId()+" not found"));
-                return new TransferResponseDto(idem.getDebitTxnId(), idem.getCreditTxnId(), from.getBalance(), to.getBalance());
+                return new TransferResponseDto(idem.debitTxnId(), idem.creditTxnId(),
+                        Money.toBigDecimal(from.balanceMinorUnits()), Money.toBigDecimal(to.balanceMinorUnits()));
             }
         }
 
+        TransferResponseDto response = switch (concurrency) {
+            case PESSIMISTIC -> postLocked(request, amount);
+            case OPTIMISTIC -> postVersioned(request, amount);
+            case CONDITIONAL -> postConditional(request, amount);
+        };
+
+        // Save idempotency record (with the response) if provided
+        if (key != null) {
+            idempotencyTimer.record(() -> idempotencyStore.save(scope, key, payloadHash, response));
+        }
+
+        return response;
+    }
+
+    // PESSIMISTIC: both rows locked for the rest of the transaction
+    private TransferResponseDto postLocked(TransferRequestDto request, Money amount) {
+
         // Lock accounts in id order to avoid deadlock
         Long firstId = request.fromAccountId() < request.toAccountId() ? request.fromAccountId() : request.toAccountId();
         Long secondId = request.fromAccountId() < request.toAccountId() ? request.toAccountId() : request.fromAccountId();
+        boolean toHot = buckets.isHot(request.toAccountId());
+
+        Timer.Sample phase = Timer.start(meters);
+        Account first;
+        Account second;
+        if (toHot) {
+            // the credit goes to a bucket row, only the debited account needs its row lock
+            Account from = accountRepo.findByIdForUpdate(request.fromAccountId()).orElseThrow(() -> new NotFoundException("Account "+request.fromAccountId()+" not found"));
+            Account to = accountRepo.findById(request.toAccountId()).orElseThrow(() -> new NotFoundException("Account "+request.toAccountId()+" not found"));
+            first = from.getId().equals(firstId) ? from : to;
+            second = from.getId().equals(firstId) ? to : from;
+        } else {
+            first = accountRepo.findByIdForUpdate(firstId).orElseThrow(() -> new NotFoundException("Account "+firstId+" not found"));
+            second = accountRepo.findByIdForUpdate(secondId).orElseThrow(() -> new NotFoundException("Account "+secondId+" not found"));
+        }
+        phase.stop(lockTimer);
+
+        return apply(request, amount, first, second, toHot);
+    }
+
+    // OPTIMISTIC: plain reads; the version check on flush fails if either account changed meanwhile
+    private TransferResponseDto postVersioned(TransferRequestDto request, Money amount) {
+        Long firstId = request.fromAccountId() < request.toAccountId() ? request.fromAccountId() : request.toAccountId();
+        Long secondId = request.fromAccountId() < request.toAccountId() ? request.toAccountId() : request.fromAccountId();
 
-        Account first = accountRepo.findByIdForUpdate(firstId).orElseThrow(() -> new NotFoundException("Account "+firstId+" not found"));
-        Account second = accountRepo.findByIdForUpdate(secondId).orElseThrow(() -> new NotFoundException("Account "+secondId+" not found"));
+        // read in id order so the version-checked updates are also flushed in id order
+        Timer.Sample phase = Timer.start(meters);
+        Account first = accountRepo.findById(firstId).orElseThrow(() -> new NotFoundException("Account "+firstId+" not found"));
+        Account second = accountRepo.findById(secondId).orElseThrow(() -> new NotFoundException("Account "+secondId+" not found"));
+        phase.stop(lockTimer);
 
+        TransferResponseDto response = apply(request, amount, first, second, buckets.isHot(request.toAccountId()));
+        accountRepo.flush();
+        return response;
+    }
+
+    private TransferResponseDto apply(TransferRequestDto request, Money amount, Account first, Account second,
+                                      boolean toHot) {
         Account from = request.fromAccountId().equals(first.getId()) ? first : second;
         Account to   = request.toAccountId().equals(second.getId()) ? second : first;
 
-        // Validate ownership and currency
-        if (!from.getCustomer().getId().equals(request.customerId()) || !to.getCustomer().getId().equals(request.customerId())) {
-            throw new BusinessException("OWNERSHIP", "Both accounts must belong to the customer");
-        }
-        if (!from.getCurrency().equals(request.currency()) || !to.getCurrency().equals(request.currency())) {
-            throw new BusinessException("CURRENCY_MISMATCH", "Currency must match both accounts");
+        Timer.Sample phase = Timer.start(meters);
+        validate(request, from, to);
+        FxRates.Rate rate = rate(from, to);
+        Money credited = credited(amount, rate);
+
+        // A hot account's credits wait in its buckets; move them into the (locked) account row first
+        if (buckets.hasBuckets(from)) {
+            from.credit(buckets.drain(from));
         }
 
         // Sufficient funds
-        if (from.getBalance().compareTo(request.amount()) < 0) {
+        if (!from.covers(amount)) {
             throw new BusinessException("INSUFFICIENT_FUNDS", "Insufficient funds");
         }
+        phase.stop(validationTimer);
+        phase = Timer.start(meters);
 
         // Apply transfer
-        from.setBalance(from.getBalance().subtract(request.amount()));
-        to.setBalance(to.getBalance().add(request.amount()));
-
-        // Persist updated balances
+        from.debit(amount);
         accountRepo.save(from);
-        accountRepo.save(to);
+        if (toHot) {
+            buckets.credit(to.getId(), credited);
+        } else {
+            to.credit(credited);
+            accountRepo.save(to);
+        }
 
         // Create double-entry transactions
-        Transaction debit = new Transaction();
-        debit.setAccount(from);
-        debit.setType("DEBIT");
-        debit.setAmount(request.amount());
-        debit.setCurrency(request.currency());
-        debit.setReference(request.memo() == null ? "Internal transfer" : request.memo());
-        debit.setCounterparty(to.getNumber());
-        txnRepo.save(debit);
-
-        Transaction credit = new Transaction();
-        credit.setAccount(to);
-        credit.setType("CREDIT");
-        credit.setAmount(request.amount());
-        credit.setCurrency(request.currency());
-        credit.setReference(request.memo() == null ? "Internal transfer" : request.memo());
-        credit.setCounterparty(from.getNumber());
-        txnRepo.save(credit);
-
-        // Save idempotency record if provided
-        if (request.idempotencyKey() != null && !request.idempotencyKey().isBlank()) {
-            IdempotencyKey idem = new IdempotencyKey();
-            idem.setScope(scope);
-            idem.setKey(request.idempotencyKey());
-            idem.setPayloadHash(sha256(request.fromAccountId()+":"+request.toAccountId()+":"+request.amount()+":"+request.currency()+":"+String.valueOf(request.memo())));
-            idem.setDebitTxnId(debit.getId());
-            idem.setCreditTxnId(credit.getId());
-            idemRepo.save(idem);
-        }
-
-        return new TransferResponseDto(debit.getId(), credit.getId(), from.getBalance(), to.getBalance());
+        Transaction debit = txnRepo.save(leg(from, to, "DEBIT", amount, rate, request.memo()));
+        Transaction credit = txnRepo.save(leg(to, from, "CREDIT", credited, rate, request.memo()));
+        ledgerEvents.append(debit, credit);
+        journal(debit, credit);
+        versions.changedAfterCommit(request.customerId(), from.getId(), to.getId(), debit.getId());
+        phase.stop(persistTimer);
+
+        return new TransferResponseDto(debit.getId(), credit.getId(), Money.toBigDecimal(from.balanceMinorUnits()),
+                toHot ? buckets.balanceOf(to.getId()) : buckets.balanceOf(to));
+    }
+
+    // CONDITIONAL: no read lock; the debit only applies if the balance still covers the amount
+    private TransferResponseDto postConditional(TransferRequestDto request, Money amount) {
+        Timer.Sample phase = Timer.start(meters);
+        Account from = accountRepo.findById(request.fromAccountId()).orElseThrow(() -> new NotFoundException("Account "+request.fromAccountId()+" not found"));
+        Account to = accountRepo.findById(request.toAccountId()).orElseThrow(() -> new NotFoundException("Account "+request.toAccountId()+" not found"));
+        phase.stop(lockTimer);
+
+        // ownership and currency never change, so reading them without a lock is safe
+        phase = Timer.start(meters);
+        validate(request, from, to);
+        FxRates.Rate rate = rate(from, to);
+        Money credited = credited(amount, rate);
+        phase.stop(validationTimer);
+        phase = Timer.start(meters);
+
+        // Row locks are taken by the updates themselves, in id order to avoid deadlock;
+        // a failed debit after the credit rolls the credit back with the transaction.
+        // Bucket credits lock no account row and can go last.
+        boolean toHot = buckets.isHot(to.getId());
+        boolean debitFirst = toHot || from.getId() < to.getId();
+        if (!debitFirst) {
+            accountRepo.credit(to.getId(), credited.toBigDecimal());
+        }
+        if (buckets.hasBuckets(from)) {
+            accountRepo.credit(from.getId(), buckets.drain(from).toBigDecimal());
+        }
+        if (accountRepo.debitIfSufficient(from.getId(), amount.toBigDecimal()) == 0) {
+            throw new BusinessException("INSUFFICIENT_FUNDS", "Insufficient funds");
+        }
+        if (toHot) {
+            buckets.credit(to.getId(), credited);
+        } else if (debitFirst) {
+            accountRepo.credit(to.getId(), credited.toBigDecimal());
+        }
+
+        Transaction debit = txnRepo.save(leg(from, to, "DEBIT", amount, rate, request.memo()));
+        Transaction credit = txnRepo.save(leg(to, from, "CREDIT", credited, rate, request.memo()));
+        ledgerEvents.append(debit, credit);
+        journal(debit, credit);
+        versions.changedAfterCommit(request.customerId(), from.getId(), to.getId(), debit.getId());
+        phase.stop(persistTimer);
+
+        // the updated rows are still locked by this transaction, so these are the balances right after the transfer
+        return new TransferResponseDto(debit.getId(), credit.getId(),
+                buckets.balanceOf(from.getId()), buckets.balanceOf(to.getId()));
+    }
+
+    // Validate ownership and currency; the amount is in the debited account's currency
+    private static void validate(TransferRequestDto request, Account from, Account to) {
+        if (!from.getCustomer().getId().equals(request.customerId()) || !to.getCustomer().getId().equals(request.customerId())) {
+            throw new BusinessException("OWNERSHIP", "Both accounts must belong to the customer");
+        }
+        if (!from.getCurrency().equals(request.currency())) {
+            throw new BusinessException("CURRENCY_MISMATCH", "Currency must match the debited account");
+        }
+    }
+
+    // Rate for the credited leg from the in-memory snapshot, null when both accounts hold the same currency
+    private FxRates.Rate rate(Account from, Account to) {
+        return from.getCurrency().equals(to.getCurrency()) ? null : fxRates.rate(from.getCurrency(), to.getCurrency());
+    }
+
+    private static Money credited(Money amount, FxRates.Rate rate) {
+        if (rate == null) {
+            return amount;
+        }
+        Money credited;
+        try {
+            credited = rate.convert(amount);
+        } catch (ArithmeticException e) {
+            throw new BusinessException("AMOUNT_TOO_LARGE", "amount is too large");
+        }
+        if (credited.minorUnits() == 0) {
+            throw new BusinessException("AMOUNT_TOO_SMALL", "amount converts to less than one minor unit of " + credited.currency());
+        }
+        return credited;
+    }
+
+    // One posted batch item, kept to answer a repeated idempotency key later in the same batch
+    private record Posted(String payloadHash, Transaction debit, Transaction credit,
+                          BigDecimal fromBalance, BigDecimal toBalance) {
+
+        TransferResponseDto response() {
+            return new TransferResponseDto(debit.getId(), credit.getId(), fromBalance, toBalance);
+        }
+    }
+
+    /**
+     * Apply many transfers in one database transaction.
+     * Every account involved is locked once, in ascending id order, and the transfers are applied in
+     * request order. Business errors are reported per item and do not affect the other items.
+     * @param requests transfers in the order they should be applied
+     * @return one result per request, in request order
+     */
+    @Transactional
+    public List<BatchTransferItemDto> transferBatch(List<TransferRequestDto> requests) {
+
+        // Lock every account once, in id order
+        SortedSet<Long> ids = new TreeSet<>();
+        for (TransferRequestDto r : requests) {
+            ids.add(r.fromAccountId());
+            ids.add(r.toAccountId());
+        }
+        Map<Long, Account> locked = new HashMap<>();
+        for (Account a : accountRepo.findAllByIdForUpdate(ids)) {
+            // rows are locked anyway: fold the buckets of hot accounts in so balances are complete
+            if (buckets.hasBuckets(a)) {
+                a.credit(buckets.drain(a));
+            }
+            locked.put(a.getId(), a);
+        }
+
+        Map<String, IdempotencyStore.Replay> storedKeys = storedIdempotencyKeys(requests);
+        Map<String, Posted> postedKeys = new HashMap<>();
+        List<BatchTransferItemDto> results = new ArrayList<>(requests.size());
+
+        for (int i = 0; i < requests.size(); i++) {
+            int index = i;
+            TransferRequestDto request = requests.get(i);
+            try {
+                String scope = "customer:" + request.customerId();
+                boolean keyed = request.idempotencyKey() != null && !request.idempotencyKey().isBlank();
+                String payloadHash = keyed ? payloadHash(request) : null;
+
+                if (keyed) {
+                    String slot = IdempotencyStore.slot(scope, request.idempotencyKey());
+                    IdempotencyStore.Replay stored = storedKeys.get(slot);
+                    Posted earlier = postedKeys.get(slot);
+                    if (earlier != null) {
+                        if (!earlier.payloadHash().equals(payloadHash)) {
+                            throw new BusinessException("IDEMPOTENCY_Exception", "Idempotency key has been used with different payload");
+                        }
+                        results.add(BatchTransferItemDto.ok(index, earlier.response()));
+                        continue;
+                    }
+                    if (stored != null) {
+                        stored.requireSamePayload(payloadHash);
+                        if (stored.response() != null) {
+                            results.add(BatchTransferItemDto.ok(index, stored.response()));
+                            continue;
+                        }
+                        // key stored without a response: return current balances + original txn ids
+                        TransferResponseDto replay = new TransferResponseDto(stored.debitTxnId(), stored.creditTxnId(),
+                                Money.toBigDecimal(lockedAccount(locked, request.fromAccountId()).balanceMinorUnits()),
+                                Money.toBigDecimal(lockedAccount(locked, request.toAccountId()).balanceMinorUnits()));
+                        results.add(BatchTransferItemDto.ok(index, replay));
+                        continue;
+                    }
+                }
+
+                if (request.fromAccountId().equals(request.toAccountId())) {
+                    throw new BusinessException("TRANSFER_SAME_ACCOUNT", "fromAccount and toAccount must be different");
+                }
+                Money amount = amount(request);
+                Account from = lockedAccount(locked, request.fromAccountId());
+                Account to = lockedAccount(locked, request.toAccountId());
+                if (!from.getCustomer().getId().equals(request.customerId()) || !to.getCustomer().getId().equals(request.customerId())) {
+                    throw new BusinessException("OWNERSHIP", "Both accounts must belong to the customer");
+                }
+                if (!from.getCurrency().equals(request.currency())) {
+                    throw new BusinessException("CURRENCY_MISMATCH", "Currency must match the debited account");
+                }
+                FxRates.Rate rate = rate(from, to);
+                Money credited = credited(amount, rate);
+                if (!from.covers(amount)) {
+                    throw new BusinessException("INSUFFICIENT_FUNDS", "Insufficient funds");
+                }
+
+                // Apply; ids come from the pooled sequences, so every row is written in JDBC batches on flush
+                from.debit(amount);
+                to.credit(credited);
+                Transaction debit = txnRepo.save(leg(from, to, "DEBIT", amount, rate, request.memo()));
+                Transaction credit = txnRepo.save(leg(to, from, "CREDIT", credited, rate, request.memo()));
+                ledgerEvents.append(debit, credit);
+                journal(debit, credit);
+                versions.changedAfterCommit(request.customerId(), from.getId(), to.getId(), debit.getId());
+                Posted posted = new Posted(payloadHash, debit, credit, Money.toBigDecimal(from.balanceMinorUnits()),
+                        Money.toBigDecimal(to.balanceMinorUnits()));
+
+                if (keyed) {
+                    postedKeys.put(IdempotencyStore.slot(scope, request.idempotencyKey()), posted);
+                    idempotencyStore.save(scope, request.idempotencyKey(), payloadHash, posted.response());
+                }
+                results.add(BatchTransferItemDto.ok(index, posted.response()));
+            } catch (BusinessException e) {
+                results.add(BatchTransferItemDto.failed(index, e.getCode(), e.getMessage()));
+            } catch (NotFoundException e) {
+                results.add(BatchTransferItemDto.failed(index, "NOT_FOUND", e.getMessage()));
+            }
+        }
+
+        return results;
+    }
+
+    private Map<String, IdempotencyStore.Replay> storedIdempotencyKeys(List<TransferRequestDto> requests) {
+        List<String> scopes = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (TransferRequestDto r : requests) {
+            if (r.idempotencyKey() != null && !r.idempotencyKey().isBlank()) {
+                scopes.add("customer:" + r.customerId());
+                keys.add(r.idempotencyKey());
+            }
+        }
+        return keys.isEmpty() ? Map.of() : idempotencyStore.findAll(scopes, keys);
+    }
+
+    private static Account lockedAccount(Map<Long, Account> locked, Long id) {
+        Account a = locked.get(id);
+        if (a == null) {
+            throw new NotFoundException("Account " + id + " not found");
+        }
+        return a;
+    }
+
+    // app.journal.enabled: appended just before the transaction commits
+    private void journal(Transaction debit, Transaction credit) {
+        if (postings != null) {
+            postings.record(debit, credit);
+        }
+    }
+
+    private static Transaction leg(Account account, Account counterparty, String type, Money amount,
+                                   FxRates.Rate rate, String memo) {
+        Transaction t = new Transaction();
+        t.setAccount(account);
+        t.setType(type);
+        t.setAmount(amount);
+        t.setFxRate(rate == null ? null : rate.rate());
+        t.setReference(memo == null ? "Internal transfer" : memo);
+        t.setCounterparty(counterparty.getNumber());
+        return t;
     }
 }
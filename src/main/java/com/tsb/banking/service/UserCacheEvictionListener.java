@@ -0,0 +1,40 @@
+package com.tsb.banking.service;
+
+import com.tsb.banking.model.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA listener on {@link User}: evicts the cached UserDetails whenever a user row is updated or
+ * deleted, e.g. by {@link PasswordService#updatePassword} or a role change.
+ * The entry is evicted on flush and again after commit, so a concurrent lookup cannot re-cache
+ * the pre-commit row.
+ */
+@Component
+public class UserCacheEvictionListener {
+
+    private final DbUserDetailsService userDetailsService;
+
+    public UserCacheEvictionListener(@Lazy DbUserDetailsService userDetailsService) {
+        this.userDetailsService = userDetailsService;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void userChanged(User user) {
+        String username = user.getUsername();
+        userDetailsService.evict(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    userDetailsService.evict(username);
+                }
+            });
+        }
+    }
+}
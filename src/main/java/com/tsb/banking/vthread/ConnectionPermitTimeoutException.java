@@ -0,0 +1,16 @@
+package com.tsb.banking.vthread;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * No connection permit became available within app.virtual-threads.permit-timeout.
+ *
+ * An SQLException, so it reaches the caller through the JDBC, JPA and transaction layers like any other
+ * connection failure; RestExceptionHandler finds it in the cause chain and answers 503.
+ */
+public class ConnectionPermitTimeoutException extends SQLTransientConnectionException {
+
+    public ConnectionPermitTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,134 @@
+package com.tsb.banking.vthread;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits how many threads can hold a JDBC connection when requests run on virtual threads.
+ *
+ * Tomcat no longer caps concurrency at its thread pool size, so thousands of requests can reach the
+ * connection pool at once. A fair semaphore per Hikari pool, sized to that pool's maximum-pool-size, queues them
+ * in arrival order, and a request that cannot get a permit within app.virtual-threads.permit-timeout fails
+ * fast (503) instead of waiting out the pool's 30 second connection timeout. With a read replica the primary
+ * and replica pools each have their own permits.
+ */
+@Component
+@ConditionalOnProperty(prefix = "spring.threads.virtual", name = "enabled", havingValue = "true")
+public class ConnectionPermits implements BeanPostProcessor, MeterBinder {
+
+    private final long timeoutNanos;
+    private final List<Limited> pools = new CopyOnWriteArrayList<>();
+    private MeterRegistry registry;
+
+    public ConnectionPermits(@Value("${app.virtual-threads.permit-timeout}") Duration timeout) {
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        // wrappers such as the read/write routing proxy reach the pools through already limited beans;
+        // pool settings are bound before initialization, so the size is final here
+        if (bean instanceof HikariDataSource pool) {
+            Limited limited = new Limited(pool, pool.getPoolName() != null ? pool.getPoolName() : beanName);
+            pools.add(limited);
+            synchronized (this) {
+                if (registry != null) {
+                    limited.bindTo(registry);
+                }
+            }
+            return limited;
+        }
+        return bean;
+    }
+
+    @Override
+    public synchronized void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        for (Limited pool : pools) {
+            pool.bindTo(registry);
+        }
+    }
+
+    private class Limited extends DelegatingDataSource {
+
+        private final String pool;
+        private final Semaphore permits;
+        private volatile Counter rejected;
+
+        Limited(HikariDataSource target, String pool) {
+            super(target);
+            this.pool = pool;
+            this.permits = new Semaphore(target.getMaximumPoolSize(), true);
+        }
+
+        void bindTo(MeterRegistry registry) {
+            Gauge.builder("banking.db.permits.waiting", permits, Semaphore::getQueueLength).tag("pool", pool)
+                    .register(registry);
+            Gauge.builder("banking.db.permits.available", permits, Semaphore::availablePermits).tag("pool", pool)
+                    .register(registry);
+            rejected = Counter.builder("banking.db.permits.rejected").tag("pool", pool).register(registry);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            try {
+                if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    if (rejected != null) {
+                        rejected.increment();
+                    }
+                    throw new ConnectionPermitTimeoutException("No connection permit available for pool " + pool);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("Interrupted waiting for a connection permit", e);
+            }
+            try {
+                return releasingOnClose(obtainTargetDataSource().getConnection());
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        // the permit is held until the connection goes back to the pool
+        private Connection releasingOnClose(Connection connection) {
+            AtomicBoolean released = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            try {
+                                connection.close();
+                            } finally {
+                                permits.release();
+                            }
+                            return null;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
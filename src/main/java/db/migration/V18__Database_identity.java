@@ -0,0 +1,30 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * A random id for this database, written once when it is created. The posting journal records it in its segments
+ * and refuses to open against a database with another id (PostingJournal).
+ *
+ * Written in Java because generating a UUID in SQL is not portable (PostgreSQL has gen_random_uuid, H2
+ * random_uuid).
+ */
+public class V18__Database_identity extends BaseJavaMigration {
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement st = context.getConnection().createStatement()) {
+            st.execute("create table database_identity (id int not null primary key, database_id varchar(36) not null)");
+        }
+        try (PreparedStatement ps = context.getConnection()
+                .prepareStatement("insert into database_identity (id, database_id) values (1, ?)")) {
+            ps.setString(1, UUID.randomUUID().toString());
+            ps.executeUpdate();
+        }
+    }
+}
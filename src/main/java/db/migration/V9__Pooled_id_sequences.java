@@ -0,0 +1,43 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Replace the identity columns of the high-volume tables with pooled sequences so Hibernate can batch inserts.
+ *
+ * Written in Java because each sequence has to start above the ids already in its table, which plain SQL
+ * cannot express portably (PostgreSQL has setval, H2 does not). The id columns default to the sequence
+ * so SQL inserts without an id keep working.
+ */
+public class V9__Pooled_id_sequences extends BaseJavaMigration {
+
+    // must match allocationSize of the @SequenceGenerator on each entity
+    private static final int INCREMENT = 50;
+
+    private static final List<String> TABLES =
+            List.of("accounts", "transactions", "idempotency_keys", "otp_tokens", "refresh_tokens");
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement st = context.getConnection().createStatement()) {
+            for (String table : TABLES) {
+                long maxId;
+                try (ResultSet rs = st.executeQuery("select coalesce(max(id), 0) from " + table)) {
+                    rs.next();
+                    maxId = rs.getLong(1);
+                }
+                // Hibernate's pooled optimizer hands out the block of INCREMENT ids ending at each value it reads,
+                // so the first value is maxId + INCREMENT and the first id maxId + 1
+                st.execute("create sequence " + table + "_seq start with " + (maxId + INCREMENT)
+                        + " increment by " + INCREMENT);
+                st.execute("alter table " + table + " alter column id drop identity");
+                st.execute("alter table " + table + " alter column id set default nextval('" + table + "_seq')");
+            }
+        }
+    }
+}
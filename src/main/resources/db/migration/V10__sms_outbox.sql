@@ -0,0 +1,14 @@
+-- Outgoing SMS, written in the same transaction as the OTP that needs it and sent later by SmsOutbox.
+-- A row is deleted once the gateway accepts it, after its last attempt, or when it expires unsent.
+create table sms_outbox
+(
+    id              bigint generated by default as identity primary key,
+    destination     varchar(100) not null,
+    body            varchar(500) not null,
+    attempts        int          not null default 0,
+    next_attempt_at timestamp    not null,
+    expires_at      timestamp    not null,
+    created_at      timestamp    not null default current_timestamp
+);
+
+create index idx_sms_outbox_due on sms_outbox (next_attempt_at);
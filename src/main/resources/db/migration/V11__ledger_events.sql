@@ -0,0 +1,18 @@
+-- Outbox of TransferPosted events, written in the same transaction as the transfer's legs.
+-- seq is the event's offset in the change feed: null until LedgerEventRelay publishes the event,
+-- then assigned in id order. Published rows stay as the replayable log until app.ledger-events.retention.
+create sequence ledger_events_seq start with 50 increment by 50;
+
+create table ledger_events
+(
+    id              bigint         not null default nextval('ledger_events_seq') primary key,
+    seq             bigint,
+    debit_txn_id    bigint         not null,
+    credit_txn_id   bigint         not null,
+    from_account_id bigint         not null,
+    to_account_id   bigint         not null,
+    amount          numeric(19, 2) not null,
+    currency        varchar(3)     not null,
+    created_at      timestamp      not null,
+    constraint uk_ledger_events_seq unique (seq)
+);
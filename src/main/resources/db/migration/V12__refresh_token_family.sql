@@ -0,0 +1,6 @@
+-- Refresh tokens produced by rotation share the family of the login that started the chain,
+-- so reuse of a rotated token can revoke the whole chain in one statement
+alter table refresh_tokens add column family_id varchar(64);
+update refresh_tokens set family_id = jti;
+alter table refresh_tokens alter column family_id set not null;
+create index idx_refresh_family on refresh_tokens (family_id);
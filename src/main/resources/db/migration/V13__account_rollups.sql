@@ -0,0 +1,36 @@
+-- Debit/credit counts and totals per account, day and currency, maintained by AccountRollupJob from the
+-- ledger_events change feed. rollup_checkpoint holds the last applied offset.
+create table account_daily_rollups
+(
+    account_id   bigint         not null,
+    posted_on    date           not null,
+    currency     varchar(3)     not null,
+    debit_count  bigint         not null,
+    debit_total  numeric(19, 2) not null,
+    credit_count bigint         not null,
+    credit_total numeric(19, 2) not null,
+    constraint pk_account_daily_rollups primary key (account_id, posted_on, currency),
+    constraint fk_rollup_account foreign key (account_id) references accounts (id)
+);
+
+create table rollup_checkpoint
+(
+    id          int    not null primary key,
+    last_offset bigint not null
+);
+
+-- Existing history: everything except the legs of events that are not published yet, which the job
+-- applies once they get their offsets
+insert into account_daily_rollups (account_id, posted_on, currency, debit_count, debit_total, credit_count, credit_total)
+select account_id, cast(created_at as date), currency,
+       sum(case when type = 'DEBIT' then 1 else 0 end),
+       sum(case when type = 'DEBIT' then amount else 0 end),
+       sum(case when type = 'CREDIT' then 1 else 0 end),
+       sum(case when type = 'CREDIT' then amount else 0 end)
+from transactions t
+where not exists (select 1 from ledger_events e
+                  where e.seq is null and (e.debit_txn_id = t.id or e.credit_txn_id = t.id))
+group by account_id, cast(created_at as date), currency;
+
+insert into rollup_checkpoint (id, last_offset)
+select 1, coalesce(max(seq), 0) from ledger_events;
@@ -0,0 +1,19 @@
+-- Segment files written by TransactionArchiver. Every transaction created before archive_state.archived_before
+-- lives in exactly one segment; rows below it are deleted from transactions on the archiver's next run.
+create table archive_segments
+(
+    id             bigint generated by default as identity primary key,
+    file_name      varchar(255) not null unique,
+    min_created_at timestamp    not null,
+    max_created_at timestamp    not null,
+    row_count      bigint       not null,
+    created_at     timestamp    not null
+);
+
+create table archive_state
+(
+    id              int       not null primary key,
+    archived_before timestamp not null
+);
+
+insert into archive_state (id, archived_before) values (1, timestamp '1970-01-01 00:00:00');
@@ -0,0 +1,30 @@
+-- FX rates for cross-currency transfers: 1 base_currency buys `rate` quote_currency. The reverse direction is
+-- derived from the same row unless it has a row of its own. FxRates reloads the table every app.fx.refresh.
+create table fx_rates
+(
+    base_currency  varchar(3)     not null,
+    quote_currency varchar(3)     not null,
+    rate           numeric(19, 8) not null,
+    updated_at     timestamp      not null default current_timestamp,
+    constraint pk_fx_rates primary key (base_currency, quote_currency),
+    constraint ck_fx_rate_positive check (rate > 0)
+);
+
+insert into fx_rates (base_currency, quote_currency, rate) values
+ ('USD', 'NZD', 1.65000000),
+ ('USD', 'GBP', 0.79000000),
+ ('USD', 'EUR', 0.92000000),
+ ('GBP', 'EUR', 1.16500000),
+ ('GBP', 'NZD', 2.08900000),
+ ('EUR', 'NZD', 1.79300000);
+
+-- the rate applied to a cross-currency transfer, on both legs; null for same-currency transfers
+alter table transactions add column fx_rate numeric(19, 8);
+
+-- the credited leg of an event can differ from the debited one
+alter table ledger_events add column credit_amount numeric(19, 2);
+alter table ledger_events add column credit_currency varchar(3);
+alter table ledger_events add column fx_rate numeric(19, 8);
+update ledger_events set credit_amount = amount, credit_currency = currency;
+alter table ledger_events alter column credit_amount set not null;
+alter table ledger_events alter column credit_currency set not null;
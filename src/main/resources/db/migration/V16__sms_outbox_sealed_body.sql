@@ -0,0 +1,6 @@
+-- OTP codes must not be readable from the outbox or its backups: bodies are now stored AES-GCM sealed with
+-- app.sms.body-key (SmsOutbox). Pending plaintext rows are dropped; their OTPs expire within minutes and can be
+-- requested again.
+delete from sms_outbox;
+alter table sms_outbox drop column body;
+alter table sms_outbox add column sealed_body varchar(2048) not null;
@@ -0,0 +1,3 @@
+-- Credits to a hot account change only its bucket rows, so they carry a version of their own; with
+-- accounts.version it makes up the account's ETag (AccountVersions).
+alter table account_buckets add column version bigint not null default 0;
@@ -0,0 +1,8 @@
+-- Last ledger journal sequence written to accounts/transactions by the ledger engine
+create table ledger_checkpoint
+(
+    id       int    not null primary key,
+    last_seq bigint not null
+);
+
+insert into ledger_checkpoint (id, last_seq) values (1, 0);
@@ -0,0 +1,3 @@
+-- Keyset pagination orders by (created_at, id); id breaks ties between rows with the same timestamp
+drop index idx_txn_account_created;
+create index idx_txn_account_created on transactions (account_id, created_at, id);
@@ -0,0 +1,11 @@
+-- Account balance as of a point in time, written by BalanceSnapshotJob
+create table balance_snapshots
+(
+    id         bigint generated by default as identity primary key,
+    account_id bigint         not null,
+    as_of      timestamp      not null,
+    balance    numeric(19, 2) not null,
+    created_at timestamp      not null default current_timestamp,
+    constraint fk_snapshot_account foreign key (account_id) references accounts (id),
+    constraint uk_snapshot_account_as_of unique (account_id, as_of)
+);
@@ -0,0 +1,6 @@
+-- Response snapshot stored with the key so replays need no account reads; null for older rows
+alter table idempotency_keys add column from_balance numeric(19, 2);
+alter table idempotency_keys add column to_balance numeric(19, 2);
+
+-- Used by the TTL purge
+create index idx_idem_created on idempotency_keys (created_at);
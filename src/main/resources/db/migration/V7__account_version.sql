@@ -0,0 +1,3 @@
+-- Version column for optimistic locking of account balances (app.transfer.concurrency=optimistic).
+-- Every writer of accounts.balance also increments it, including plain SQL updates.
+alter table accounts add column version bigint not null default 0;
@@ -0,0 +1,14 @@
+-- Hot accounts (hot_buckets > 0) take credits into one of their bucket rows instead of the accounts row.
+-- The account balance is accounts.balance plus the sum of its buckets; debits drain the buckets first.
+-- Bucket rows are created by HotAccountBuckets once an account is flagged, e.g.
+--   update accounts set hot_buckets = 8 where number = 'SETTLEMENT-01';
+alter table accounts add column hot_buckets int not null default 0;
+
+create table account_buckets
+(
+    account_id bigint         not null,
+    bucket     int            not null,
+    balance    numeric(19, 2) not null default 0,
+    constraint pk_account_buckets primary key (account_id, bucket),
+    constraint fk_bucket_account foreign key (account_id) references accounts (id)
+);
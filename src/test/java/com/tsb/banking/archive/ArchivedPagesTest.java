@@ -0,0 +1,111 @@
+package com.tsb.banking.archive;
+
+import com.tsb.banking.api.dto.TransactionDto;
+import com.tsb.banking.api.dto.TransactionSliceDto;
+import com.tsb.banking.service.TransactionService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Pages of account 5 span live rows and several archive segments; the archiver is run by hand.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:archived-pages;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "app.archive.enabled=true",
+        "app.archive.initial-delay=PT1H",
+        "app.archive.horizon=P30D",
+        "app.archive.segment-span=P10D",
+        "app.archive.chunk-rows=4",
+        "spring.jpa.show-sql=false"
+})
+class ArchivedPagesTest {
+
+    @TempDir
+    static Path dir;
+
+    @DynamicPropertySource
+    static void archiveDir(DynamicPropertyRegistry registry) {
+        registry.add("app.archive.dir", () -> dir.toString());
+    }
+
+    @Autowired
+    TransactionArchiver archiver;
+
+    @Autowired
+    TransactionArchive archive;
+
+    @Autowired
+    TransactionService transactions;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Test
+    void pagesMergeLiveRowsAndArchiveSegmentsInKeysetOrder() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        // 40 rows over 100..139 days ago, three of them sharing a timestamp, and 5 live ones
+        for (int day = 100; day < 140; day++) {
+            insert(now.minus(day == 120 || day == 121 ? 119 : day, ChronoUnit.DAYS));
+        }
+        for (int day = 1; day <= 5; day++) {
+            insert(now.minus(day, ChronoUnit.DAYS));
+        }
+        List<Long> expected = jdbc.queryForList("select id from transactions where account_id = 5 "
+                + "order by created_at desc, id desc", Long.class);
+        assertThat(expected).hasSize(45);
+
+        archiver.run();
+        assertThat(archive.current().segments()).hasSizeGreaterThan(1);
+        // copied but not purged yet: the rows are in both places and must be read once
+        assertThat(jdbc.queryForObject("select count(*) from transactions where account_id = 5", Integer.class))
+                .isEqualTo(45);
+        assertPages(expected);
+
+        archiver.run();
+        assertThat(jdbc.queryForObject("select count(*) from transactions where account_id = 5", Integer.class))
+                .isEqualTo(5);
+        assertPages(expected);
+    }
+
+    private void assertPages(List<Long> expected) {
+        for (int size : new int[]{1, 4, 7, 45, 50}) {
+            List<Long> walked = new ArrayList<>();
+            String cursor = null;
+            do {
+                TransactionSliceDto slice = transactions.transactionsAfterCursor(5L, null, null, cursor, size, true);
+                assertThat(slice.totalElements()).isEqualTo(expected.size());
+                slice.content().forEach(t -> walked.add(t.id()));
+                cursor = slice.nextCursor();
+            } while (cursor != null);
+            assertThat(walked).as("cursor pages of %d", size).isEqualTo(expected);
+
+            List<Long> paged = new ArrayList<>();
+            for (int page = 0; page * size < expected.size(); page++) {
+                Page<TransactionDto> p = transactions.transactionsForAccount(5L, null, null, page, size);
+                assertThat(p.getTotalElements()).isEqualTo(expected.size());
+                p.getContent().forEach(t -> paged.add(t.id()));
+            }
+            assertThat(paged).as("offset pages of %d", size).isEqualTo(expected);
+        }
+    }
+
+    private void insert(Instant createdAt) {
+        jdbc.update("insert into transactions (account_id, type, amount, currency, reference, counterparty, created_at) "
+                + "values (5, 'CREDIT', 1.00, 'NZD', 'Test', 'CASH', ?)", Timestamp.from(createdAt));
+    }
+}
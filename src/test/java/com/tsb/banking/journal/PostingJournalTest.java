@@ -0,0 +1,146 @@
+package com.tsb.banking.journal;
+
+import com.tsb.banking.model.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PostingJournalTest {
+
+    static final Instant AT = Instant.parse("2026-01-01T00:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    private final UUID database = UUID.randomUUID();
+
+    @Test
+    void reopenResumesAfterTheLastRecord() throws Exception {
+        PostingJournal journal = open(64 * 1024);
+        assertThat(journal.append(List.of(posting(1, "10.00"), posting(3, "5.00")))).isEqualTo(2);
+        journal.close();
+
+        PostingJournal reopened = open(64 * 1024);
+        assertThat(reopened.append(List.of(posting(5, "1.00")))).isEqualTo(3);
+        assertThat(reopened.tail(10)).extracting(Posting::seq).containsExactly(1L, 2L, 3L);
+        reopened.close();
+    }
+
+    @Test
+    void tornRecordsAfterACrashAreDiscarded() throws Exception {
+        PostingJournal journal = open(64 * 1024);
+        journal.append(List.of(posting(1, "10.00"), posting(3, "5.00")));
+        journal.close();
+        // seq 3 half written: right sequence number, CRC over bytes that never made it
+        Path segment = PostingJournal.segments(dir).get(0);
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(16).putLong(3).putLong(42).flip(),
+                    PostingJournal.HEADER_BYTES + 2 * PostingJournal.RECORD_BYTES);
+        }
+
+        PostingJournal reopened = open(64 * 1024);
+        assertThat(reopened.tail(10)).extracting(Posting::seq).containsExactly(1L, 2L);
+        assertThat(reopened.append(List.of(posting(5, "1.00")))).isEqualTo(3);
+        reopened.close();
+        assertThat(net()).containsEntry(1L, new BigDecimal("-16.00")).containsEntry(2L, new BigDecimal("16.00"));
+    }
+
+    @Test
+    void appendsRollIntoNewSegments() throws Exception {
+        // room for two records per segment
+        PostingJournal journal = open(PostingJournal.HEADER_BYTES + 2 * PostingJournal.RECORD_BYTES);
+        for (int i = 0; i < 5; i++) {
+            journal.append(List.of(posting(2 * i + 1, "1.00")));
+        }
+        journal.close();
+
+        assertThat(PostingJournal.segments(dir)).hasSize(3);
+        assertThat(PostingJournal.header(PostingJournal.segments(dir).get(2)).firstSeq()).isEqualTo(5);
+        PostingJournal reopened = open(PostingJournal.HEADER_BYTES + 2 * PostingJournal.RECORD_BYTES);
+        assertThat(reopened.tail(3)).extracting(Posting::seq).containsExactly(3L, 4L, 5L);
+        reopened.close();
+        assertThat(net()).containsEntry(1L, new BigDecimal("-5.00"));
+    }
+
+    @Test
+    void crossCurrencyPostingsKeepBothAmounts() throws Exception {
+        PostingJournal journal = open(64 * 1024);
+        journal.append(List.of(Posting.of(AT, 1, 2, 1, 2, new Money(1000, "NZD"), new Money(598, "USD"))));
+        Posting read = journal.tail(1).get(0);
+        journal.close();
+
+        assertThat(read.amount()).isEqualTo(new Money(1000, "NZD"));
+        assertThat(read.credited()).isEqualTo(new Money(598, "USD"));
+        assertThat(net()).containsEntry(1L, new BigDecimal("-10.00")).containsEntry(2L, new BigDecimal("5.98"));
+    }
+
+    @Test
+    void voidsCancelThePostingTheyRepeat() throws Exception {
+        PostingJournal journal = open(64 * 1024);
+        Posting p = posting(1, "10.00");
+        journal.append(List.of(p, posting(3, "2.00")));
+        journal.append(List.of(p.voiding()));
+        journal.close();
+
+        assertThat(net()).containsEntry(1L, new BigDecimal("-2.00")).containsEntry(2L, new BigDecimal("2.00"));
+    }
+
+    @Test
+    void refusesAJournalOfAnotherDatabase() throws Exception {
+        open(64 * 1024).close();
+
+        PostingJournal other = new PostingJournal(dir, 64 * 1024, true, Duration.ZERO, 16, new SimpleMeterRegistry());
+        assertThatThrownBy(() -> other.open(UUID.randomUUID()))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("belongs to database " + database);
+    }
+
+    @Test
+    void segmentsWithoutADatabaseIdAreTiedToTheCurrentOne() throws Exception {
+        open(64 * 1024).close();
+        Path segment = PostingJournal.segments(dir).get(0);
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(16), 32);
+        }
+
+        open(64 * 1024).close();
+        ByteBuffer header = PostingJournal.mapReadOnly(segment);
+        assertThat(new UUID(header.getLong(32), header.getLong(40))).isEqualTo(database);
+    }
+
+    PostingJournal open(long segmentBytes) throws IOException {
+        PostingJournal journal = new PostingJournal(dir, segmentBytes, true, Duration.ZERO, 16, new SimpleMeterRegistry());
+        journal.open(database);
+        return journal;
+    }
+
+    // debit account 1, credit account 2
+    static Posting posting(long debitTxnId, String amount) {
+        Money money = Money.of(new BigDecimal(amount), "NZD");
+        return Posting.of(AT, debitTxnId, debitTxnId + 1, 1, 2, money);
+    }
+
+    Map<Long, BigDecimal> net() throws IOException {
+        Map<Long, BigDecimal> net = new HashMap<>();
+        for (JournalReplay.Partition p : JournalReplay.replay(dir, 2, account -> Long.MIN_VALUE)) {
+            net.putAll(p.net());
+        }
+        return net;
+    }
+}
@@ -0,0 +1,124 @@
+package com.tsb.banking.journal;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Segments written before cross-currency transfers (format version 1).
+ */
+class PostingJournalV1Test {
+
+    @TempDir
+    Path dir;
+
+    private final UUID database = UUID.randomUUID();
+
+    @Test
+    void v1RecordsAreReadAndAppendsContinueInAV2Segment() throws Exception {
+        writeV1Segment(3, false);
+
+        PostingJournal journal = open();
+        assertThat(journal.append(List.of(PostingJournalTest.posting(10, "1.00")))).isEqualTo(4);
+        List<Posting> tail = journal.tail(10);
+        journal.close();
+
+        assertThat(tail).extracting(Posting::seq).containsExactly(1L, 2L, 3L, 4L);
+        // a v1 record has one amount for both legs
+        assertThat(tail.get(0).amount()).isEqualTo(tail.get(0).credited());
+        List<Path> segments = PostingJournal.segments(dir);
+        assertThat(segments).hasSize(2);
+        assertThat(PostingJournal.format(PostingJournal.mapReadOnly(segments.get(0)))).isEqualTo(PostingJournal.V1);
+        assertThat(PostingJournal.format(PostingJournal.mapReadOnly(segments.get(1)))).isEqualTo(PostingJournal.V2);
+        // 1.00 + 2.00 + 3.00 from v1, 1.00 from v2
+        assertThat(net()).containsEntry(1L, new BigDecimal("-7.00")).containsEntry(3L, new BigDecimal("6.00"))
+                .containsEntry(2L, new BigDecimal("1.00"));
+    }
+
+    @Test
+    void tornV1TailIsDiscarded() throws Exception {
+        writeV1Segment(2, true);
+
+        PostingJournal journal = open();
+        assertThat(journal.append(List.of(PostingJournalTest.posting(10, "1.00")))).isEqualTo(3);
+        journal.close();
+
+        PostingJournal reopened = open();
+        assertThat(reopened.tail(10)).extracting(Posting::seq).containsExactly(1L, 2L, 3L);
+        reopened.close();
+        assertThat(net()).containsEntry(1L, new BigDecimal("-4.00"));
+    }
+
+    @Test
+    void emptyV1SegmentIsReplaced() throws Exception {
+        writeV1Segment(0, false);
+
+        PostingJournal journal = open();
+        assertThat(journal.append(List.of(PostingJournalTest.posting(10, "1.00")))).isEqualTo(1);
+        journal.close();
+
+        List<Path> segments = PostingJournal.segments(dir);
+        assertThat(segments).hasSize(1);
+        assertThat(PostingJournal.format(PostingJournal.mapReadOnly(segments.get(0)))).isEqualTo(PostingJournal.V2);
+    }
+
+    private PostingJournal open() throws IOException {
+        PostingJournal journal = new PostingJournal(dir, 64 * 1024, true, Duration.ZERO, 16, new SimpleMeterRegistry());
+        journal.open(database);
+        return journal;
+    }
+
+    // n records debiting account 1 and crediting account 3 by 1.00, 2.00, ...; no database id, as v1 wrote them
+    private void writeV1Segment(int n, boolean torn) throws IOException {
+        PostingJournal.Format v1 = PostingJournal.V1;
+        long micros = PostingJournal.micros(PostingJournalTest.AT);
+        try (FileChannel ch = FileChannel.open(dir.resolve("journal-00000000000000000001.wal"),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer m = ch.map(FileChannel.MapMode.READ_WRITE, 0,
+                    PostingJournal.HEADER_BYTES + 100L * v1.recordBytes());
+            m.putLong(0, PostingJournal.MAGIC).putInt(8, v1.version()).putInt(12, v1.recordBytes()).putLong(16, 1)
+                    .putLong(24, micros);
+            byte[] r = new byte[v1.recordBytes()];
+            CRC32C crc = new CRC32C();
+            for (int i = 0; i < n + (torn ? 1 : 0); i++) {
+                ByteBuffer b = ByteBuffer.wrap(r).clear();
+                b.putLong(i + 1).putLong(micros + i).putLong(100 + 2 * i).putLong(101 + 2 * i).putLong(1).putLong(3)
+                        .putLong(100L * (i + 1)).put((byte) Posting.Kind.POSTING.ordinal())
+                        .put("NZD".getBytes(StandardCharsets.US_ASCII));
+                crc.reset();
+                crc.update(r, 0, v1.crcOffset());
+                b.putInt((int) crc.getValue());
+                if (torn && i == n) {
+                    r[20] ^= 1;
+                }
+                m.put(PostingJournal.HEADER_BYTES + i * v1.recordBytes(), r);
+            }
+            m.force();
+        }
+    }
+
+    private Map<Long, BigDecimal> net() throws IOException {
+        Map<Long, BigDecimal> net = new HashMap<>();
+        for (JournalReplay.Partition p : JournalReplay.replay(dir, 2, account -> Long.MIN_VALUE)) {
+            net.putAll(p.net());
+        }
+        return net;
+    }
+}
@@ -0,0 +1,79 @@
+package com.tsb.banking.journal;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Restart after a crash between journalling a transaction's postings and its commit.
+ */
+class PostingRecorderTest {
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void createTables() {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL", "sa", ""));
+        // the parts of the schema the recorder reads
+        jdbc.execute("create table database_identity (id int primary key, database_id varchar(36) not null)");
+        jdbc.update("insert into database_identity values (1, ?)", UUID.randomUUID().toString());
+        jdbc.execute("create table transactions (id bigint primary key)");
+    }
+
+    @Test
+    void postingsOfUncommittedTransactionsAreVoidedOnRestart() throws Exception {
+        PostingRecorder recorder = recorder();
+        recorder.open();
+        // outside a transaction, so written right away
+        recorder.record(PostingJournalTest.posting(1, "10.00"));
+        recorder.record(PostingJournalTest.posting(3, "4.00"));
+        jdbc.update("insert into transactions values (1), (2)");
+        // the process dies before transaction 3 commits
+        recorder.close();
+
+        PostingRecorder restarted = recorder();
+        restarted.open();
+        restarted.close();
+
+        List<Posting> tail = tail();
+        assertThat(tail).extracting(Posting::kind)
+                .containsExactly(Posting.Kind.POSTING, Posting.Kind.POSTING, Posting.Kind.VOID);
+        assertThat(tail.get(2).debitTxnId()).isEqualTo(3);
+
+        // voided once: a second restart finds nothing left to void
+        PostingRecorder again = recorder();
+        again.open();
+        again.close();
+        assertThat(tail()).hasSize(3);
+    }
+
+    private PostingRecorder recorder() {
+        return new PostingRecorder(jdbc, dir, DataSize.ofKilobytes(64), true, Duration.ZERO, 16, 1000,
+                new SimpleMeterRegistry());
+    }
+
+    private List<Posting> tail() throws Exception {
+        PostingJournal journal = new PostingJournal(dir, 64 * 1024, true, Duration.ZERO, 16, new SimpleMeterRegistry());
+        journal.open(PostingRecorder.databaseId(jdbc));
+        try {
+            return journal.tail(10);
+        } finally {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.tsb.banking.ledger;
+
+import com.tsb.banking.BankingApiApplication;
+import com.tsb.banking.api.dto.TransferRequestDto;
+import com.tsb.banking.api.dto.TransferResponseDto;
+import com.tsb.banking.service.TransferService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Restarts the engine on the same database and journal, with one journalled transfer the writer never
+ * persisted (the crash) and a torn record behind it.
+ */
+class LedgerEngineRestartTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void restartReplaysOnlyEntriesPastTheCheckpoint() throws Exception {
+        TransferResponseDto first;
+        try (ConfigurableApplicationContext app = start()) {
+            LedgerEngine engine = app.getBean(LedgerEngine.class);
+            first = engine.transfer(transfer("k1", "10.00"));
+            engine.transfer(transfer("k2", "5.00"));
+            assertThat(awaitCheckpoint(app, 2)).isEqualTo(2);
+        }
+
+        // journalled and acknowledged, but the process died before the writer got to it
+        Path journalDir = dir.resolve("ledger");
+        LedgerJournal journal = new LedgerJournal(journalDir, 64 * 1024 * 1024, true, Duration.ZERO, 256);
+        assertThat(journal.open(2)).isEmpty();
+        String hash = TransferService.payloadHash(transfer("k3", "2.50"));
+        journal.append(new JournalEntry(3, Instant.now(), 1, 1, 3, "ALC-0001", "ALC-0003", new BigDecimal("2.50"),
+                "NZD", null, 1_000_001, 1_000_002, "customer:1", "k3", hash));
+        journal.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(journalDir)) {
+            segment = files.sorted().reduce((a, b) -> b).orElseThrow();
+        }
+        long intact = Files.size(segment);
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            ch.write(ByteBuffer.allocate(6).putInt(200).flip());
+        }
+
+        try (ConfigurableApplicationContext app = start()) {
+            LedgerEngine engine = app.getBean(LedgerEngine.class);
+            // 1500 - 10 - 5 - 2.50: entries 1 and 2 are not applied twice
+            assertThat(engine.balanceOf(1)).contains(new BigDecimal("1482.50"));
+            assertThat(engine.balanceOf(3)).contains(new BigDecimal("1517.50"));
+            assertThat(Files.size(segment)).isEqualTo(intact);
+
+            assertThat(awaitCheckpoint(app, 3)).isEqualTo(3);
+            JdbcTemplate jdbc = app.getBean(JdbcTemplate.class);
+            assertThat(jdbc.queryForObject("select balance from accounts where id = 1", BigDecimal.class))
+                    .isEqualByComparingTo("1482.50");
+            assertThat(jdbc.queryForObject("select count(*) from transactions where id in (1000001, 1000002)",
+                    Integer.class)).isEqualTo(2);
+
+            // keys survive the restart, from the database and from the replayed journal
+            assertThat(engine.transfer(transfer("k1", "10.00")).debitTxnId()).isEqualTo(first.debitTxnId());
+            assertThat(engine.transfer(transfer("k3", "2.50")).debitTxnId()).isEqualTo(1_000_001);
+
+            // new ids do not collide with the replayed ones
+            TransferResponseDto next = engine.transfer(transfer("k4", "1.00"));
+            assertThat(next.debitTxnId()).isGreaterThan(1_000_002);
+            assertThat(awaitCheckpoint(app, 4)).isEqualTo(4);
+        }
+    }
+
+    private ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(BankingApiApplication.class).run(
+                "--server.port=0",
+                "--spring.jpa.show-sql=false",
+                "--spring.datasource.url=jdbc:h2:file:" + dir.resolve("db") + ";MODE=PostgreSQL",
+                "--app.ledger.engine.enabled=true",
+                "--app.ledger.engine.journal-dir=" + dir.resolve("ledger"));
+    }
+
+    private static TransferRequestDto transfer(String key, String amount) {
+        return new TransferRequestDto(1L, 1L, 3L, new BigDecimal(amount), "NZD", null, key);
+    }
+
+    // the writer commits in the background; wait for it to reach seq, or give up after 10 s
+    private static long awaitCheckpoint(ConfigurableApplicationContext app, long seq) throws InterruptedException {
+        JdbcTemplate jdbc = app.getBean(JdbcTemplate.class);
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        long checkpoint;
+        while ((checkpoint = jdbc.queryForObject("select last_seq from ledger_checkpoint where id = 1", Long.class)) < seq
+                && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        return checkpoint;
+    }
+}
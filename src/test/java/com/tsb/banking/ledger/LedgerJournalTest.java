@@ -0,0 +1,150 @@
+package com.tsb.banking.ledger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LedgerJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void entriesAfterTheCheckpointSurviveARestart() throws Exception {
+        LedgerJournal journal = open(1024 * 1024, 0);
+        appendAll(journal, 1, 5);
+        journal.close();
+
+        LedgerJournal reopened = new LedgerJournal(dir, 1024 * 1024, true, Duration.ZERO, 256);
+        assertThat(seqs(reopened.open(3))).containsExactly(4L, 5L);
+        assertThat(reopened.lastSeq()).isEqualTo(5);
+        reopened.close();
+    }
+
+    @Test
+    void releaseDeletesSegmentsBehindTheCheckpoint() throws Exception {
+        // every record rolls a new segment
+        LedgerJournal journal = open(1, 0);
+        appendAll(journal, 1, 5);
+        assertThat(segments()).hasSize(5);
+
+        journal.release(3);
+        assertThat(segments()).hasSize(2);
+        journal.close();
+
+        LedgerJournal reopened = new LedgerJournal(dir, 1, true, Duration.ZERO, 256);
+        assertThat(seqs(reopened.open(3))).containsExactly(4L, 5L);
+        reopened.close();
+    }
+
+    @Test
+    void tornRecordAtTheEndIsTruncated() throws Exception {
+        LedgerJournal journal = open(1024 * 1024, 0);
+        appendAll(journal, 1, 3);
+        journal.close();
+        Path segment = segments().get(0);
+        long intact = Files.size(segment);
+        // header of a 100-byte record of which only 10 bytes made it to disk
+        write(segment, intact, ByteBuffer.allocate(22).putInt(100).putLong(42).put(new byte[10]).flip());
+
+        LedgerJournal reopened = new LedgerJournal(dir, 1024 * 1024, true, Duration.ZERO, 256);
+        assertThat(seqs(reopened.open(0))).containsExactly(1L, 2L, 3L);
+        assertThat(Files.size(segment)).isEqualTo(intact);
+        appendAll(reopened, 4, 4);
+        reopened.close();
+
+        LedgerJournal again = new LedgerJournal(dir, 1024 * 1024, true, Duration.ZERO, 256);
+        assertThat(seqs(again.open(0))).containsExactly(1L, 2L, 3L, 4L);
+        again.close();
+    }
+
+    @Test
+    void zeroedSpaceAtTheEndIsTruncated() throws Exception {
+        LedgerJournal journal = open(1024 * 1024, 0);
+        appendAll(journal, 1, 2);
+        journal.close();
+        Path segment = segments().get(0);
+        long intact = Files.size(segment);
+        write(segment, intact, ByteBuffer.allocate(4096));
+
+        LedgerJournal reopened = new LedgerJournal(dir, 1024 * 1024, true, Duration.ZERO, 256);
+        assertThat(seqs(reopened.open(0))).containsExactly(1L, 2L);
+        assertThat(Files.size(segment)).isEqualTo(intact);
+        reopened.close();
+    }
+
+    @Test
+    void damagedRecordBeforeTheEndRefusesToOpen() throws Exception {
+        LedgerJournal journal = open(1024 * 1024, 0);
+        appendAll(journal, 1, 3);
+        journal.close();
+        Path segment = segments().get(0);
+        // first byte of the first payload, after [int length][long crc]
+        write(segment, 12, ByteBuffer.wrap(new byte[]{(byte) 0xFF}));
+
+        LedgerJournal reopened = new LedgerJournal(dir, 1024 * 1024, true, Duration.ZERO, 256);
+        assertThatThrownBy(() -> reopened.open(0))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("failing its CRC");
+    }
+
+    @Test
+    void unsyncedAppendsAreReadAfterACrash() throws Exception {
+        LedgerJournal journal = new LedgerJournal(dir, 1024 * 1024, false, Duration.ZERO, 256);
+        journal.open(0);
+        appendAll(journal, 1, 3);
+        // no close: the process died with the records written but never forced
+
+        LedgerJournal reopened = new LedgerJournal(dir, 1024 * 1024, false, Duration.ZERO, 256);
+        assertThat(seqs(reopened.open(0))).containsExactly(1L, 2L, 3L);
+        reopened.close();
+    }
+
+    private LedgerJournal open(long segmentBytes, long checkpoint) throws IOException {
+        LedgerJournal journal = new LedgerJournal(dir, segmentBytes, true, Duration.ZERO, 256);
+        assertThat(journal.open(checkpoint)).isEmpty();
+        return journal;
+    }
+
+    private static void appendAll(LedgerJournal journal, long fromSeq, long toSeq) {
+        for (long seq = fromSeq; seq <= toSeq; seq++) {
+            journal.append(entry(seq));
+        }
+        journal.awaitDurable(toSeq);
+    }
+
+    private static JournalEntry entry(long seq) {
+        return new JournalEntry(seq, Instant.parse("2026-01-01T00:00:00Z"), 1, 1, 3, "ALC-0001", "ALC-0003",
+                new BigDecimal("1.00"), "NZD", null, seq * 2 - 1, seq * 2, "customer:1", "key-" + seq, "hash-" + seq);
+    }
+
+    private static List<Long> seqs(List<JournalEntry> entries) {
+        return entries.stream().map(JournalEntry::seq).toList();
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static void write(Path file, long position, ByteBuffer bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.write(bytes, position);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.tsb.banking.replica;
+
+import com.tsb.banking.api.dto.TransferRequestDto;
+import com.tsb.banking.api.dto.TransferResponseDto;
+import com.tsb.banking.service.TransferService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two H2 databases: the replica is migrated on its own and never receives the primary's writes, so it stands for
+ * a replica that has not caught up.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "app.datasource.replica.url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "app.datasource.replica.username=sa",
+        "app.datasource.replica.migrate=true",
+        "spring.jpa.show-sql=false"
+})
+class ReplicaRoutingTest {
+
+    @Autowired
+    TransferService transfers;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    PlatformTransactionManager txManager;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    DataSource replica;
+
+    @Autowired
+    MeterRegistry meters;
+
+    @Test
+    void readsFollowTheTransactionAndWaitForTheCallersWrites() {
+        TransferResponseDto posted = transfers.transfer(
+                new TransferRequestDto(1L, 1L, 3L, new BigDecimal("25.00"), "NZD", null, null));
+
+        // read-only transactions go to the replica, which has not seen the transfer
+        assertThat(balance(true)).isEqualByComparingTo("1500.00");
+        assertThat(balance(false)).isEqualByComparingTo("1475.00");
+
+        // a read that must see the transfer falls back to the primary while the replica lags
+        double primaryReads = count("primary");
+        try (var pin = ReplicaDataSource.requireVisible(posted.debitTxnId(), posted.creditTxnId())) {
+            assertThat(balance(true)).isEqualByComparingTo("1475.00");
+            // and stays there for the rest of the scope
+            assertThat(balance(true)).isEqualByComparingTo("1475.00");
+        }
+        assertThat(count("primary")).isEqualTo(primaryReads + 1);
+        assertThat(balance(true)).isEqualByComparingTo("1500.00");
+
+        // the replica catches up
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replica);
+        jdbc.query("select id, account_id, type, amount, currency, reference, counterparty, created_at from transactions "
+                + "where id in (?, ?)", rs -> {
+            replicaJdbc.update("insert into transactions (id, account_id, type, amount, currency, reference, counterparty, "
+                            + "created_at) values (?, ?, ?, ?, ?, ?, ?, ?)", rs.getLong(1), rs.getLong(2), rs.getString(3),
+                    rs.getBigDecimal(4), rs.getString(5), rs.getString(6), rs.getString(7), rs.getTimestamp(8));
+        }, posted.debitTxnId(), posted.creditTxnId());
+        replicaJdbc.update("update accounts set balance = balance - 25 where id = 1");
+
+        double replicaReads = count("replica");
+        try (var pin = ReplicaDataSource.requireVisible(posted.debitTxnId(), posted.creditTxnId())) {
+            assertThat(balance(true)).isEqualByComparingTo("1475.00");
+        }
+        assertThat(count("replica")).isEqualTo(replicaReads + 1);
+    }
+
+    private BigDecimal balance(boolean readOnly) {
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        tx.setReadOnly(readOnly);
+        return tx.execute(status -> jdbc.queryForObject("select balance from accounts where id = 1", BigDecimal.class));
+    }
+
+    private double count(String target) {
+        return meters.counter("banking.replica.read-your-writes", "target", target).count();
+    }
+}
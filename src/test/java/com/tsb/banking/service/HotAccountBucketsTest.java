@@ -0,0 +1,102 @@
+package com.tsb.banking.service;
+
+import com.tsb.banking.api.dto.AccountDto;
+import com.tsb.banking.api.dto.TransferRequestDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Account 3 is made hot; refreshes are run by hand.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:hot-buckets;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "app.hot-accounts.refresh=PT1H",
+        "spring.jpa.show-sql=false"
+})
+class HotAccountBucketsTest {
+
+    @Autowired
+    HotAccountBuckets buckets;
+
+    @Autowired
+    TransferService transfers;
+
+    @Autowired
+    AccountService accounts;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Test
+    void creditsWaitInBucketsUntilADebitOrUnflaggingMovesThemIntoTheAccount() {
+        jdbc.update("update accounts set hot_buckets = 4 where id = 3");
+        buckets.refresh();
+        assertThat(jdbc.queryForObject("select count(*) from account_buckets where account_id = 3", Integer.class))
+                .isEqualTo(4);
+
+        for (int i = 0; i < 3; i++) {
+            transfer(1L, 3L, "10.00");
+        }
+        // the account row is not touched by credits, reads add the buckets
+        assertThat(row(3)).isEqualByComparingTo("1500.00");
+        assertThat(inBuckets(3)).isEqualByComparingTo("30.00");
+        assertThat(reported(3)).isEqualByComparingTo("1530.00");
+
+        // a debit drains the buckets into the locked row first
+        transfer(3L, 1L, "1530.00");
+        assertThat(row(3)).isEqualByComparingTo("0.00");
+        assertThat(inBuckets(3)).isEqualByComparingTo("0.00");
+
+        // un-flagged, but this instance has not refreshed yet: credits still go to the buckets and are still counted
+        transfer(1L, 3L, "7.00");
+        jdbc.update("update accounts set hot_buckets = 0 where id = 3");
+        transfer(1L, 3L, "5.00");
+        assertThat(inBuckets(3)).isEqualByComparingTo("12.00");
+        assertThat(reported(3)).isEqualByComparingTo("12.00");
+        long version = version(3);
+
+        buckets.refresh();
+        assertThat(jdbc.queryForObject("select count(*) from account_buckets where account_id = 3", Integer.class))
+                .isZero();
+        assertThat(row(3)).isEqualByComparingTo("12.00");
+        assertThat(reported(3)).isEqualByComparingTo("12.00");
+        // the ETag version only moves forward
+        assertThat(version(3)).isGreaterThan(version);
+
+        // credits go to the account row again
+        transfer(1L, 3L, "3.00");
+        assertThat(row(3)).isEqualByComparingTo("15.00");
+        transfer(3L, 1L, "15.00");
+        assertThat(reported(3)).isEqualByComparingTo("0.00");
+    }
+
+    private void transfer(Long from, Long to, String amount) {
+        transfers.transfer(new TransferRequestDto(1L, from, to, new BigDecimal(amount), "NZD", null, null));
+    }
+
+    private BigDecimal row(long accountId) {
+        return jdbc.queryForObject("select balance from accounts where id = ?", BigDecimal.class, accountId);
+    }
+
+    private BigDecimal inBuckets(long accountId) {
+        return jdbc.queryForObject("select coalesce(sum(balance), 0) from account_buckets where account_id = ?",
+                BigDecimal.class, accountId);
+    }
+
+    private BigDecimal reported(long accountId) {
+        return accounts.accountsForCustomer(1L).stream().filter(a -> a.id() == accountId).findFirst()
+                .map(AccountDto::balance).orElseThrow();
+    }
+
+    // accounts.version plus the bucket versions, as AccountVersions reads it
+    private long version(long accountId) {
+        return jdbc.queryForObject("select a.version + coalesce((select sum(b.version) from account_buckets b "
+                + "where b.account_id = a.id), 0) from accounts a where a.id = ?", Long.class, accountId);
+    }
+}
@@ -0,0 +1,123 @@
+package com.tsb.banking.service;
+
+import com.tsb.banking.api.dto.TransferRequestDto;
+import com.tsb.banking.exception.BusinessException;
+import com.tsb.banking.repo.AccountRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * app.transfer.concurrency=optimistic; a concurrent writer bumps the debit account's version right after the
+ * transfer has read it, so the version check fails on flush.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:optimistic;DB_CLOSE_DELAY=-1;MODE=PostgreSQL",
+        "app.transfer.concurrency=optimistic",
+        "app.transfer.optimistic.max-attempts=3",
+        "app.transfer.optimistic.backoff-millis=1",
+        "spring.jpa.show-sql=false"
+})
+class OptimisticTransferTest {
+
+    // reads of an account by id still to be followed by a concurrent change to it
+    static final AtomicInteger interfering = new AtomicInteger();
+    static volatile JdbcTemplate interferer;
+
+    @Autowired
+    TransferService transfers;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    MeterRegistry meters;
+
+    @TestConfiguration
+    static class Interference {
+
+        @Bean
+        static BeanPostProcessor interfereAfterAccountReads() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String name) {
+                    if (!(bean instanceof AccountRepository repo)) {
+                        return bean;
+                    }
+                    return Proxy.newProxyInstance(AccountRepository.class.getClassLoader(),
+                            new Class<?>[]{AccountRepository.class}, (proxy, method, args) -> {
+                                Object result;
+                                try {
+                                    result = method.invoke(repo, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                                if (method.getName().equals("findById") && interfering.getAndDecrement() > 0) {
+                                    // committed from another connection, between the transfer's read and its flush
+                                    CompletableFuture.runAsync(() -> interferer.update(
+                                            "update accounts set version = version + 1 where id = ?", args[0])).join();
+                                }
+                                return result;
+                            });
+                }
+            };
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        interferer = jdbc;
+        interfering.set(0);
+    }
+
+    @Test
+    void conflictingTransferIsRetried() {
+        interfering.set(1);
+        double retries = retries();
+
+        transfers.transfer(new TransferRequestDto(1L, 1L, 3L, new BigDecimal("10.00"), "NZD", null, "retried"));
+
+        assertThat(retries()).isEqualTo(retries + 1);
+        // debited once, by the retry
+        assertThat(balance(1)).isEqualByComparingTo("1490.00");
+        assertThat(balance(3)).isEqualByComparingTo("1510.00");
+    }
+
+    @Test
+    void transferGivesUpAfterMaxAttempts() {
+        interfering.set(Integer.MAX_VALUE);
+        double retries = retries();
+        BigDecimal before = balance(4);
+
+        assertThatThrownBy(() -> transfers.transfer(
+                new TransferRequestDto(2L, 4L, 5L, new BigDecimal("10.00"), "NZD", null, "gave-up")))
+                .isInstanceOf(BusinessException.class)
+                .extracting(e -> ((BusinessException) e).getCode()).isEqualTo("CONCURRENT_UPDATE");
+
+        assertThat(retries()).isEqualTo(retries + 2);
+        assertThat(balance(4)).isEqualByComparingTo(before);
+    }
+
+    private double retries() {
+        return meters.counter("banking.transfer.retries").count();
+    }
+
+    private BigDecimal balance(long accountId) {
+        return jdbc.queryForObject("select balance from accounts where id = ?", BigDecimal.class, accountId);
+    }
+}